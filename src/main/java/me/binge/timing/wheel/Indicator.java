@@ -1,5 +1,8 @@
 package me.binge.timing.wheel;
 
+import java.util.Collection;
+import java.util.Map;
+
 import me.binge.timing.wheel.entry.Entry;
 
 public interface Indicator<E extends Entry> {
@@ -10,4 +13,16 @@ public interface Indicator<E extends Entry> {
 
     public void remove(E e);
 
+    /**
+     * Index a batch of entries in the same slot.
+     */
+    public void putAll(Collection<E> entries, Slot<E> slot);
+
+    /**
+     * @return the slot of every given entry which is indexed, the others are left out.
+     */
+    public Map<E, Slot<E>> getAll(Collection<E> entries);
+
+    public void removeAll(Collection<E> entries);
+
 }
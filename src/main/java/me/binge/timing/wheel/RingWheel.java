@@ -0,0 +1,167 @@
+package me.binge.timing.wheel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import me.binge.timing.wheel.entry.Entry;
+
+/**
+ * A {@link Wheel} keeping its slots in a preallocated ring indexed by slot id. Every position only holds
+ * the slot of its latest cycle, so the cycle of that slot is the round counter of the position and looking
+ * a slot up needs no hashing, boxing or map allocation.<br>
+ * A slot of an older cycle is gone once its position is taken over, so this layout suits wheels whose
+ * ticks are advanced one by one inside this process, e.g. the in-memory wheel.<br>
+ * A cleared position keeps a marker of the cycle it was cleared at, so an add that stalled past the tick
+ * cannot bring the slot back: it is told to locate its slot again instead, see {@link #get(long, int)}.
+ */
+public class RingWheel<E extends Entry> extends Wheel<E> {
+
+    private final AtomicReferenceArray<Slot<E>> ring;
+
+    public RingWheel(int ticksPerWheel, SlotGenerator<E> slotGenerator) {
+        this(0, ticksPerWheel, slotGenerator);
+    }
+
+    protected RingWheel(int level, int ticksPerWheel, SlotGenerator<E> slotGenerator) {
+        super(level, slotGenerator);
+        this.ring = new AtomicReferenceArray<Slot<E>>(ticksPerWheel);
+    }
+
+    @Override
+    protected Wheel<E> newOverflow() {
+        return new RingWheel<E>(level + 1, ring.length(), slotGenerator);
+    }
+
+    @Override
+    public void put(Slot<E> slot) {
+        ring.set(slot.getId(), slot);
+    }
+
+    @Override
+    public int size(long cycle) {
+        int size = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            Slot<E> slot = ring.get(i);
+            if (live(slot) && slot.getCycle() == cycle) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the slot, or null if the position has already been taken over by a later cycle, cleared at
+     *         this cycle, or still holds an older slot the tick has not drained yet, e.g. while catching up.
+     *         The caller then locates its slot again from the current tick.
+     */
+    @Override
+    public Slot<E> get(long cycle, int id) {
+        Slot<E> fresh = null;
+        for (;;) {
+            Slot<E> slot = ring.get(id);
+            if (slot != null) {
+                if (slot.getCycle() > cycle) {
+                    return null;
+                }
+                if (slot instanceof Cleared) {
+                    if (slot.getCycle() == cycle) {
+                        return null;
+                    }
+                } else {
+                    return slot.getCycle() == cycle ? slot : null;
+                }
+            }
+            if (fresh == null) {
+                fresh = slotGenerator.gene(level, cycle, id);
+            }
+            if (ring.compareAndSet(id, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    @Override
+    public Slot<E> find(long cycle, int id) {
+        Slot<E> slot = ring.get(id);
+        return live(slot) && slot.getCycle() == cycle ? slot : slotGenerator.gene(level, cycle, id);
+    }
+
+    /**
+     * @return the slot at the id if its cycle is not later, a ring keeps no older one.
+     */
+    @Override
+    public Collection<Slot<E>> pending(int id, long upToCycle) {
+        Slot<E> slot = ring.get(id);
+        if (!live(slot) || slot.getCycle() > upToCycle) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(slot);
+    }
+
+    @Override
+    public void clear(long cycle, int idx) {
+        Slot<E> slot = ring.get(idx);
+        if (live(slot) && slot.getCycle() == cycle) {
+            ring.compareAndSet(idx, slot, new Cleared<E>(level, cycle, idx));
+        }
+    }
+
+    @Override
+    public Collection<Slot<E>> slots(long cycle) {
+        List<Slot<E>> slots = new ArrayList<Slot<E>>();
+        for (int i = 0; i < ring.length(); i++) {
+            Slot<E> slot = ring.get(i);
+            if (live(slot) && slot.getCycle() == cycle) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public Collection<Slot<E>> slots() {
+        List<Slot<E>> slots = new ArrayList<Slot<E>>();
+        for (int i = 0; i < ring.length(); i++) {
+            Slot<E> slot = ring.get(i);
+            if (live(slot)) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    private static boolean live(Slot<?> slot) {
+        return slot != null && !(slot instanceof Cleared);
+    }
+
+    /**
+     * the marker a cleared position holds until a later cycle takes it over.
+     */
+    private static final class Cleared<E extends Entry> extends Slot<E> {
+
+        Cleared(int level, long cycle, int id) {
+            super(level, cycle, id);
+            markExpired();
+        }
+
+        @Override
+        public void add(E e) {
+            throw new UnsupportedOperationException("cleared " + this);
+        }
+
+        @Override
+        public E remove(E e) {
+            return null;
+        }
+
+        @Override
+        public Set<E> elements() {
+            return Collections.emptySet();
+        }
+    }
+
+}
@@ -0,0 +1,349 @@
+package me.binge.timing.wheel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.expire.Backpressure;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.expire.ExpirationDispatchers;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.metrics.MetricsListener;
+import me.binge.timing.wheel.metrics.WheelMetrics;
+
+/**
+ * N independent {@link TimingWheel}s behind the API of one, entries are partitioned by the hash of their
+ * key. Every shard has its own tick thread, slots and indicator, so producers on different cores rarely
+ * touch the same maps and the expirations are spread over N tick threads.<br>
+ * An entry always goes to the same shard, so re-adding, touching and removing it work as on one wheel.
+ * The shards tick on their own clocks, each as accurate as a single wheel.
+ * <p>
+ * The expirations run on the shared pool of {@link ExpirationDispatchers#shared()} by default, see
+ * {@link #setExpirationDispatchers(int, int, Backpressure)} to give every shard its own.
+ */
+public class ShardedTimingWheel<E extends Entry> {
+
+    /**
+     * Creates the wheel of a shard, for sharding other backends than the in-memory one.
+     */
+    public static interface ShardFactory<E extends Entry> {
+
+        /**
+         * @param shard the index of the shard, from 0.
+         * @param name the name of the shard wheel, also the name of its tick thread.
+         */
+        public TimingWheel<E> create(int shard, String name);
+
+    }
+
+    private final String name;
+
+    private final TimingWheel<E>[] shards;
+
+    private WheelMetrics metrics;
+
+    /**
+     * In-memory shards, one per available processor.
+     */
+    @SafeVarargs
+    public ShardedTimingWheel(int tickDuration, int ticksPerWheel, TimeUnit timeUnit, String name, Mode mode,
+            Expiration<E>... expirations) {
+        this(Runtime.getRuntime().availableProcessors(), tickDuration, ticksPerWheel, timeUnit, name, mode, expirations);
+    }
+
+    /**
+     * In-memory shards.
+     */
+    @SafeVarargs
+    public ShardedTimingWheel(int shards, final int tickDuration, final int ticksPerWheel, final TimeUnit timeUnit,
+            String name, final Mode mode, final Expiration<E>... expirations) {
+        this(shards, name, new ShardFactory<E>() {
+
+            @Override
+            public TimingWheel<E> create(int shard, String name) {
+                return new MemTimingWheel<E>(tickDuration, ticksPerWheel, timeUnit, name, mode, expirations);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public ShardedTimingWheel(int shards, String name, ShardFactory<E> shardFactory) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be greater than 0: " + shards);
+        }
+        if (shardFactory == null) {
+            throw new NullPointerException("shardFactory");
+        }
+        this.name = name == null ? "Sharded-Timing-Wheel" : name;
+        this.shards = (TimingWheel<E>[]) new TimingWheel<?>[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = shardFactory.create(i, this.name + "-" + i);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public TimingWheel<E> getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * @return the shard the entry goes to, by the hash of its key.
+     */
+    public TimingWheel<E> shardOf(E e) {
+        return shards[indexOf(e)];
+    }
+
+    private int indexOf(E e) {
+        String key = e.getKey();
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % shards.length;
+    }
+
+    /**
+     * Give every shard its own bounded expiration pool, so the expirations scale with the shards instead of
+     * queueing on one pool. Must be called before {@link #start()}.
+     */
+    public void setExpirationDispatchers(int threadsPerShard, int queueCapacityPerShard, Backpressure backpressure) {
+        for (TimingWheel<E> shard : shards) {
+            shard.setExpirationDispatcher(ExpirationDispatchers.bounded(shard.getName() + "-expiration", threadsPerShard,
+                    queueCapacityPerShard, backpressure), 30000);
+        }
+    }
+
+    public void setExpirationBatchSize(int expirationBatchSize) {
+        for (TimingWheel<E> shard : shards) {
+            shard.setExpirationBatchSize(expirationBatchSize);
+        }
+    }
+
+    public void setCatchUpLag(int lagTicks) {
+        for (TimingWheel<E> shard : shards) {
+            shard.setCatchUpLag(lagTicks);
+        }
+    }
+
+    /**
+     * Set the same listener on every shard, so it must be thread safe: the shards call it from their own tick
+     * and expiration threads.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        for (TimingWheel<E> shard : shards) {
+            shard.setMetricsListener(metricsListener);
+        }
+    }
+
+    /**
+     * Collect one {@link WheelMetrics} for all shards and publish it through JMX under the name of this wheel
+     * until it stops: the histograms are fed by every shard, the gauges are summed over them.
+     */
+    public synchronized WheelMetrics enableMetrics() {
+        if (metrics == null) {
+            WheelMetrics sharded = new ShardedMetrics();
+            sharded.register();
+            metrics = sharded;
+        }
+        setMetricsListener(metrics);
+        return metrics;
+    }
+
+    public void start() {
+        for (TimingWheel<E> shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * Stop every shard.
+     *
+     * @return <tt>true</tt> if any shard was running.
+     */
+    public boolean stop() {
+        boolean stopped = false;
+        for (TimingWheel<E> shard : shards) {
+            stopped |= shard.stop();
+        }
+        synchronized (this) {
+            if (metrics != null) {
+                metrics.unregister();
+            }
+        }
+        return stopped;
+    }
+
+    public boolean running() {
+        for (TimingWheel<E> shard : shards) {
+            if (shard.running()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @see TimingWheel#add(Entry)
+     */
+    public long add(E e) {
+        return shardOf(e).add(e);
+    }
+
+    /**
+     * @see TimingWheel#add(Entry, long, TimeUnit)
+     */
+    public long add(E e, long delay, TimeUnit unit) {
+        return shardOf(e).add(e, delay, unit);
+    }
+
+    /**
+     * @see TimingWheel#addAll(Collection)
+     */
+    public long addAll(Collection<E> entries) {
+        long remain = 0;
+        List<List<E>> partitions = partition(entries);
+        for (int i = 0; i < shards.length; i++) {
+            List<E> partition = partitions.get(i);
+            if (partition != null) {
+                remain = shards[i].addAll(partition);
+            }
+        }
+        return remain;
+    }
+
+    /**
+     * @see TimingWheel#addAll(Collection, long, TimeUnit)
+     */
+    public long addAll(Collection<E> entries, long delay, TimeUnit unit) {
+        long remain = 0;
+        List<List<E>> partitions = partition(entries);
+        for (int i = 0; i < shards.length; i++) {
+            List<E> partition = partitions.get(i);
+            if (partition != null) {
+                remain = shards[i].addAll(partition, delay, unit);
+            }
+        }
+        return remain;
+    }
+
+    /**
+     * @see TimingWheel#touch(Entry)
+     */
+    public long touch(E e) {
+        return shardOf(e).touch(e);
+    }
+
+    /**
+     * @see TimingWheel#touch(Entry, long, TimeUnit)
+     */
+    public long touch(E e, long delay, TimeUnit unit) {
+        return shardOf(e).touch(e, delay, unit);
+    }
+
+    public boolean remove(E e) {
+        return shardOf(e).remove(e);
+    }
+
+    /**
+     * @see TimingWheel#removeAll(Collection)
+     */
+    public int removeAll(Collection<E> entries) {
+        int removed = 0;
+        List<List<E>> partitions = partition(entries);
+        for (int i = 0; i < shards.length; i++) {
+            List<E> partition = partitions.get(i);
+            if (partition != null) {
+                removed += shards[i].removeAll(partition);
+            }
+        }
+        return removed;
+    }
+
+    public boolean exist(E e) {
+        return shardOf(e).exist(e);
+    }
+
+    /**
+     * @return the entries scheduled in all shards, -1 if a shard cannot tell.
+     */
+    public long size() {
+        long size = 0;
+        for (TimingWheel<E> shard : shards) {
+            long n = shard.size();
+            if (n < 0) {
+                return -1;
+            }
+            size += n;
+        }
+        return size;
+    }
+
+    /**
+     * the entries by shard index, null for a shard getting none.
+     */
+    private List<List<E>> partition(Collection<E> entries) {
+        List<List<E>> partitions = new ArrayList<List<E>>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            partitions.add(null);
+        }
+        for (E e : entries) {
+            int i = indexOf(e);
+            List<E> partition = partitions.get(i);
+            if (partition == null) {
+                partition = new ArrayList<E>();
+                partitions.set(i, partition);
+            }
+            partition.add(e);
+        }
+        return partitions;
+    }
+
+    private class ShardedMetrics extends WheelMetrics {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running();
+        }
+
+        @Override
+        public long getLiveEntries() {
+            return size();
+        }
+
+        /**
+         * the dispatchers may be shared, so each is counted once.
+         */
+        @Override
+        public int getExpirationQueueDepth() {
+            List<Object> seen = new ArrayList<Object>();
+            int depth = 0;
+            for (TimingWheel<E> shard : shards) {
+                Object dispatcher = shard.getExpirationDispatcher();
+                if (seen.contains(dispatcher)) {
+                    continue;
+                }
+                seen.add(dispatcher);
+                int n = shard.getExpirationDispatcher().queueDepth();
+                if (n < 0) {
+                    return -1;
+                }
+                depth += n;
+            }
+            return depth;
+        }
+    }
+
+}
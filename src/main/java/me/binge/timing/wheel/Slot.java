@@ -1,14 +1,27 @@
 package me.binge.timing.wheel;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import me.binge.timing.wheel.entry.Entry;
 
 public abstract class Slot<E extends Entry> {
+    protected int level;
     protected long cycle;
     protected int id;
 
+    private volatile boolean expired = false;
+
     protected Slot(long cycle, int id) {
+        this(0, cycle, id);
+    }
+
+    protected Slot(int level, long cycle, int id) {
+        this.level = level;
         this.cycle = cycle;
         this.id = id;
     }
@@ -17,8 +30,90 @@ public abstract class Slot<E extends Entry> {
 
     public abstract E remove(E e);
 
+    /**
+     * Add a batch of entries, one by one here. Stores that can take a batch at once should override it.
+     */
+    public void addAll(Collection<E> entries) {
+        for (E e : entries) {
+            add(e);
+        }
+    }
+
+    /**
+     * Remove a batch of entries, one by one here. Stores that can take a batch at once should override it.
+     */
+    public void removeAll(Collection<E> entries) {
+        for (E e : entries) {
+            remove(e);
+        }
+    }
+
     public abstract Set<E> elements();
 
+    /**
+     * @return how many entries the slot holds without taking them out, -1 if the store cannot tell.
+     */
+    public int size() {
+        return -1;
+    }
+
+    /**
+     * The entries in batches of at most <tt>batchSize</tt>, for the tick thread to hand out while the rest
+     * is still being fetched. Cut from {@link #elements()} here, a store holding the entries elsewhere
+     * should fetch them batch by batch so a huge slot never sits in memory at once.
+     */
+    public Iterator<List<E>> drain(final int batchSize) {
+        final Iterator<E> elements = elements().iterator();
+        return new Iterator<List<E>>() {
+
+            @Override
+            public boolean hasNext() {
+                return elements.hasNext();
+            }
+
+            @Override
+            public List<E> next() {
+                if (!elements.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<E> batch = new ArrayList<E>(batchSize);
+                while (elements.hasNext() && batch.size() < batchSize) {
+                    batch.add(elements.next());
+                }
+                return batch;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Whether the slot keeps what {@link #drain(int)} hands out until each entry is taken out with
+     * {@link #remove(Entry)}, which answers null for an entry moved or removed since. Then expiring and
+     * cascading ask the slot alone, e.g. for copies that no one else synchronizes on. False here, the
+     * expiration checks the indicator.
+     */
+    public boolean keepsDrained() {
+        return false;
+    }
+
+    /**
+     * Move an entry drained from this slot into another one, unless it has been moved or removed meanwhile.
+     * Taken out and added here, a slot that {@link #keepsDrained()} should do both at once.
+     *
+     * @return whether the entry was moved.
+     */
+    public boolean transfer(E e, Slot<E> to) {
+        if (remove(e) == null) {
+            return false;
+        }
+        to.add(e);
+        return true;
+    }
+
     public int getId() {
         return id;
     }
@@ -27,10 +122,26 @@ public abstract class Slot<E extends Entry> {
         return cycle;
     }
 
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * mark the slot as being drained, so a lock-free add racing with the drain can take its entry back.
+     */
+    public void markExpired() {
+        this.expired = true;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        result = prime * result + level;
         result = prime * result + (int) (cycle ^ (cycle >>> 32));
         result = prime * result + id;
         return result;
@@ -46,6 +157,8 @@ public abstract class Slot<E extends Entry> {
             return false;
         @SuppressWarnings("unchecked")
         Slot<E> other = (Slot<E>) obj;
+        if (level != other.level)
+            return false;
         if (cycle != other.cycle)
             return false;
         if (id != other.id)
@@ -55,7 +168,7 @@ public abstract class Slot<E extends Entry> {
 
     @Override
     public String toString() {
-        return "Slot [cycle=" + cycle + ", id=" + id + "]";
+        return "Slot [level=" + level + ", cycle=" + cycle + ", id=" + id + "]";
     }
 
 }
@@ -1,20 +1,34 @@
 package me.binge.timing.wheel;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import me.binge.timing.wheel.Wheel.SlotGenerator;
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.expire.BatchExpirationWorker;
+import me.binge.timing.wheel.expire.Discardable;
 import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.expire.ExpirationDispatcher;
+import me.binge.timing.wheel.expire.ExpirationDispatchers;
 import me.binge.timing.wheel.expire.ExpirationWorker;
+import me.binge.timing.wheel.metrics.MetricsListener;
+import me.binge.timing.wheel.metrics.WheelMetrics;
+import me.binge.timing.wheel.tick.FencedTickCondition;
+import me.binge.timing.wheel.tick.FencingException;
 import me.binge.timing.wheel.tick.TickCondition;
-import me.binge.timing.wheel.utils.ShutdownHookUtils;
+import me.binge.timing.wheel.tick.TickListener;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,9 +71,13 @@ public abstract class TimingWheel<E extends Entry> {
 
     private final static Log log = LogFactory.getLog(TimingWheel.class);
 
-    private final static ExecutorService EXPIRATION_EXECUTOR = Executors.newCachedThreadPool();
+    /**
+     * how many entries the tick thread takes out of a slot at a time when no expiration batch size is set.
+     */
+    protected static final int DRAIN_BATCH_SIZE = 1024;
 
     protected final long tickDuration;
+    protected final long tickDurationNanos;
     protected final int ticksPerWheel;
 
     protected final Expiration<E>[] expirations;
@@ -76,21 +94,236 @@ public abstract class TimingWheel<E extends Entry> {
 
     private volatile boolean running = false;
 
+    private volatile ExpirationDispatcher expirationDispatcher = ExpirationDispatchers.shared();
+
+    private long dispatcherShutdownTimeout = 30000;
+
+    private volatile int expirationBatchSize = 0;
+
+    /**
+     * null unless slots are expired in parallel, see {@link #setParallelExpiry(ForkJoinPool, int)}.
+     */
+    private volatile ForkJoinPool expiryPool;
+
+    private volatile int expiryRange;
+
+    private volatile int catchUpLag;
+
+    /**
+     * how many slots have been handed over to the expiry pool and not expired yet, the monitor waited on by {@link #stop()}.
+     */
+    private final Object expiringSlotsMonitor = new Object();
+    private int expiringSlots;
+
+    private volatile long spinNanos;
+
+    private volatile TickListener tickListener;
+
+    /**
+     * null unless metrics are enabled, so a wheel without them pays a null check per tick and per expiration.
+     */
+    private volatile MetricsListener metricsListener;
+
+    private WheelMetrics registeredMetrics;
+
+    /**
+     * the tick the tick thread started at, and its due time on the {@link System#nanoTime()} clock, 0 until started.
+     */
+    private volatile long originTick;
+    private volatile long tickOrigin;
+
+    /**
+     * schedule without entry monitors and without the indicator: the slot owning an entry is moved with
+     * a CAS on {@link Entry#casOwner(Object, Object)}, so an entry is identified by the instance rather than its key.
+     */
+    protected boolean lockFree = false;
+
     // ~ -------------------------------------------------------------------------------------------------------------
 
+    /**
+     * @return the tick duration in millisecond, 0 for a wheel ticking faster than every millisecond.
+     */
     public long getTickDuration() {
         return tickDuration;
     }
 
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickDurationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public String getName() {
+        return wheelName;
+    }
+
+    public TickListener getTickListener() {
+        return tickListener;
+    }
+
+    /**
+     * Be told the lateness and duration of every tick, see {@link TickListener}. None by default.
+     */
+    public void setTickListener(TickListener tickListener) {
+        this.tickListener = tickListener;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Be told about every tick, expiring slot, expiration and failed callback, see {@link MetricsListener}.
+     * None by default, null turns metrics off again.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Collect {@link WheelMetrics} and publish them through JMX under the name of this wheel until it stops.
+     *
+     * @return the metrics, also readable directly.
+     */
+    public synchronized WheelMetrics enableMetrics() {
+        if (registeredMetrics == null) {
+            WheelMetrics metrics = new WheelMetrics(this);
+            metrics.register();
+            registeredMetrics = metrics;
+        }
+        setMetricsListener(registeredMetrics);
+        return registeredMetrics;
+    }
+
+    /**
+     * The entries scheduled right now, counted over the slots of every wheel level, so it is meant for
+     * monitoring rather than the hot path.
+     *
+     * @return the count, -1 if the slots cannot tell.
+     */
+    public long size() {
+        long size = 0;
+        for (Wheel<E> w = wheel; w != null; w = w.getOverflow()) {
+            for (Slot<E> slot : w.slots()) {
+                int n = slot.size();
+                if (n < 0) {
+                    return -1;
+                }
+                size += n;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The tick thread parks until this close to the next tick and spins the rest of the way, trading a
+     * busy core for accuracy. By default 50 microseconds for wheels ticking faster than every millisecond,
+     * none otherwise.
+     */
+    public void setSpinThreshold(long spin, TimeUnit unit) {
+        if (spin < 0) {
+            throw new IllegalArgumentException("spin must not be negative: " + spin);
+        }
+        this.spinNanos = unit.toNanos(spin);
+    }
+
+    public ExpirationDispatcher getExpirationDispatcher() {
+        return expirationDispatcher;
+    }
+
+    /**
+     * Replace the dispatcher running the expirations, the shared unbounded pool by default.
+     *
+     * @param expirationDispatcher see {@link ExpirationDispatchers}
+     * @param shutdownTimeout how long {@link #stop()} waits for the dispatched expirations, in millisecond.
+     */
+    public void setExpirationDispatcher(ExpirationDispatcher expirationDispatcher, long shutdownTimeout) {
+        if (expirationDispatcher == null) {
+            throw new NullPointerException("expirationDispatcher");
+        }
+        if (running) {
+            throw new IllegalStateException("Cannot replace the expiration dispatcher once started");
+        }
+        this.expirationDispatcher = expirationDispatcher;
+        this.dispatcherShutdownTimeout = shutdownTimeout;
+    }
+
     public abstract Indicator<E> getIndicator();
 
-    public abstract Slot<E> workSlot(long cycle, int id);
+    public abstract Slot<E> workSlot(int level, long cycle, int id);
+
+    public Slot<E> workSlot(long cycle, int id) {
+        return workSlot(0, cycle, id);
+    }
+
+    public int getExpirationBatchSize() {
+        return expirationBatchSize;
+    }
+
+    /**
+     * Expire a slot in chunks of at most <tt>expirationBatchSize</tt> entries, each chunk is unlinked in one pass
+     * and handed to {@link Expiration#expiredBatch(List)} as one task. 0 (the default) expires entry by entry.
+     */
+    public void setExpirationBatchSize(int expirationBatchSize) {
+        if (expirationBatchSize < 0) {
+            throw new IllegalArgumentException("expirationBatchSize must not be negative: " + expirationBatchSize);
+        }
+        this.expirationBatchSize = expirationBatchSize;
+    }
+
+    public ForkJoinPool getParallelExpiryPool() {
+        return expiryPool;
+    }
+
+    /**
+     * Expire the slots on a fork join pool: the tick thread hands the slot over and goes on ticking, a task
+     * drains it and splits every drained batch into ranges of at most <tt>range</tt> entries, which the
+     * workers steal from each other and expire right there, without going through the expiration dispatcher.
+     * So a slot of a million entries delays no tick, at the cost of the order between two slots expiring at
+     * once. The pool is not shut down by the wheel, {@link #stop()} only waits for the slots handed over.
+     *
+     * @param pool null expires the slots on the tick thread again, the default.
+     * @param range how many entries one task expires, also the chunk size if an expiration batch size is set.
+     */
+    public void setParallelExpiry(ForkJoinPool pool, int range) {
+        if (range <= 0) {
+            throw new IllegalArgumentException("range must be greater than 0: " + range);
+        }
+        if (running) {
+            throw new IllegalStateException("Cannot change the parallel expiry once started");
+        }
+        this.expiryRange = range;
+        this.expiryPool = pool;
+    }
+
+    public int getCatchUpLag() {
+        return catchUpLag;
+    }
+
+    /**
+     * Once the tick thread is more than <tt>lagTicks</tt> ticks behind, e.g. after a gc pause or a slow store,
+     * process the overdue ticks up to the end of the cycle as one: the wheel jumps to the last of them in a
+     * single step, and the overdue slots are drained into shared chunks instead of being ticked through one by
+     * one. Each chunk is one dispatched task. The lag is logged and told to the metrics listener, see
+     * {@link MetricsListener#caughtUp(long, int, long)}. 0, the default, ticks through every missed tick.
+     */
+    public void setCatchUpLag(int lagTicks) {
+        if (lagTicks < 0) {
+            throw new IllegalArgumentException("lagTicks must not be negative: " + lagTicks);
+        }
+        this.catchUpLag = lagTicks;
+    }
+
+    /**
+     * Create the slot layout of this timing wheel, called from the constructor.
+     */
+    protected Wheel<E> newWheel(SlotGenerator<E> slotGenerator) {
+        return new Wheel<E>(slotGenerator);
+    }
 
     /**
      * Construct a timing wheel.
      *
      * @param tickDuration
-     *            tick duration with specified time unit.
+     *            tick duration with specified time unit, down to microseconds.
      * @param ticksPerWheel
      * @param timeUnit
      * @param wheelName a name for this wheel instance
@@ -107,8 +340,10 @@ public abstract class TimingWheel<E extends Entry> {
             throw new IllegalArgumentException("ticksPerWheel must be greater than 0: " + ticksPerWheel);
         }
 
-        this.tickDuration = TimeUnit.MILLISECONDS.convert(tickDuration, timeUnit);
+        this.tickDurationNanos = timeUnit.toNanos(tickDuration);
+        this.tickDuration = TimeUnit.NANOSECONDS.toMillis(tickDurationNanos);
         this.ticksPerWheel = ticksPerWheel + 1;
+        this.spinNanos = tickDurationNanos < TimeUnit.MILLISECONDS.toNanos(1) ? TimeUnit.MICROSECONDS.toNanos(50) : 0;
 
         this.expirations = expirations;
         this.tickCondition = tickCondition;
@@ -117,15 +352,14 @@ public abstract class TimingWheel<E extends Entry> {
         }
 
         this.wheelName = wheelName;
-        this.wheel = new Wheel<E>(new SlotGenerator<E>() {
+        this.wheel = newWheel(new SlotGenerator<E>() {
 
             @Override
-            public Slot<E> gene(long cycle, int id) {
-                return workSlot(cycle, id);
+            public Slot<E> gene(int level, long cycle, int id) {
+                return workSlot(level, cycle, id);
             }
         });
         workerThread = new Thread(new TickWorker(), this.wheelName);
-        ShutdownHookUtils.hook(EXPIRATION_EXECUTOR, true);
     }
 
     @SafeVarargs
@@ -175,6 +409,21 @@ public abstract class TimingWheel<E extends Entry> {
                 interrupted = true;
             }
         }
+        try {
+            if (!awaitExpiringSlots(dispatcherShutdownTimeout)) {
+                log.warn(wheelName + " stopped before all slots handed to the expiry pool expired");
+            }
+            if (!expirationDispatcher.shutdown(dispatcherShutdownTimeout, TimeUnit.MILLISECONDS)) {
+                log.warn(wheelName + " stopped before all expirations finished");
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        synchronized (this) {
+            if (registeredMetrics != null) {
+                registeredMetrics.unregister();
+            }
+        }
         if (interrupted) {
             Thread.currentThread().interrupt();
         }
@@ -186,6 +435,20 @@ public abstract class TimingWheel<E extends Entry> {
         return running;
     }
 
+    private boolean awaitExpiringSlots(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (expiringSlotsMonitor) {
+            while (expiringSlots > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(expiringSlotsMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
     /**
      * Add a element to {@link TimingWheel} and start to count down its life-time.
      *
@@ -193,123 +456,1144 @@ public abstract class TimingWheel<E extends Entry> {
      * @return remain time to be expired in millisecond.
      */
     public long add(E e) {
-        synchronized(e) {
-            checkAdd(e);
-            Slot<E> slot = this.wheel.get(getCurrentCycle(), getPreviousTickIndex());
-            e.init(slot.getCycle(), slot.getId());
-            slot.add(e);
-            getIndicator().put(e, slot);
-            return (ticksPerWheel - 1) * tickDuration;
-        }
+        return add(e, (ticksPerWheel - 1) * tickDurationNanos, TimeUnit.NANOSECONDS);
     }
 
-    private void checkAdd(E e) {
-        Slot<E> slot = getIndicator().get(e);
-        if (slot != null) {
-            slot.remove(e);
+    /**
+     * Add a element to {@link TimingWheel} with its own life-time, rounded up to whole ticks.<br>
+     * Delays beyond one revolution are parked in the overflow wheels and cascaded into the finer ones
+     * as their slot comes up, so scheduling and expiring stay O(1) for any delay.
+     *
+     * @param e
+     * @param delay
+     * @param unit
+     * @return remain time to be expired in millisecond.
+     */
+    public long add(E e, long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(delay);
+        long ticks = ticks(nanos);
+        if (lockFree) {
+            e.setTime(System.currentTimeMillis());
+            e.renew(0);
+            long currentTick = getCurrentTick();
+            schedule(e, expireTick(currentTick, nanos, ticks));
+            return remain(ticks);
+        }
+        synchronized(e) {
+            long currentTick;
+            long expireTick;
+            Slot<E> slot;
+            do { // a ring wheel answers null when the tick moved on meanwhile.
+                currentTick = getCurrentTick();
+                expireTick = expireTick(currentTick, nanos, ticks);
+                slot = locate(currentTick, expireTick);
+            } while (slot == null);
+            e.init(slot.getLevel(), slot.getCycle(), slot.getId(), expireTick);
+            relocate(e, slot);
+            while (slot.isExpired() || passed(slot)) { // drained while added, the tick only comes back to it a revolution later.
+                currentTick = getCurrentTick();
+                expireTick = Math.max(expireTick, currentTick + 1);
+                Slot<E> next = locate(currentTick, expireTick);
+                if (next == null) {
+                    continue;
+                }
+                e.init(next.getLevel(), next.getCycle(), next.getId(), expireTick);
+                if (!readd(e, slot, next)) {
+                    break;
+                }
+                slot = next;
+            }
+            return remain(ticks);
         }
     }
 
-
-    public boolean exist(E e) {
-        return getIndicator().get(e) != null;
+    /**
+     * Add many elements with the same life-time, the target slot is resolved once for all of them.
+     *
+     * @param entries
+     * @return remain time to be expired in millisecond.
+     */
+    public long addAll(Collection<E> entries) {
+        return addAll(entries, (ticksPerWheel - 1) * tickDurationNanos, TimeUnit.NANOSECONDS);
     }
 
-    protected abstract int getCurrentTickIndex();
-    protected abstract int setCurrentTickIndex(int currentTickIndex);
-    protected abstract long getCurrentCycle();
-    protected abstract void incrCurrentCycle();
-
-    protected int getPreviousTickIndex() {
-        lock.readLock().lock();
-        try {
-            int cti = getCurrentTickIndex();
-            if (cti == 0) {
-                return ticksPerWheel - 1;
+    /**
+     * Add many elements with the same life-time, the target slot is resolved once for all of them and
+     * the backend may apply the whole batch at once, see {@link #relocateAll(Collection, Slot, long)}.
+     *
+     * @param entries
+     * @param delay
+     * @param unit
+     * @return remain time to be expired in millisecond.
+     */
+    public long addAll(Collection<E> entries, long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(delay);
+        long ticks = ticks(nanos);
+        if (entries.isEmpty()) {
+            return remain(ticks);
+        }
+        if (lockFree) {
+            long now = System.currentTimeMillis();
+            long expireTick = expireTick(getCurrentTick(), nanos, ticks);
+            for (E e : entries) {
+                e.setTime(now);
+                e.renew(0);
+                schedule(e, expireTick);
+            }
+            return remain(ticks);
+        }
+        long currentTick;
+        long expireTick;
+        Slot<E> slot;
+        do {
+            currentTick = getCurrentTick();
+            expireTick = expireTick(currentTick, nanos, ticks);
+            slot = locate(currentTick, expireTick);
+        } while (slot == null);
+        relocateAll(entries, slot, expireTick);
+        while (slot.isExpired() || passed(slot)) { // as for add.
+            currentTick = getCurrentTick();
+            expireTick = Math.max(expireTick, currentTick + 1);
+            Slot<E> next = locate(currentTick, expireTick);
+            if (next == null) {
+                continue;
+            }
+            if (slot.keepsDrained()) {
+                for (E e : entries) {
+                    e.init(next.getLevel(), next.getCycle(), next.getId(), expireTick);
+                    readd(e, slot, next);
+                }
+            } else {
+                relocateAll(entries, next, expireTick);
             }
+            slot = next;
+        }
+        return remain(ticks);
+    }
 
-            return cti - 1;
-        } finally {
-            lock.readLock().unlock();
+    /**
+     * Move an entry added to a slot drained meanwhile into its next slot. A slot keeping what it drained
+     * gives the entry up only if the drained copy has not expired yet, otherwise the entry already did.
+     *
+     * @return whether the entry is now in the next slot.
+     */
+    private boolean readd(E e, Slot<E> drained, Slot<E> next) {
+        if (!drained.keepsDrained()) {
+            relocate(e, next);
+            return true;
+        }
+        if (!drained.transfer(e, next)) {
+            return false;
         }
+        getIndicator().put(e, next);
+        return true;
     }
 
     /**
-     * Removes the specified element from timing wheel.
+     * Renew the life-time of a scheduled element, see {@link #touch(Entry, long, TimeUnit)}.
      *
      * @param e
-     * @return <tt>true</tt> if this timing wheel contained the specified
-     *         element
+     * @return remain time to be expired in millisecond.
      */
-    public boolean remove(E e) {
-        synchronized (e) {
-            Slot<E> slot = getIndicator().get(e);
-            if (slot == null) {
-                return false;
-            }
+    public long touch(E e) {
+        return touch(e, (ticksPerWheel - 1) * tickDurationNanos, TimeUnit.NANOSECONDS);
+    }
 
-            getIndicator().remove(e);
-            return slot.remove(e) != null;
+    /**
+     * Push the expiry of a scheduled element back to <tt>delay</tt> from now, e.g. an idle timeout renewed
+     * on every packet. Lazily where the slots hold the element instances: only the new expire tick is
+     * written on the element, which is moved to its new slot when its current one comes up, so a renewal
+     * costs one field write and an element renewed many times per life-time is moved once.<br>
+     * A lazy renewal only pushes the expiry back, a delay shorter than the remaining life-time has no effect,
+     * and touching an element not in the wheel does nothing. Elsewhere, e.g. on redis, it is an {@link #add}.
+     *
+     * @param e
+     * @param delay
+     * @param unit
+     * @return remain time to be expired in millisecond.
+     */
+    public long touch(E e, long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(delay);
+        long ticks = ticks(nanos);
+        if (!renew(e, expireTick(getCurrentTick(), nanos, ticks))) {
+            return add(e, delay, unit);
         }
+        return remain(ticks);
     }
 
-    public static class ElementExpireHandler<E extends Entry> implements Callable<E> {
+    /**
+     * Record the lazy renewal of an element, on the instance where the slots hold it, see {@link #holdsEntries()}.
+     *
+     * @return <tt>false</tt> if the renewal cannot be recorded lazily and the element has to be added again.
+     */
+    protected boolean renew(E e, long renewTick) {
+        if (!holdsEntries()) {
+            return false;
+        }
+        e.renew(renewTick);
+        return true;
+    }
 
-        private Indicator<E> indicator;
-        private Slot<E> slot;
-        private E e;
+    /**
+     * Whether the slots hold the very element instances added, so a renewal written on the instance is
+     * seen when its slot comes up. The wheels storing copies answer false.
+     */
+    protected boolean holdsEntries() {
+        return false;
+    }
 
-        public ElementExpireHandler(Indicator<E> indicator, Slot<E> slot, E e) {
-            this.indicator = indicator;
-            this.slot = slot;
-            this.e = e;
+    /**
+     * the delay rounded up to whole ticks, at least one.
+     */
+    private long ticks(long nanos) {
+        long ticks = nanos / tickDurationNanos + (nanos % tickDurationNanos == 0 ? 0 : 1);
+        return ticks < 1 ? 1 : ticks;
+    }
+
+    /**
+     * The tick an entry added now with the given delay expires at. Counted from the current tick, unless
+     * the ticks of this wheel are kept by this process alone: then counted on the clock the tick thread
+     * keeps to, so an entry added while the tick thread lags behind does not fire early.
+     */
+    private long expireTick(long currentTick, long delayNanos, long ticks) {
+        long origin = tickOrigin;
+        if (origin == 0 || tickCondition != null || !isLocalClock()) {
+            return currentTick + ticks;
         }
+        long elapsed = System.nanoTime() + delayNanos - origin;
+        long expireTick = originTick + (elapsed <= 0 ? 0 : (elapsed + tickDurationNanos - 1) / tickDurationNanos);
+        return expireTick > currentTick ? expireTick : currentTick + 1;
+    }
 
-        @Override
-        public E call() throws Exception {
-            slot.remove(e);
+    /**
+     * Whether the ticks of this wheel advance in this process only, so adds may count on its clock. The
+     * wheels sharing their tick with other nodes answer false.
+     */
+    protected boolean isLocalClock() {
+        return false;
+    }
+
+    /**
+     * the time the ticks take in millisecond, rounded up.
+     */
+    private long remain(long ticks) {
+        long nanos = ticks * tickDurationNanos;
+        return nanos / 1000000 + (nanos % 1000000 == 0 ? 0 : 1);
+    }
+
+    /**
+     * Take the entry out of the slot it is in, if any, put it into the given slot and index it there.
+     * Backends may override this to do it in one round trip.
+     */
+    protected void relocate(E e, Slot<E> slot) {
+        checkAdd(e);
+        slot.add(e);
+        getIndicator().put(e, slot);
+    }
+
+    /**
+     * {@link #relocate(Entry, Slot)} for a batch of entries expiring at the same tick. Each entry is taken
+     * out of its old slot and indexed under its monitor, as expiring does, then the whole batch goes into
+     * the slot through {@link Slot#addAll(Collection)}. The slot is a future one, so it is not expired meanwhile.
+     */
+    protected void relocateAll(Collection<E> entries, Slot<E> slot, long expireTick) {
+        Indicator<E> indicator = getIndicator();
+        for (E e : entries) {
             synchronized (e) {
-                Slot<E> latestSlot = indicator.get(e);
-                if (latestSlot.equals(slot)) {
-                    indicator.remove(e);
+                Slot<E> old = indicator.get(e);
+                if (old != null && !old.equals(slot)) {
+                    old.remove(e);
                 }
+                e.init(slot.getLevel(), slot.getCycle(), slot.getId(), expireTick);
+                indicator.put(e, slot);
             }
-            return e;
         }
+        slot.addAll(entries);
+    }
 
+    /**
+     * Find the slot of the finest wheel whose span still covers the expire tick.
+     */
+    private Slot<E> locate(long currentTick, long expireTick) {
+        if (expireTick < currentTick) {
+            expireTick = currentTick;
+        }
+        Wheel<E> w = this.wheel;
+        long width = 1;
+        long span = ticksPerWheel;
+        while (expireTick - currentTick >= span && span <= Long.MAX_VALUE / ticksPerWheel) {
+            w = w.overflow();
+            width = span;
+            span *= ticksPerWheel;
+        }
+        long bucket = expireTick / width;
+        return w.get(bucket / ticksPerWheel, (int) (bucket % ticksPerWheel));
     }
 
-    private void notifyExpired(long cycle, int idx) {
-        for (long i = cycle; i > -1; i--) {
-            Slot<E> slot = wheel.get(i, idx);
+    /**
+     * Lock-free scheduling: take the ownership of the entry with a CAS and then link it into the slot.
+     * A slot drained meanwhile is noticed by its expired mark, or by its tick already being past for a slot
+     * the tick will not come back to, the entry is then taken back and placed again.
+     */
+    private void schedule(E e, long expireTick) {
+        for (;;) {
+            long currentTick = getCurrentTick();
+            if (expireTick <= currentTick) {
+                expireTick = currentTick + 1;
+            }
+            Slot<E> slot = locate(currentTick, expireTick);
             if (slot == null) {
-                break;
+                continue;
+            }
+            Object owner = e.getOwner();
+            if (!e.casOwner(owner, slot)) {
+                continue;
             }
-            Set<E> elements = slot.elements();
-            for (E e : elements) {
-                EXPIRATION_EXECUTOR.submit(new ExpirationWorker<E>(new ElementExpireHandler<E>(getIndicator(), slot, e), e, expirations));
+            if (owner != null && owner != slot) {
+                unlink(e, owner);
             }
-            wheel.clear(i, idx);
+            e.locate(slot.getLevel(), slot.getCycle(), slot.getId(), expireTick);
+            slot.add(e);
+            if ((slot.isExpired() || slotTick(slot) < getCurrentTick()) && e.casOwner(slot, null)) {
+                unlink(e, slot);
+                continue;
+            }
+            return;
         }
-
     }
 
-    // ~ -------------------------------------------------------------------------------------------------------------
+    /**
+     * Whether the tick is past an overflow slot not cascaded, e.g. one created behind the tick by an add
+     * racing with the creation of its wheel: it would only be cascaded once its position comes up again.
+     * The finest slots behind the tick are noticed by their expired mark.
+     */
+    private boolean passed(Slot<E> slot) {
+        return slot.getLevel() > 0 && slotTick(slot) < getCurrentTick();
+    }
 
-    protected class TickWorker implements Runnable {
+    /**
+     * the tick the slot is drained or cascaded at.
+     */
+    private long slotTick(Slot<E> slot) {
+        long tick = slot.getCycle() * ticksPerWheel + slot.getId();
+        for (int level = 0; level < slot.getLevel() && tick <= Long.MAX_VALUE / ticksPerWheel; level++) {
+            tick *= ticksPerWheel;
+        }
+        return tick;
+    }
 
-        private long startTime;
-        private long tick;
+    /**
+     * Remove the entry from a slot it no longer belongs to, putting it back if it has been rescheduled
+     * into that very slot meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    private void unlink(E e, Object owner) {
+        Slot<E> slot = (Slot<E>) owner;
+        slot.remove(e);
+        if (e.getOwner() == slot) {
+            slot.add(e);
+        }
+    }
 
-        @Override
-        public void run() {
-            startTime = System.currentTimeMillis();
-            tick = 1;
-            for (; !shutdown.get();) {
+    private void checkAdd(E e) {
+        Slot<E> slot = getIndicator().get(e);
+        if (slot != null) {
+            slot.remove(e);
+        }
+    }
+
+
+    public boolean exist(E e) {
+        if (lockFree) {
+            return e.getOwner() != null;
+        }
+        return getIndicator().get(e) != null;
+    }
+
+    /**
+     * For the backends sharing their tick state, to stamp into every write of it, see {@link FencedTickCondition}.
+     *
+     * @return the fencing token the tick is granted under, -1 if the tick condition has none.
+     * @throws FencingException if the tick condition is fenced and this node has lost the tick meanwhile.
+     */
+    protected long fencingToken() {
+        TickCondition condition = tickCondition;
+        if (!(condition instanceof FencedTickCondition)) {
+            return -1;
+        }
+        long token = ((FencedTickCondition) condition).fencingToken();
+        if (token < 0) {
+            throw new FencingException(wheelName + " lost the tick before writing it");
+        }
+        return token;
+    }
+
+    protected abstract int getCurrentTickIndex();
+    protected abstract int setCurrentTickIndex(int currentTickIndex);
+    protected abstract long getCurrentCycle();
+    protected abstract void incrCurrentCycle();
+
+    /**
+     * @return the absolute tick of the wheel, i.e. <tt>cycle * ticksPerWheel + index</tt>.
+     */
+    protected long getCurrentTick() {
+        lock.readLock().lock();
+        try {
+            return getCurrentCycle() * ticksPerWheel + getCurrentTickIndex();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected int getPreviousTickIndex() {
+        lock.readLock().lock();
+        try {
+            int cti = getCurrentTickIndex();
+            if (cti == 0) {
+                return ticksPerWheel - 1;
+            }
+
+            return cti - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the specified element from timing wheel.
+     *
+     * @param e
+     * @return <tt>true</tt> if this timing wheel contained the specified
+     *         element
+     */
+    public boolean remove(E e) {
+        if (lockFree) {
+            for (;;) {
+                Object owner = e.getOwner();
+                if (owner == null) {
+                    return false;
+                }
+                if (e.casOwner(owner, null)) {
+                    unlink(e, owner);
+                    return true;
+                }
+            }
+        }
+        synchronized (e) {
+            return cancel(e);
+        }
+    }
+
+    /**
+     * Removes the specified elements from timing wheel.
+     *
+     * @param entries
+     * @return how many of them were in the timing wheel.
+     */
+    public int removeAll(Collection<E> entries) {
+        int removed = 0;
+        if (lockFree) {
+            for (E e : entries) {
+                if (remove(e)) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+        return cancelAll(entries);
+    }
+
+    /**
+     * {@link #cancel(Entry)} for a batch of entries. One by one under their monitor here, as an in-memory
+     * entry racing with its expiry must be; backends may override this to use the bulk hooks of their
+     * {@link Indicator} and {@link Slot}s.
+     *
+     * @return how many of them were in the wheel.
+     */
+    protected int cancelAll(Collection<E> entries) {
+        int removed = 0;
+        for (E e : entries) {
+            synchronized (e) {
+                if (cancel(e)) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Take the entry out of its slot and the indicator. Backends may override this to do it in one round trip.
+     *
+     * @return <tt>true</tt> if the entry was in the wheel.
+     */
+    protected boolean cancel(E e) {
+        Slot<E> slot = getIndicator().get(e);
+        if (slot == null) {
+            return false;
+        }
+
+        getIndicator().remove(e);
+        return slot.remove(e) != null;
+    }
+
+    /**
+     * Unlink the expired entry from its slot and indicator, answers null if the entry has been removed
+     * or moved to another slot meanwhile.
+     */
+    public static class ElementExpireHandler<E extends Entry> implements Callable<E> {
+
+        private Indicator<E> indicator;
+        private Slot<E> slot;
+        private E e;
+
+        public ElementExpireHandler(Indicator<E> indicator, Slot<E> slot, E e) {
+            this.indicator = indicator;
+            this.slot = slot;
+            this.e = e;
+        }
+
+        @Override
+        public E call() throws Exception {
+            return expire(indicator, slot, e);
+        }
+
+        static <E extends Entry> E expire(Indicator<E> indicator, Slot<E> slot, E e) {
+            synchronized (e) {
+                Slot<E> latestSlot = indicator.get(e);
+                slot.remove(e);
+                if (!slot.equals(latestSlot)) {
+                    return null;
+                }
+                indicator.remove(e);
+            }
+            return e;
+        }
+
+    }
+
+    /**
+     * Expire handler of the lock-free mode, the entry is expired only by the one who takes its ownership
+     * away from the slot, so it races safely with re-adding and removing.
+     */
+    public static class OwnedElementExpireHandler<E extends Entry> implements Callable<E> {
+
+        private Slot<E> slot;
+        private E e;
+
+        public OwnedElementExpireHandler(Slot<E> slot, E e) {
+            this.slot = slot;
+            this.e = e;
+        }
+
+        @Override
+        public E call() throws Exception {
+            return expire(slot, e);
+        }
+
+        static <E extends Entry> E expire(Slot<E> slot, E e) {
+            if (!e.casOwner(slot, null)) {
+                return null;
+            }
+            return e;
+        }
+
+    }
+
+    /**
+     * Expire handler of the slots keeping what they drain, see {@link Slot#keepsDrained()}: the entry expires
+     * if the slot still holds it, it has been moved or removed meanwhile otherwise.
+     */
+    public static class KeptElementExpireHandler<E extends Entry> implements Callable<E> {
+
+        private Slot<E> slot;
+        private E e;
+
+        public KeptElementExpireHandler(Slot<E> slot, E e) {
+            this.slot = slot;
+            this.e = e;
+        }
+
+        @Override
+        public E call() throws Exception {
+            return slot.remove(e);
+        }
+
+    }
+
+    /**
+     * Unlink a chunk of expired entries of one slot in a single pass, answers the ones still owned by the slot.
+     */
+    public static class BatchElementExpireHandler<E extends Entry> implements Callable<List<E>> {
+
+        private Indicator<E> indicator;
+        private Slot<E> slot;
+        private List<E> entries;
+        private boolean lockFree;
+        private boolean copies;
+
+        public BatchElementExpireHandler(Indicator<E> indicator, Slot<E> slot, List<E> entries, boolean lockFree) {
+            this(indicator, slot, entries, lockFree, false);
+        }
+
+        /**
+         * @param copies the entries are copies decoded from the slot, no one else holds their monitors, so the
+         *            whole chunk is checked and unlinked with the bulk hooks of the indicator and the slot.
+         */
+        public BatchElementExpireHandler(Indicator<E> indicator, Slot<E> slot, List<E> entries, boolean lockFree, boolean copies) {
+            this.indicator = indicator;
+            this.slot = slot;
+            this.entries = entries;
+            this.lockFree = lockFree;
+            this.copies = copies;
+        }
+
+        @Override
+        public List<E> call() throws Exception {
+            if (slot.keepsDrained()) {
+                List<E> expired = new ArrayList<E>(entries.size());
+                for (E e : entries) {
+                    if (slot.remove(e) != null) {
+                        expired.add(e);
+                    }
+                }
+                return expired;
+            }
+            if (copies && !lockFree) {
+                return expireAll(indicator, slot, entries);
+            }
+            List<E> expired = new ArrayList<E>(entries.size());
+            for (E e : entries) {
+                E x = lockFree ? OwnedElementExpireHandler.expire(slot, e) : ElementExpireHandler.expire(indicator, slot, e);
+                if (x != null) {
+                    expired.add(x);
+                }
+            }
+            return expired;
+        }
+
+        static <E extends Entry> List<E> expireAll(Indicator<E> indicator, Slot<E> slot, List<E> entries) {
+            Map<E, Slot<E>> latestSlots = indicator.getAll(entries);
+            slot.removeAll(entries);
+            List<E> expired = new ArrayList<E>(latestSlots.size());
+            for (E e : entries) {
+                if (slot.equals(latestSlots.get(e))) {
+                    expired.add(e);
+                }
+            }
+            indicator.removeAll(expired);
+            return expired;
+        }
+
+    }
+
+    /**
+     * Move the entries of every overflow slot starting at this tick down into the finer wheels,
+     * coarsest level first so an entry may drop several levels at once. The slots left behind at the same
+     * position go along, e.g. one created by an add racing with the creation of its overflow wheel.
+     */
+    private void cascade(long cycle, int idx) {
+        List<Wheel<E>> overflows = new ArrayList<Wheel<E>>();
+        for (Wheel<E> w = wheel.getOverflow(); w != null; w = w.getOverflow()) {
+            overflows.add(w);
+        }
+        if (overflows.isEmpty()) {
+            return;
+        }
+        long currentTick = cycle * ticksPerWheel + idx;
+        long[] widths = new long[overflows.size()];
+        long width = 1;
+        for (int i = 0; i < widths.length; i++) {
+            width = width <= Long.MAX_VALUE / ticksPerWheel ? width * ticksPerWheel : Long.MAX_VALUE;
+            widths[i] = width;
+        }
+        Indicator<E> indicator = getIndicator();
+        for (int i = overflows.size() - 1; i >= 0; i--) {
+            if (currentTick % widths[i] != 0) {
+                continue;
+            }
+            Wheel<E> w = overflows.get(i);
+            long bucket = currentTick / widths[i];
+            long bucketCycle = bucket / ticksPerWheel;
+            int id = (int) (bucket % ticksPerWheel);
+            List<Slot<E>> due = new ArrayList<Slot<E>>(w.pending(id, bucketCycle - 1));
+            Slot<E> slot = w.get(bucketCycle, id);
+            if (slot != null) { // null if already cascaded.
+                due.add(slot);
+            }
+            for (Slot<E> s : due) {
+                s.markExpired(); // as for expiring, so adds racing with the cascade place their entry again.
+                Iterator<List<E>> batches = s.drain(DRAIN_BATCH_SIZE);
+                while (batches.hasNext()) {
+                    for (E e : batches.next()) {
+                        cascade(indicator, s, e, currentTick);
+                    }
+                }
+                w.clear(s.getCycle(), id);
+            }
+        }
+    }
+
+    /**
+     * Move the entry out of the slot into the finest slot of its expire tick, pushed back by a lazy renewal if any.
+     */
+    private void cascade(Indicator<E> indicator, Slot<E> slot, E e, long currentTick) {
+        if (lockFree) {
+            long expireTick = Math.max(e.getExpireTick(), e.getRenewTick());
+            Slot<E> finer = locate(currentTick, expireTick);
+            if (e.casOwner(slot, finer)) {
+                e.locate(finer.getLevel(), finer.getCycle(), finer.getId(), expireTick);
+                finer.add(e);
+            }
+            return;
+        }
+        if (slot.keepsDrained()) {
+            long expireTick = Math.max(e.getExpireTick(), e.getRenewTick());
+            Slot<E> finer = locate(currentTick, expireTick);
+            e.locate(finer.getLevel(), finer.getCycle(), finer.getId(), expireTick);
+            if (slot.transfer(e, finer)) {
+                indicator.put(e, finer);
+            }
+            return;
+        }
+        synchronized (e) {
+            if (!slot.equals(indicator.get(e))) {
+                return;
+            }
+            long expireTick = Math.max(e.getExpireTick(), e.getRenewTick());
+            slot.remove(e);
+            Slot<E> finer = locate(currentTick, expireTick);
+            e.locate(finer.getLevel(), finer.getCycle(), finer.getId(), expireTick);
+            finer.add(e);
+            indicator.put(e, finer);
+        }
+    }
+
+    /**
+     * Move the entries due after this tick to their slot: the ones renewed past it, see
+     * {@link #touch(Entry, long, TimeUnit)}, and the ones of an overflow slot drained late.
+     *
+     * @return the entries left to expire, the batch itself if none was due later.
+     */
+    private List<E> renewed(Indicator<E> indicator, Slot<E> slot, List<E> batch, long currentTick) {
+        List<E> expiring = batch;
+        for (int i = 0; i < batch.size(); i++) {
+            E e = batch.get(i);
+            if (Math.max(e.getExpireTick(), e.getRenewTick()) <= currentTick) {
+                if (expiring != batch) {
+                    expiring.add(e);
+                }
+                continue;
+            }
+            if (expiring == batch) {
+                expiring = new ArrayList<E>(batch.subList(0, i));
+            }
+            cascade(indicator, slot, e, currentTick);
+        }
+        return expiring;
+    }
+
+    /**
+     * Expire the slot of the tick, and the slots the wheel still holds at its index in older cycles: only
+     * those, so a tick costs the same however many cycles went by.
+     *
+     * @param dueNanos when the tick was due, on the {@link System#nanoTime()} clock.
+     */
+    private void notifyExpired(long cycle, int idx, long dueNanos) {
+        long currentTick = cycle * ticksPerWheel + idx;
+        ForkJoinPool pool = expiryPool;
+        for (Slot<E> behind : wheel.pending(idx, cycle - 1)) { // added behind the tick, before a ring takes the position over.
+            expireSlot(pool, behind, currentTick, dueNanos);
+            wheel.clear(behind.getCycle(), idx);
+        }
+        Slot<E> slot = wheel.get(cycle, idx); // asked for even if never handed out here: another node may fill it.
+        if (slot != null) {
+            expireSlot(pool, slot, currentTick, dueNanos);
+            wheel.clear(cycle, idx);
+        }
+    }
+
+    /**
+     * Hand the slot over to the pool if any, the slot is marked expired first so lock-free adds racing with
+     * the drain still notice it. Expired on the tick thread if the pool turns the slot down.
+     */
+    private void expireSlot(ForkJoinPool pool, Slot<E> slot, long currentTick, long dueNanos) {
+        if (pool != null) {
+            slot.markExpired();
+            synchronized (expiringSlotsMonitor) {
+                expiringSlots++;
+            }
+            try {
+                pool.execute(new SlotExpiry(slot, currentTick, dueNanos));
+                return;
+            } catch (RejectedExecutionException e) {
+                log.error(wheelName + " expiry pool rejected " + slot + ", expire it on the tick thread:" + e.getMessage(), e);
+                slotExpired();
+            }
+        }
+        expireSlot(slot, currentTick, dueNanos);
+    }
+
+    private void slotExpired() {
+        synchronized (expiringSlotsMonitor) {
+            if (--expiringSlots == 0) {
+                expiringSlotsMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Drain the slot and dispatch the expiration of its entries, the ones due after the current tick are
+     * moved to their slot instead. Safe to call for a slot behind the tick, from another thread than the
+     * tick thread, e.g. when recovering the slots left overdue.
+     *
+     * @param dueNanos when the slot was due, on the {@link System#nanoTime()} clock.
+     * @return the entries drained.
+     */
+    protected int expireSlot(Slot<E> slot, long currentTick, long dueNanos) {
+        MetricsListener metrics = metricsListener;
+        Indicator<E> indicator = getIndicator();
+        slot.markExpired();
+        boolean kept = slot.keepsDrained();
+        int batchSize = expirationBatchSize;
+        int population = 0;
+        Iterator<List<E>> batches = slot.drain(batchSize > 0 ? batchSize : DRAIN_BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<E> batch = batches.next();
+            population += batch.size();
+            batch = renewed(indicator, slot, batch, currentTick);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            if (batchSize > 0) {
+                expirationDispatcher.dispatch(new BatchExpirationWorker<E>(new BatchElementExpireHandler<E>(indicator, slot, batch, lockFree, !holdsEntries()), metrics, dueNanos, expirations));
+                continue;
+            }
+            for (E e : batch) {
+                expirationDispatcher.dispatch(new ExpirationWorker<E>(expireHandler(indicator, slot, e, kept), e, metrics, dueNanos, expirations));
+            }
+        }
+        if (metrics != null) {
+            metrics.slotExpired(slot.getLevel(), population);
+        }
+        return population;
+    }
+
+    private Callable<E> expireHandler(Indicator<E> indicator, Slot<E> slot, E e, boolean kept) {
+        return kept ? new KeptElementExpireHandler<E>(slot, e)
+                : lockFree ? new OwnedElementExpireHandler<E>(slot, e) : new ElementExpireHandler<E>(indicator, slot, e);
+    }
+
+    /**
+     * Expire the slots of the ticks the wheel has just jumped over, see {@link #setCatchUpLag(int)}: their
+     * entries are drained into chunks spanning the slots, the ones due after the last tick moved to their slot.
+     * Handed to the expiry pool slot by slot if any.
+     *
+     * @param dueNanos when the first of the ticks was due.
+     * @return the entries drained, those handed to the expiry pool not included.
+     */
+    private int expireOverdue(long cycle, int idx, int ticks, long dueNanos) {
+        ForkJoinPool pool = expiryPool;
+        MetricsListener metrics = metricsListener;
+        Indicator<E> indicator = getIndicator();
+        long lastTick = cycle * ticksPerWheel + idx + ticks - 1;
+        int batchSize = expirationBatchSize;
+        int chunkSize = batchSize > 0 ? batchSize : DRAIN_BATCH_SIZE;
+        List<Slot<E>> overdue = new ArrayList<Slot<E>>();
+        for (int i = idx; i < idx + ticks; i++) { // cleared first, so the entries moved on find their next revolution free.
+            for (Slot<E> behind : wheel.pending(i, cycle - 1)) {
+                overdue.add(behind);
+                wheel.clear(behind.getCycle(), i);
+            }
+            Slot<E> current = wheel.get(cycle, i);
+            if (current != null) {
+                overdue.add(current);
+                wheel.clear(cycle, i);
+            }
+        }
+        CoalescedExpiry chunk = null;
+        int population = 0;
+        for (Slot<E> slot : overdue) {
+            long slotDueNanos = dueNanos + (slot.getId() - idx) * tickDurationNanos;
+            if (pool != null) {
+                expireSlot(pool, slot, lastTick, slotDueNanos);
+                continue;
+            }
+            slot.markExpired();
+            int drained = 0;
+            Iterator<List<E>> batches = slot.drain(chunkSize);
+            while (batches.hasNext()) {
+                List<E> batch = batches.next();
+                drained += batch.size();
+                for (E e : renewed(indicator, slot, batch, lastTick)) {
+                    if (chunk == null) {
+                        chunk = new CoalescedExpiry(indicator, metrics, slotDueNanos, batchSize > 0, chunkSize);
+                    }
+                    chunk.add(slot, e);
+                    if (chunk.entries.size() >= chunkSize) {
+                        expirationDispatcher.dispatch(chunk);
+                        chunk = null;
+                    }
+                }
+            }
+            if (metrics != null) {
+                metrics.slotExpired(slot.getLevel(), drained);
+            }
+            population += drained;
+        }
+        if (chunk != null) {
+            expirationDispatcher.dispatch(chunk);
+        }
+        return population;
+    }
+
+    /**
+     * A chunk of entries drained from several overdue slots, expired as one task: entry by entry, so a
+     * failing callback only skips its own entry, or as one batch when the wheel expires in batches.
+     */
+    private class CoalescedExpiry implements Callable<List<E>>, Discardable {
+
+        private final Indicator<E> indicator;
+        private final MetricsListener metrics;
+        private final long dueNanos;
+        private final boolean chunked;
+        private final List<Slot<E>> slots;
+        private final List<E> entries;
+
+        CoalescedExpiry(Indicator<E> indicator, MetricsListener metrics, long dueNanos, boolean chunked, int capacity) {
+            this.indicator = indicator;
+            this.metrics = metrics;
+            this.dueNanos = dueNanos;
+            this.chunked = chunked;
+            this.slots = new ArrayList<Slot<E>>(capacity);
+            this.entries = new ArrayList<E>(capacity);
+        }
+
+        void add(Slot<E> slot, E e) {
+            slots.add(slot);
+            entries.add(e);
+        }
+
+        @Override
+        public List<E> call() throws Exception {
+            if (chunked) {
+                return new BatchExpirationWorker<E>(new Callable<List<E>>() {
+
+                    @Override
+                    public List<E> call() throws Exception {
+                        List<E> expired = new ArrayList<E>(entries.size());
+                        for (int i = 0; i < entries.size(); i++) {
+                            Slot<E> slot = slots.get(i);
+                            E e = expireHandler(indicator, slot, entries.get(i), slot.keepsDrained()).call();
+                            if (e != null) {
+                                expired.add(e);
+                            }
+                        }
+                        return expired;
+                    }
+                }, metrics, dueNanos, expirations).call();
+            }
+            List<E> expired = new ArrayList<E>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Slot<E> slot = slots.get(i);
+                E e = entries.get(i);
+                try {
+                    if (new ExpirationWorker<E>(expireHandler(indicator, slot, e, slot.keepsDrained()), e, metrics, dueNanos, expirations).call() != null) {
+                        expired.add(e);
+                    }
+                } catch (Exception ex) {
+                    log.error(wheelName + " expire " + e + " of " + slot + " failed:" + ex.getMessage(), ex);
+                }
+            }
+            return expired;
+        }
+
+        @Override
+        public void discard() throws Exception {
+            for (int i = 0; i < entries.size(); i++) {
+                Slot<E> slot = slots.get(i);
+                expireHandler(indicator, slot, entries.get(i), slot.keepsDrained()).call();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "CoalescedExpiry [entries=" + entries.size() + "]";
+        }
+    }
+
+    /**
+     * Drains a slot handed over by the tick thread and forks a {@link RangeExpiry} per batch. The tick has
+     * moved on meanwhile, so the entries due later are placed from the tick the wheel is at, under the read
+     * lock so the wheel cannot pass their slot before they are in, and the ones due by then expire here.
+     */
+    private class SlotExpiry extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Slot<E> slot;
+        private final long tick;
+        private final long dueNanos;
+
+        SlotExpiry(Slot<E> slot, long tick, long dueNanos) {
+            this.slot = slot;
+            this.tick = tick;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                MetricsListener metrics = metricsListener;
+                Indicator<E> indicator = getIndicator();
+                int range = expiryRange;
+                int batchSize = expirationBatchSize;
+                int population = 0;
+                List<RangeExpiry> ranges = new ArrayList<RangeExpiry>();
+                Iterator<List<E>> batches = slot.drain(Math.max(DRAIN_BATCH_SIZE, range));
+                while (batches.hasNext()) {
+                    List<E> batch = batches.next();
+                    population += batch.size();
+                    lock.readLock().lock();
+                    try {
+                        batch = renewed(indicator, slot, batch, Math.max(tick, getCurrentTick()));
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    if (!batch.isEmpty()) {
+                        RangeExpiry task = new RangeExpiry(indicator, slot, batch, 0, batch.size(), range, batchSize > 0, metrics, dueNanos);
+                        task.fork();
+                        ranges.add(task);
+                    }
+                }
+                for (RangeExpiry task : ranges) {
+                    task.join();
+                }
+                if (metrics != null) {
+                    metrics.slotExpired(slot.getLevel(), population);
+                }
+            } catch (RuntimeException e) {
+                log.error(wheelName + " expire " + slot + " failed:" + e.getMessage(), e);
+            } finally {
+                slotExpired();
+            }
+        }
+    }
+
+    /**
+     * Expires the entries of a batch between two indexes, split in halves down to the range size so idle
+     * workers steal the other half.
+     */
+    private class RangeExpiry extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Indicator<E> indicator;
+        private final Slot<E> slot;
+        private final List<E> batch;
+        private final int from;
+        private final int to;
+        private final int range;
+        private final boolean chunked;
+        private final MetricsListener metrics;
+        private final long dueNanos;
+
+        RangeExpiry(Indicator<E> indicator, Slot<E> slot, List<E> batch, int from, int to, int range, boolean chunked,
+                MetricsListener metrics, long dueNanos) {
+            this.indicator = indicator;
+            this.slot = slot;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.range = range;
+            this.chunked = chunked;
+            this.metrics = metrics;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > range) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeExpiry(indicator, slot, batch, from, middle, range, chunked, metrics, dueNanos),
+                        new RangeExpiry(indicator, slot, batch, middle, to, range, chunked, metrics, dueNanos));
+                return;
+            }
+            List<E> entries = batch.subList(from, to);
+            if (chunked) {
+                try {
+                    new BatchExpirationWorker<E>(new BatchElementExpireHandler<E>(indicator, slot, new ArrayList<E>(entries), lockFree,
+                            !holdsEntries()), metrics, dueNanos, expirations).call();
+                } catch (Exception e) {
+                    log.error(wheelName + " expire " + entries.size() + " entries of " + slot + " failed:" + e.getMessage(), e);
+                }
+                return;
+            }
+            boolean kept = slot.keepsDrained();
+            for (E e : entries) {
+                try {
+                    new ExpirationWorker<E>(expireHandler(indicator, slot, e, kept), e, metrics, dueNanos, expirations).call();
+                } catch (Exception ex) {
+                    log.error(wheelName + " expire " + e + " of " + slot + " failed:" + ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the tick a slot comes up at: expired for the finest wheel, cascaded for the overflow ones.
+     */
+    protected long dueTick(int level, long cycle, int id) {
+        long tick = cycle * ticksPerWheel + id;
+        for (int i = 0; i < level; i++) {
+            tick = tick <= Long.MAX_VALUE / ticksPerWheel ? tick * ticksPerWheel : Long.MAX_VALUE;
+        }
+        return tick;
+    }
+
+    // ~ -------------------------------------------------------------------------------------------------------------
+
+    protected class TickWorker implements Runnable {
+
+        /**
+         * when the tick being processed was due, on the {@link System#nanoTime()} clock, so wall clock jumps
+         * neither skip nor burst ticks. Advanced by exactly one tick duration per tick: a tick processed late
+         * is followed by the missed ones back to back, in order, until the thread is due again.
+         */
+        private long deadline;
+
+        @Override
+        public void run() {
+            deadline = System.nanoTime();
+            originTick = getCurrentTick();
+            tickOrigin = deadline == 0 ? 1 : deadline;
+            for (; !shutdown.get();) {
+                long start = System.nanoTime();
                 int currentTickIndex = getCurrentTickIndex();
                 long currentCycle = getCurrentCycle();
-                notifyExpired(currentCycle, currentTickIndex);
+                int ticks = overdueTicks(start, currentTickIndex);
+                if (ticks > 1) {
+                    if (catchUp(currentCycle, currentTickIndex, ticks, start)) {
+                        waitForNextTick(ticks);
+                    }
+                    continue;
+                }
+                cascade(currentCycle, currentTickIndex);
+                notifyExpired(currentCycle, currentTickIndex, deadline);
+                TickListener listener = tickListener;
+                MetricsListener metrics = metricsListener;
+                if (listener != null || metrics != null) {
+                    long tick = currentCycle * ticksPerWheel + currentTickIndex;
+                    long now = System.nanoTime();
+                    if (listener != null) {
+                        listener.ticked(tick, start - deadline, now - start);
+                    }
+                    if (metrics != null) {
+                        metrics.ticked(tick, start - deadline, now - start);
+                    }
+                }
                 if (tickCondition == null || tickCondition.tick()) {
+                    lock.writeLock().lock();
                     try {
                         int newCurrentTickIdx = setCurrentTickIndex(currentTickIndex + 1);
                         if (newCurrentTickIdx == 0) {
@@ -321,25 +1605,91 @@ public abstract class TimingWheel<E extends Entry> {
                             tickCondition.untick();
                         }
                         continue;
+                    } finally {
+                        lock.writeLock().unlock();
                     }
                 }
-                waitForNextTick();
+                waitForNextTick(1);
             }
         }
 
-        private void waitForNextTick() {
-            for (;;) {
-                long sleepTime = tickDuration * tick - (System.currentTimeMillis() - startTime);
-                if (sleepTime <= 0) {
-                    break;
+        /**
+         * @return how many ticks to process at once: the overdue ones up to the end of the cycle if the lag
+         *         calls for catching up and this node ticks, 1 otherwise.
+         */
+        private int overdueTicks(long now, int currentTickIndex) {
+            int lag = catchUpLag;
+            if (lag <= 0 || (now - deadline) / tickDurationNanos < lag) {
+                return 1;
+            }
+            if (tickCondition != null && !tickCondition.tick()) {
+                return 1;
+            }
+            return (int) Math.min((now - deadline) / tickDurationNanos + 1, ticksPerWheel - currentTickIndex);
+        }
+
+        /**
+         * Cascade the overdue ticks, move the wheel past them in one step and only then drain their slots, so
+         * an add racing with the drain cannot target them anymore.
+         *
+         * @return false if the wheel could not be moved, nothing is expired then.
+         */
+        private boolean catchUp(long cycle, int idx, int ticks, long start) {
+            for (int i = idx; i < idx + ticks; i++) {
+                cascade(cycle, i);
+            }
+            lock.writeLock().lock();
+            try {
+                if (setCurrentTickIndex(idx + ticks) == 0) {
+                    incrCurrentCycle();
                 }
-                try {
-                    Thread.sleep(sleepTime);
-                } catch (InterruptedException e) {
+            } catch (Exception e) {
+                log.error("catch up " + ticks + " ticks error: " + e.getMessage(), e);
+                if (tickCondition != null) {
+                    tickCondition.untick();
+                }
+                return false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            int population = expireOverdue(cycle, idx, ticks, deadline);
+            long now = System.nanoTime();
+            long firstTick = cycle * ticksPerWheel + idx;
+            long lagNanos = start - deadline;
+            log.warn(wheelName + " caught up " + ticks + " ticks from tick " + firstTick + ", " + TimeUnit.NANOSECONDS.toMillis(lagNanos)
+                    + "ms behind, " + population + " entries drained in " + TimeUnit.NANOSECONDS.toMicros(now - start) + "us");
+            TickListener listener = tickListener;
+            MetricsListener metrics = metricsListener;
+            if (listener != null) {
+                listener.ticked(firstTick + ticks - 1, lagNanos, now - start);
+            }
+            if (metrics != null) {
+                metrics.ticked(firstTick + ticks - 1, lagNanos, now - start);
+                metrics.caughtUp(firstTick, ticks, lagNanos);
+            }
+            return true;
+        }
+
+        /**
+         * park until the spin threshold before the next tick, then spin.
+         */
+        private void waitForNextTick(int ticks) {
+            deadline += ticks * tickDurationNanos;
+            for (;;) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || shutdown.get()) {
                     return;
                 }
+                long spin = spinNanos;
+                if (remaining > spin) {
+                    LockSupport.parkNanos(remaining - spin);
+                    if (Thread.interrupted()) {
+                        return;
+                    }
+                } else {
+                    Thread.yield();
+                }
             }
-            tick++;
         }
     }
 }
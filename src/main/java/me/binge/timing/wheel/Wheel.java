@@ -1,67 +1,171 @@
 package me.binge.timing.wheel;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import me.binge.timing.wheel.entry.Entry;
 
 
+/**
+ * The slots of one level of a timing wheel by cycle and id. The cycles holding a slot are kept sorted per
+ * id, so a tick finds the slots left at its id in older cycles without probing the cycles in between.
+ */
 public class Wheel<E extends Entry> {
 
-    private Map<Long, Map<Integer, Slot<E>>> cycleSlots = new ConcurrentHashMap<Long, Map<Integer,Slot<E>>>();
+    private final ConcurrentMap<Integer, ConcurrentNavigableMap<Long, Slot<E>>> slotsById = new ConcurrentHashMap<Integer, ConcurrentNavigableMap<Long, Slot<E>>>();
 
-    private SlotGenerator<E> slotGenerator;
+    protected SlotGenerator<E> slotGenerator;
+
+    protected final int level;
+
+    private volatile Wheel<E> overflow;
 
     public Wheel(SlotGenerator<E> slotGenerator) {
+        this(0, slotGenerator);
+    }
+
+    protected Wheel(int level, SlotGenerator<E> slotGenerator) {
+        this.level = level;
         this.slotGenerator = slotGenerator;
     }
 
-    public void put(Slot<E> slot) {
-        Map<Integer, Slot<E>> slots = cycleSlots.get(slot.getCycle());
-        if (slots == null) {
-            slots = new ConcurrentHashMap<Integer, Slot<E>>();
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * the coarser wheel whose every slot spans a whole revolution of this one, created on first use.
+     */
+    public Wheel<E> overflow() {
+        if (overflow == null) {
+            synchronized (this) {
+                if (overflow == null) {
+                    overflow = newOverflow();
+                }
+            }
+        }
+        return overflow;
+    }
+
+    protected Wheel<E> newOverflow() {
+        return new Wheel<E>(level + 1, slotGenerator);
+    }
+
+    /**
+     * @return the overflow wheel, or null if nothing has been parked beyond this level yet.
+     */
+    public Wheel<E> getOverflow() {
+        return overflow;
+    }
+
+    public Wheel<E> level(int level) {
+        Wheel<E> w = this;
+        while (w.level < level) {
+            w = w.overflow();
+        }
+        return w;
+    }
+
+    private ConcurrentNavigableMap<Long, Slot<E>> cycles(int id) {
+        ConcurrentNavigableMap<Long, Slot<E>> cycles = slotsById.get(id);
+        if (cycles == null) {
+            cycles = new ConcurrentSkipListMap<Long, Slot<E>>();
+            ConcurrentNavigableMap<Long, Slot<E>> raced = slotsById.putIfAbsent(id, cycles);
+            if (raced != null) {
+                cycles = raced;
+            }
         }
-        slots.put(slot.getId(), slot);
-        cycleSlots.put(slot.getCycle(), slots);
+        return cycles;
+    }
+
+    public void put(Slot<E> slot) {
+        cycles(slot.getId()).put(slot.getCycle(), slot);
     }
 
     public int size(long cycle) {
-        Map<Integer, Slot<E>> slots = cycleSlots.get(cycle);
-        if (slots == null) {
-            return 0;
+        int size = 0;
+        for (ConcurrentNavigableMap<Long, Slot<E>> cycles : slotsById.values()) {
+            if (cycles.containsKey(cycle)) {
+                size++;
+            }
         }
-        return slots.size();
+        return size;
     }
 
     public Slot<E> get(long cycle, int id) {
-        Map<Integer, Slot<E>> slots = cycleSlots.get(cycle);
-        if (slots == null) {
-            slots = new ConcurrentHashMap<Integer, Slot<E>>();
-            cycleSlots.put(cycle, slots);
-        }
-        Slot<E> slot = slots.get(id);
+        ConcurrentNavigableMap<Long, Slot<E>> cycles = cycles(id);
+        Slot<E> slot = cycles.get(cycle);
         if (slot == null) {
-            slot = slotGenerator.gene(cycle, id);
-            slots.put(id, slot);
+            slot = slotGenerator.gene(level, cycle, id);
+            Slot<E> raced = cycles.putIfAbsent(cycle, slot);
+            if (raced != null) {
+                slot = raced;
+            }
         }
         return slot;
     }
 
+    /**
+     * @return the slot this wheel holds, or a new one it does not keep, so looking a slot up by its id
+     *         does not grow the wheel.
+     */
+    public Slot<E> find(long cycle, int id) {
+        ConcurrentNavigableMap<Long, Slot<E>> cycles = slotsById.get(id);
+        Slot<E> slot = cycles == null ? null : cycles.get(cycle);
+        return slot == null ? slotGenerator.gene(level, cycle, id) : slot;
+    }
+
+    /**
+     * @return the slots this wheel holds at the id up to the cycle, the latest cycle first. Only the slots
+     *         handed out by {@link #get(long, int)} or put and not cleared yet, so the cycles no entry was
+     *         added to cost nothing.
+     */
+    public Collection<Slot<E>> pending(int id, long upToCycle) {
+        ConcurrentNavigableMap<Long, Slot<E>> cycles = slotsById.get(id);
+        if (cycles == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Slot<E>>(cycles.headMap(upToCycle, true).descendingMap().values());
+    }
+
     public void clear(long cycle, int idx) {
-        Map<Integer, Slot<E>> slots = cycleSlots.get(cycle);
-        if (slots != null) {
-            slots.remove(idx);
+        ConcurrentNavigableMap<Long, Slot<E>> cycles = slotsById.get(idx);
+        if (cycles != null) {
+            cycles.remove(cycle);
         }
     }
 
     public Collection<Slot<E>> slots(long cycle) {
-        return cycleSlots.get(cycle).values();
+        List<Slot<E>> slots = new ArrayList<Slot<E>>();
+        for (ConcurrentNavigableMap<Long, Slot<E>> cycles : slotsById.values()) {
+            Slot<E> slot = cycles.get(cycle);
+            if (slot != null) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * @return the slots of every cycle this wheel holds.
+     */
+    public Collection<Slot<E>> slots() {
+        List<Slot<E>> slots = new ArrayList<Slot<E>>();
+        for (ConcurrentNavigableMap<Long, Slot<E>> cycles : slotsById.values()) {
+            slots.addAll(cycles.values());
+        }
+        return slots;
     }
 
     public static interface SlotGenerator<E extends Entry> {
 
-        public Slot<E> gene(long cycle, int id);
+        public Slot<E> gene(int level, long cycle, int id);
 
     }
 }
@@ -0,0 +1,112 @@
+package me.binge.timing.wheel.entry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * A compact binary codecer: a format byte, then level, cycle, slot id, time and expire tick as varints,
+ * the key as length prefixed UTF-8 and last whatever {@link #writePayload(Entry, DataOutput)} writes.
+ * No type info is written, {@link #newEntry()} tells what to decode into.
+ */
+public abstract class BinaryEntryCodecer<E extends Entry> implements EntryCodecer<E, byte[]> {
+
+    private static final int FORMAT = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * an empty entry to decode into.
+     */
+    protected abstract E newEntry();
+
+    /**
+     * write the fields of the entry subclass, {@link #writeVarLong(DataOutput, long)} helps keeping it small.
+     */
+    protected void writePayload(E e, DataOutput out) throws IOException {
+    }
+
+    protected void readPayload(E e, DataInput in) throws IOException {
+    }
+
+    @Override
+    public byte[] encode(E e) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT);
+            writeVarLong(out, e.getLevel());
+            writeVarLong(out, e.getCycle());
+            writeVarLong(out, e.getSlotId());
+            writeVarLong(out, e.getTime());
+            writeVarLong(out, e.getExpireTick());
+            if (e.getKey() == null) {
+                writeVarLong(out, 0);
+            } else {
+                byte[] key = e.getKey().getBytes(UTF8);
+                writeVarLong(out, key.length + 1);
+                out.write(key);
+            }
+            writePayload(e, out);
+            out.flush();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public E decode(byte[] t) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(t));
+        try {
+            int format = in.readUnsignedByte();
+            if (format != FORMAT) {
+                throw new IllegalStateException("unknown entry format " + format);
+            }
+            E e = newEntry();
+            e.setLevel((int) readVarLong(in));
+            e.setCycle(readVarLong(in));
+            e.setSlotId((int) readVarLong(in));
+            e.setTime(readVarLong(in));
+            e.setExpireTick(readVarLong(in));
+            int length = (int) readVarLong(in);
+            if (length > 0) {
+                byte[] key = new byte[length - 1];
+                in.readFully(key);
+                e.setKey(new String(key, UTF8));
+            }
+            readPayload(e, in);
+            return e;
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * 7 bits a byte, low bits first, so small non-negative values take one byte.
+     */
+    public static void writeVarLong(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+}
@@ -1,19 +1,46 @@
 package me.binge.timing.wheel.entry;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 public abstract class Entry {
 
+    private static final AtomicReferenceFieldUpdater<Entry, Object> OWNER_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Entry.class, Object.class, "owner");
+
     protected String key;
     protected long time;
     protected long cycle;
     protected int slotId;
+    protected int level;
+    protected long expireTick;
+    private transient volatile Object owner;
+    private transient Entry prev;
+    private transient Entry next;
+    private transient volatile Object bucket;
+    private transient volatile long renewTick;
 
     public Entry() {
     }
 
     public void init(long cycle, int slotId) {
-        this.cycle = cycle;
+        init(0, cycle, slotId, 0);
+    }
+
+    public void init(int level, long cycle, int slotId, long expireTick) {
         this.time = System.currentTimeMillis();
+        this.renewTick = 0;
+        locate(level, cycle, slotId, expireTick);
+    }
+
+    /**
+     * Move the entry to another slot without touching its add time, used when cascading
+     * from an overflow wheel.
+     */
+    public void locate(int level, long cycle, int slotId, long expireTick) {
+        this.level = level;
+        this.cycle = cycle;
         this.slotId = slotId;
+        this.expireTick = expireTick;
     }
 
     public Entry(String key) {
@@ -52,6 +79,74 @@ public abstract class Entry {
         this.cycle = cycle;
     }
 
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * @return the slot owning this entry in the lock-free mode, null if it is not scheduled.
+     */
+    public Object getOwner() {
+        return owner;
+    }
+
+    public boolean casOwner(Object expect, Object update) {
+        return OWNER_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    /**
+     * intrusive links of the bucket (slot) list holding this entry, guarded by the bucket.
+     */
+    public Entry getPrev() {
+        return prev;
+    }
+
+    public void setPrev(Entry prev) {
+        this.prev = prev;
+    }
+
+    public Entry getNext() {
+        return next;
+    }
+
+    public void setNext(Entry next) {
+        this.next = next;
+    }
+
+    public Object getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(Object bucket) {
+        this.bucket = bucket;
+    }
+
+    public long getExpireTick() {
+        return expireTick;
+    }
+
+    public void setExpireTick(long expireTick) {
+        this.expireTick = expireTick;
+    }
+
+    /**
+     * @return the tick a lazy renewal pushed the expiry back to, 0 if not renewed since added.
+     */
+    public long getRenewTick() {
+        return renewTick;
+    }
+
+    /**
+     * Record a later expire tick without moving the entry, it is moved when its slot comes up.
+     */
+    public void renew(long renewTick) {
+        this.renewTick = renewTick;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -130,7 +130,9 @@ public class JacksonEntryCodecer<E extends Entry> implements EntryCodecer<E, Str
     @Override
     public E decode(String t) {
         try {
-            return (E) objectMapper.readValue(t, entryClazz);
+            // the @class property tells the type, so a codecer that has not encoded yet can still decode.
+            Class<?> clazz = entryClazz == null ? Entry.class : entryClazz;
+            return (E) objectMapper.readValue(t, clazz);
         } catch (Exception e) {
             throw new IllegalStateException(e);
         }
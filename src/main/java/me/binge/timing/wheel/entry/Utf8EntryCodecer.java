@@ -0,0 +1,28 @@
+package me.binge.timing.wheel.entry;
+
+import java.nio.charset.Charset;
+
+/**
+ * Stores the text of a text codecer, e.g. {@link JacksonEntryCodecer}, as its UTF-8 bytes.
+ */
+public class Utf8EntryCodecer<E extends Entry> implements EntryCodecer<E, byte[]> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final EntryCodecer<E, String> codecer;
+
+    public Utf8EntryCodecer(EntryCodecer<E, String> codecer) {
+        this.codecer = codecer;
+    }
+
+    @Override
+    public byte[] encode(E e) {
+        return codecer.encode(e).getBytes(UTF8);
+    }
+
+    @Override
+    public E decode(byte[] t) {
+        return codecer.decode(new String(t, UTF8));
+    }
+
+}
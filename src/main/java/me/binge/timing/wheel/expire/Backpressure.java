@@ -0,0 +1,55 @@
+package me.binge.timing.wheel.expire;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * What a bounded expiration dispatcher does when its queue is full.
+ */
+public enum Backpressure implements RejectedExecutionHandler {
+
+    /** run the worker on the tick thread, slowing the tick down until the pool catches up. */
+    CALLER_RUNS {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown()) {
+                r.run();
+                return;
+            }
+            log.warn("expiration dispatcher is shut down, discard " + r);
+            ExpirationDispatchers.discard(r);
+        }
+    },
+
+    /** block the tick thread until the queue has room again, the worker runs on the tick thread if it is interrupted meanwhile. */
+    BLOCK {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("expiration dispatcher is shut down");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                r.run();
+            }
+        }
+    },
+
+    /** drop the expiration, it is logged and never fired. Its entries are still taken out of the wheel. */
+    DISCARD {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            log.warn("expiration queue is full, discard " + r);
+            ExpirationDispatchers.discard(r);
+        }
+    };
+
+    private final static Log log = LogFactory.getLog(Backpressure.class);
+
+}
@@ -0,0 +1,22 @@
+package me.binge.timing.wheel.expire;
+
+import java.util.Collections;
+import java.util.List;
+
+import me.binge.timing.wheel.entry.Entry;
+
+/**
+ * An {@link Expiration} handling the expired entries in bulk, e.g. for bulk writes to a sink.<br>
+ * The batches are only formed when the wheel has an expiration batch size, otherwise every entry comes as a batch of one.
+ */
+public abstract class BatchExpiration<E extends Entry> extends Expiration<E> {
+
+    @Override
+    public void expired(E entry) {
+        expiredBatch(Collections.singletonList(entry));
+    }
+
+    @Override
+    public abstract void expiredBatch(List<E> entries);
+
+}
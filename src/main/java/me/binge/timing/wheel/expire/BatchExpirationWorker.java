@@ -0,0 +1,69 @@
+package me.binge.timing.wheel.expire;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.metrics.MetricsListener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class BatchExpirationWorker<E extends Entry> implements Callable<List<E>>, Discardable {
+
+    private final static Log log = LogFactory.getLog(BatchExpirationWorker.class);
+
+    private Expiration<E>[] expirations;
+    private Callable<List<E>> batchExpireHandler;
+    private MetricsListener metrics;
+    private long dueNanos;
+
+    @SafeVarargs
+    public BatchExpirationWorker(Callable<List<E>> batchExpireHandler, Expiration<E>... expirations) {
+        this(batchExpireHandler, null, 0, expirations);
+    }
+
+    /**
+     * @param metrics told about the expiration and the failed callbacks, may be null.
+     * @param dueNanos when the tick of the entries was due, on the {@link System#nanoTime()} clock.
+     */
+    @SafeVarargs
+    public BatchExpirationWorker(Callable<List<E>> batchExpireHandler, MetricsListener metrics, long dueNanos,
+            Expiration<E>... expirations) {
+        this.expirations = expirations;
+        this.batchExpireHandler = batchExpireHandler;
+        this.metrics = metrics;
+        this.dueNanos = dueNanos;
+    }
+
+    public List<E> call() throws Exception {
+        List<E> entries = batchExpireHandler.call();
+        if (entries.isEmpty()) {
+            return entries; // all removed or rescheduled meanwhile.
+        }
+        if (metrics != null) {
+            metrics.expired(System.nanoTime() - dueNanos, entries.size());
+        }
+        if (expirations != null) {
+            for (Expiration<E> expiration : expirations) {
+                if (expiration != null) {
+                    try {
+                        expiration.expiredBatch(entries);
+                    } catch (Exception ex) {
+                        log.error("use " + expiration + " expiration " + entries.size() + " entries failed:" + ex.getMessage(), ex);
+                        if (metrics != null) {
+                            metrics.expirationFailed(expiration, ex);
+                        }
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void discard() throws Exception {
+        batchExpireHandler.call();
+    }
+
+}
@@ -0,0 +1,12 @@
+package me.binge.timing.wheel.expire;
+
+/**
+ * An expiration worker a dispatcher may drop, e.g. when its queue is full or it is shut down. The slot has
+ * been drained already, so {@link #discard()} still takes the entries out of the wheel and its index, without
+ * calling the expirations, or they would stay scheduled forever.
+ */
+public interface Discardable {
+
+    public void discard() throws Exception;
+
+}
@@ -1,5 +1,7 @@
 package me.binge.timing.wheel.expire;
 
+import java.util.List;
+
 import me.binge.timing.wheel.entry.Entry;
 
 public abstract class Expiration<E extends Entry> {
@@ -11,4 +13,16 @@ public abstract class Expiration<E extends Entry> {
      */
     public abstract void expired(E entry);
 
+    /**
+     * Invoking with a chunk of the entries expired together in one slot, when the wheel expires in batches.
+     * Calls {@link #expired(Entry)} one by one unless overridden.
+     *
+     * @param entries
+     */
+    public void expiredBatch(List<E> entries) {
+        for (E entry : entries) {
+            expired(entry);
+        }
+    }
+
 }
@@ -0,0 +1,26 @@
+package me.binge.timing.wheel.expire;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link ExpirationWorker}s the tick thread hands over, see {@link ExpirationDispatchers} for the
+ * provided implementations.
+ */
+public interface ExpirationDispatcher {
+
+    public void dispatch(Callable<?> worker);
+
+    /**
+     * Stop accepting workers and wait for the dispatched ones to finish.
+     *
+     * @return <tt>true</tt> if all dispatched workers finished in time.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * @return how many dispatched workers wait to be run, -1 if unknown.
+     */
+    public int queueDepth();
+
+}
@@ -0,0 +1,210 @@
+package me.binge.timing.wheel.expire;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.utils.ShutdownHookUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class ExpirationDispatchers {
+
+    private final static Log log = LogFactory.getLog(ExpirationDispatchers.class);
+
+    private final static long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private static volatile ExpirationDispatcher shared;
+
+    /**
+     * The unbounded cached pool shared by all wheels, which is the default. It is drained by a shutdown hook
+     * and never by a wheel.
+     */
+    public static ExpirationDispatcher shared() {
+        if (shared == null) {
+            synchronized (ExpirationDispatchers.class) {
+                if (shared == null) {
+                    ExecutorService executor = Executors.newCachedThreadPool();
+                    ShutdownHookUtils.hook(executor, SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    shared = new ExecutorDispatcher(executor) {
+
+                        @Override
+                        public boolean shutdown(long timeout, TimeUnit unit) {
+                            return true;
+                        }
+                    };
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Run the expirations on the tick thread, for callbacks cheap enough not to delay the next tick.
+     */
+    public static ExpirationDispatcher inline() {
+        return new ExpirationDispatcher() {
+
+            @Override
+            public void dispatch(Callable<?> worker) {
+                try {
+                    worker.call();
+                } catch (Exception e) {
+                    log.error("run expiration " + worker + " failed:" + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public boolean shutdown(long timeout, TimeUnit unit) {
+                return true;
+            }
+
+            @Override
+            public int queueDepth() {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Run the expirations on an executor owned by the wheel, it is drained when the wheel stops.
+     */
+    public static ExpirationDispatcher executor(ExecutorService executor) {
+        return new ExecutorDispatcher(executor);
+    }
+
+    /**
+     * A pool of <tt>threads</tt> fed by a queue of at most <tt>queueCapacity</tt> expirations.
+     */
+    public static ExpirationDispatcher bounded(String name, int threads, int queueCapacity, Backpressure backpressure) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0: " + threads);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be greater than 0: " + queueCapacity);
+        }
+        if (backpressure == null) {
+            throw new NullPointerException("backpressure");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name), backpressure);
+        executor.allowCoreThreadTimeOut(true);
+        return new ExecutorDispatcher(executor);
+    }
+
+    public static class ExecutorDispatcher implements ExpirationDispatcher {
+
+        protected final ExecutorService executor;
+
+        public ExecutorDispatcher(ExecutorService executor) {
+            if (executor == null) {
+                throw new NullPointerException("executor");
+            }
+            this.executor = executor;
+        }
+
+        /**
+         * A worker turned down is discarded, see {@link Discardable}.
+         */
+        @Override
+        public void dispatch(Callable<?> worker) {
+            try {
+                executor.execute(new DispatchedWorker(worker));
+            } catch (RejectedExecutionException e) {
+                log.error("dispatch expiration " + worker + " rejected:" + e.getMessage(), e);
+                discard(worker);
+            }
+        }
+
+        @Override
+        public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+            executor.shutdown();
+            return executor.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public int queueDepth() {
+            if (executor instanceof ThreadPoolExecutor) {
+                return ((ThreadPoolExecutor) executor).getQueue().size();
+            }
+            return -1;
+        }
+
+        public ExecutorService getExecutor() {
+            return executor;
+        }
+
+    }
+
+    /**
+     * Take the entries of a worker that will not run out of the wheel, without calling the expirations.
+     *
+     * @param worker the worker, or what the executor was given for it.
+     */
+    static void discard(Object worker) {
+        if (worker instanceof Discardable) {
+            try {
+                ((Discardable) worker).discard();
+            } catch (Exception e) {
+                log.error("discard expiration " + worker + " failed:" + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * what the executors are given, so a worker they turn down can still be discarded.
+     */
+    private static class DispatchedWorker implements Runnable, Discardable {
+
+        private final Callable<?> worker;
+
+        DispatchedWorker(Callable<?> worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void run() {
+            try {
+                worker.call();
+            } catch (Exception e) {
+                log.error("run expiration " + worker + " failed:" + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void discard() throws Exception {
+            if (worker instanceof Discardable) {
+                ((Discardable) worker).discard();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return worker.toString();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger seq = new AtomicInteger();
+        private final String name;
+
+        NamedThreadFactory(String name) {
+            this.name = name == null ? "timing-wheel-expiration" : name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, name + "-" + seq.incrementAndGet());
+        }
+
+    }
+
+}
@@ -3,29 +3,47 @@ package me.binge.timing.wheel.expire;
 import java.util.concurrent.Callable;
 
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.metrics.MetricsListener;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-public class ExpirationWorker<E extends Entry> implements Callable<E> {
+public class ExpirationWorker<E extends Entry> implements Callable<E>, Discardable {
 
     private final static Log log = LogFactory.getLog(ExpirationWorker.class);
 
     private Expiration<E>[] expirations;
     private E e;
     private Callable<E> entryExpireHandler;
+    private MetricsListener metrics;
+    private long dueNanos;
 
     @SafeVarargs
     public ExpirationWorker(Callable<E> entryExpireHandler, E e,
             Expiration<E>... expirations) {
+        this(entryExpireHandler, e, null, 0, expirations);
+    }
+
+    /**
+     * @param metrics told about the expiration and the failed callbacks, may be null.
+     * @param dueNanos when the tick of the entry was due, on the {@link System#nanoTime()} clock.
+     */
+    @SafeVarargs
+    public ExpirationWorker(Callable<E> entryExpireHandler, E e, MetricsListener metrics, long dueNanos,
+            Expiration<E>... expirations) {
         this.expirations = expirations;
         this.e = e;
         this.entryExpireHandler = entryExpireHandler;
+        this.metrics = metrics;
+        this.dueNanos = dueNanos;
     }
 
     public E call() throws Exception {
-        if (entryExpireHandler != null) {
-            entryExpireHandler.call();
+        if (entryExpireHandler != null && entryExpireHandler.call() == null) {
+            return null; // removed or rescheduled meanwhile.
+        }
+        if (metrics != null) {
+            metrics.expired(System.nanoTime() - dueNanos, 1);
         }
         if (expirations != null) {
             for (Expiration<E> expiration : expirations) {
@@ -34,6 +52,9 @@ public class ExpirationWorker<E extends Entry> implements Callable<E> {
                         expiration.expired(e);
                     } catch (Exception ex) {
                         log.error("use " + expiration + " expiration " + e + " failed:" + ex.getMessage(), ex);
+                        if (metrics != null) {
+                            metrics.expirationFailed(expiration, ex);
+                        }
                     }
                 }
             }
@@ -41,4 +62,16 @@ public class ExpirationWorker<E extends Entry> implements Callable<E> {
         return e;
     }
 
+    @Override
+    public void discard() throws Exception {
+        if (entryExpireHandler != null) {
+            entryExpireHandler.call();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExpirationWorker [e=" + e + "]";
+    }
+
 }
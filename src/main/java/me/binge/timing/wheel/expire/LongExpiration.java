@@ -0,0 +1,17 @@
+package me.binge.timing.wheel.expire;
+
+import me.binge.timing.wheel.impl.mem.LongTimingWheel;
+
+/**
+ * The {@link Expiration} of a {@link LongTimingWheel}, told the ids of the timers as they expire.
+ */
+public abstract class LongExpiration {
+
+    /**
+     * Invoking when the timer of the id expires, on the tick thread of the wheel, so keep it short.
+     *
+     * @param id
+     */
+    public abstract void expired(long id);
+
+}
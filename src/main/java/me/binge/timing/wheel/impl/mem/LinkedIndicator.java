@@ -0,0 +1,51 @@
+package me.binge.timing.wheel.impl.mem;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import me.binge.timing.wheel.Indicator;
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.entry.Entry;
+
+/**
+ * Indicator of the intrusive mode, the slot of an entry is its bucket link which {@link LinkedSlot}
+ * maintains itself, so no map is kept at all.
+ */
+public class LinkedIndicator<E extends Entry> implements Indicator<E> {
+
+    @Override
+    public void put(E e, Slot<E> slot) {
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Slot<E> get(E e) {
+        return (Slot<E>) e.getBucket();
+    }
+
+    @Override
+    public void remove(E e) {
+    }
+
+    @Override
+    public void putAll(Collection<E> entries, Slot<E> slot) {
+    }
+
+    @Override
+    public Map<E, Slot<E>> getAll(Collection<E> entries) {
+        Map<E, Slot<E>> slots = new HashMap<E, Slot<E>>();
+        for (E e : entries) {
+            Slot<E> slot = get(e);
+            if (slot != null) {
+                slots.put(e, slot);
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public void removeAll(Collection<E> entries) {
+    }
+
+}
@@ -0,0 +1,128 @@
+package me.binge.timing.wheel.impl.mem;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.entry.Entry;
+
+/**
+ * A slot chaining its entries through their own prev/next links, so adding and removing an entry are
+ * pointer splices without any allocation, and the entry's bucket link tells which slot holds it.
+ */
+public class LinkedSlot<E extends Entry> extends Slot<E> {
+
+    private Entry head;
+
+    private int size;
+
+    protected LinkedSlot(int level, long cycle, int id) {
+        super(level, cycle, id);
+    }
+
+    @Override
+    public synchronized void add(E e) {
+        if (e.getBucket() == this && linked(e)) {
+            return;
+        }
+        e.setPrev(null);
+        e.setNext(head);
+        if (head != null) {
+            head.setPrev(e);
+        }
+        head = e;
+        e.setBucket(this);
+        size++;
+    }
+
+    /**
+     * links the whole batch under one lock.
+     */
+    @Override
+    public synchronized void addAll(Collection<E> entries) {
+        for (E e : entries) {
+            add(e);
+        }
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<E> entries) {
+        for (E e : entries) {
+            remove(e);
+        }
+    }
+
+    @Override
+    public synchronized E remove(E e) {
+        if (e.getBucket() != this) {
+            return null;
+        }
+        if (linked(e)) {
+            Entry prev = e.getPrev();
+            Entry next = e.getNext();
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.setNext(next);
+            }
+            if (next != null) {
+                next.setPrev(prev);
+            }
+            e.setPrev(null);
+            e.setNext(null);
+            size--;
+        }
+        e.setBucket(null);
+        return e;
+    }
+
+    private boolean linked(Entry e) {
+        return e.getPrev() != null || head == e;
+    }
+
+    /**
+     * Detach the whole chain for expiring. The entries keep their bucket link until they are removed,
+     * so the slot still answers as their owner meanwhile.
+     */
+    @Override
+    public Set<E> elements() {
+        final List<E> entries;
+        synchronized (this) {
+            entries = new ArrayList<E>(size);
+            Entry e = head;
+            while (e != null) {
+                Entry next = e.getNext();
+                e.setPrev(null);
+                e.setNext(null);
+                @SuppressWarnings("unchecked")
+                E entry = (E) e;
+                entries.add(entry);
+                e = next;
+            }
+            head = null;
+            size = 0;
+        }
+        return new AbstractSet<E>() {
+
+            @Override
+            public Iterator<E> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+}
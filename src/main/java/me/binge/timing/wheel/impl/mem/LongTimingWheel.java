@@ -0,0 +1,421 @@
+package me.binge.timing.wheel.impl.mem;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.LongExpiration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An in-memory timing wheel for timers identified by a <tt>long</tt>, e.g. a connection id, without an
+ * {@link me.binge.timing.wheel.entry.Entry} per timer.<br>
+ * The timers live in parallel primitive arrays: the id, the expire tick and the links of the slot chain of
+ * every timer, plus an open addressing index from the id to its timer. Removed timers are reused, so once
+ * the arrays have grown to the peak number of timers, scheduling, cancelling and expiring allocate nothing.
+ * <p>
+ * A single wheel level: a timer due beyond one revolution waits in its slot and is skipped as the tick passes
+ * it until its round comes up. The expirations run on the tick thread, after the slot has been unlinked.
+ */
+public class LongTimingWheel {
+
+    private final static Log log = LogFactory.getLog(LongTimingWheel.class);
+
+    private static final int NONE = -1;
+
+    private final long tickDurationNanos;
+    private final int ticksPerWheel;
+    private final String wheelName;
+    private final LongExpiration expiration;
+
+    private final AtomicBoolean shutdown = new AtomicBoolean(false);
+    private final Thread workerThread;
+    private volatile boolean running = false;
+
+    /**
+     * guards the arrays and the tick.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * the id, expire tick and chain links of every timer. <tt>next</tt> also chains the free timers.
+     */
+    private long[] ids;
+    private long[] expireTicks;
+    private int[] next;
+    private int[] prev;
+
+    /**
+     * the first timer of every slot.
+     */
+    private final int[] heads;
+
+    /**
+     * open addressing on the hash of the id, linear probing: the timer + 1, 0 for an empty position.
+     */
+    private int[] index;
+
+    private int free = NONE;
+    private int used;
+    private int size;
+
+    /**
+     * the tick processed next, and the tick and time the tick thread started at, see {@link TimingWheel}.
+     */
+    private long tick;
+    private long originTick;
+    private long tickOrigin;
+
+    /**
+     * the ids of the slot being expired, only touched by the tick thread.
+     */
+    private long[] expiring = new long[64];
+
+    public LongTimingWheel(int tickDuration, int ticksPerWheel, TimeUnit timeUnit, String wheelName, LongExpiration expiration) {
+        this(tickDuration, ticksPerWheel, timeUnit, wheelName, expiration, 1024);
+    }
+
+    /**
+     * @param initialCapacity the timers held before the arrays grow.
+     */
+    public LongTimingWheel(int tickDuration, int ticksPerWheel, TimeUnit timeUnit, String wheelName, LongExpiration expiration, int initialCapacity) {
+        if (timeUnit == null) {
+            throw new NullPointerException("unit");
+        }
+        if (expiration == null) {
+            throw new NullPointerException("expiration");
+        }
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("ticksPerWheel must be greater than 0: " + ticksPerWheel);
+        }
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be greater than 0: " + initialCapacity);
+        }
+        this.tickDurationNanos = timeUnit.toNanos(tickDuration);
+        this.ticksPerWheel = ticksPerWheel;
+        this.wheelName = wheelName == null ? "Long-Timing-Wheel" : wheelName;
+        this.expiration = expiration;
+
+        this.heads = new int[ticksPerWheel];
+        Arrays.fill(heads, NONE);
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity - 1, 1)) << 1;
+        this.ids = new long[capacity];
+        this.expireTicks = new long[capacity];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.index = new int[capacity << 1];
+        this.workerThread = new Thread(new TickWorker(), this.wheelName);
+    }
+
+    public String getName() {
+        return wheelName;
+    }
+
+    public void start() {
+        if (shutdown.get()) {
+            throw new IllegalStateException("Cannot be started once stopped");
+        }
+        if (!workerThread.isAlive()) {
+            workerThread.start();
+            log.info(wheelName + " is running");
+            running = true;
+        }
+    }
+
+    public boolean stop() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return false;
+        }
+        boolean interrupted = false;
+        while (workerThread.isAlive()) {
+            workerThread.interrupt();
+            try {
+                workerThread.join(100);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        return true;
+    }
+
+    public boolean running() {
+        return running;
+    }
+
+    /**
+     * Schedule the timer of the id one revolution from now, see {@link #schedule(long, long, TimeUnit)}.
+     */
+    public long schedule(long id) {
+        return schedule(id, ticksPerWheel * tickDurationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedule the timer of the id to expire after the delay, rounded up to whole ticks. A timer already
+     * scheduled for the id is moved.
+     *
+     * @return remain time to be expired in millisecond.
+     */
+    public long schedule(long id, long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(delay);
+        long ticks = nanos / tickDurationNanos + (nanos % tickDurationNanos == 0 ? 0 : 1);
+        if (ticks < 1) {
+            ticks = 1;
+        }
+        synchronized (lock) {
+            long expireTick = expireTick(nanos, ticks);
+            int pos = find(id);
+            int timer;
+            if (pos == NONE) {
+                timer = allocate();
+                ids[timer] = id;
+                insert(timer);
+                size++;
+            } else {
+                timer = index[pos] - 1;
+                unlink(timer);
+            }
+            expireTicks[timer] = expireTick;
+            link(timer);
+        }
+        long remain = ticks * tickDurationNanos;
+        return remain / 1000000 + (remain % 1000000 == 0 ? 0 : 1);
+    }
+
+    /**
+     * Cancel the timer of the id.
+     *
+     * @return <tt>true</tt> if it was scheduled.
+     */
+    public boolean cancel(long id) {
+        synchronized (lock) {
+            int pos = find(id);
+            if (pos == NONE) {
+                return false;
+            }
+            int timer = index[pos] - 1;
+            delete(pos);
+            unlink(timer);
+            release(timer);
+            return true;
+        }
+    }
+
+    public boolean exist(long id) {
+        synchronized (lock) {
+            return find(id) != NONE;
+        }
+    }
+
+    /**
+     * @return the timers scheduled right now.
+     */
+    public int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * counted on the clock the tick thread keeps to once started, as {@link TimingWheel} does for a local
+     * clock, so a timer scheduled while the tick thread lags behind does not fire early.
+     */
+    private long expireTick(long delayNanos, long ticks) {
+        if (tickOrigin == 0) {
+            return tick + ticks;
+        }
+        long elapsed = System.nanoTime() + delayNanos - tickOrigin;
+        long expireTick = originTick + (elapsed <= 0 ? 0 : (elapsed + tickDurationNanos - 1) / tickDurationNanos);
+        return expireTick > tick ? expireTick : tick;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the position of the id in the index, or {@link #NONE}.
+     */
+    private int find(long id) {
+        int mask = index.length - 1;
+        for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+            int timer = index[i];
+            if (timer == 0) {
+                return NONE;
+            }
+            if (ids[timer - 1] == id) {
+                return i;
+            }
+        }
+    }
+
+    private void insert(int timer) {
+        int mask = index.length - 1;
+        int i = hash(ids[timer]) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = timer + 1;
+    }
+
+    /**
+     * Empty the position, shifting back the ones probed past it so no tombstone is needed.
+     */
+    private void delete(int pos) {
+        int mask = index.length - 1;
+        int i = pos;
+        for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+            int home = hash(ids[index[j] - 1]) & mask;
+            boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!reachable) {
+                index[i] = index[j];
+                i = j;
+            }
+        }
+        index[i] = 0;
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int timer = free;
+            free = next[timer];
+            return timer;
+        }
+        if (used == ids.length) {
+            grow();
+        }
+        return used++;
+    }
+
+    private void release(int timer) {
+        next[timer] = free;
+        free = timer;
+        size--;
+    }
+
+    /**
+     * Double the arrays, the index is rebuilt at its new size. All timers are in use, none is free.
+     */
+    private void grow() {
+        int capacity = ids.length << 1;
+        if (capacity < 0) {
+            throw new IllegalStateException(wheelName + " cannot hold more timers: " + ids.length);
+        }
+        ids = Arrays.copyOf(ids, capacity);
+        expireTicks = Arrays.copyOf(expireTicks, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        index = new int[capacity << 1];
+        for (int timer = 0; timer < used; timer++) {
+            insert(timer);
+        }
+    }
+
+    private void link(int timer) {
+        int slot = (int) (expireTicks[timer] % ticksPerWheel);
+        int head = heads[slot];
+        prev[timer] = NONE;
+        next[timer] = head;
+        if (head != NONE) {
+            prev[head] = timer;
+        }
+        heads[slot] = timer;
+    }
+
+    private void unlink(int timer) {
+        int p = prev[timer];
+        int n = next[timer];
+        if (p == NONE) {
+            heads[(int) (expireTicks[timer] % ticksPerWheel)] = n;
+        } else {
+            next[p] = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        }
+    }
+
+    /**
+     * Unlink the timers of the slot due at the tick and advance the tick.
+     *
+     * @return how many ids are in {@link #expiring}.
+     */
+    private int drain() {
+        synchronized (lock) {
+            long current = tick;
+            int count = 0;
+            int timer = heads[(int) (current % ticksPerWheel)];
+            while (timer != NONE) {
+                int n = next[timer];
+                if (expireTicks[timer] <= current) {
+                    if (count == expiring.length) {
+                        expiring = Arrays.copyOf(expiring, count << 1);
+                    }
+                    expiring[count++] = ids[timer];
+                    unlink(timer);
+                    delete(find(ids[timer]));
+                    release(timer);
+                }
+                timer = n;
+            }
+            tick = current + 1;
+            return count;
+        }
+    }
+
+    // ~ -------------------------------------------------------------------------------------------------------------
+
+    private class TickWorker implements Runnable {
+
+        private long deadline;
+
+        @Override
+        public void run() {
+            deadline = System.nanoTime();
+            synchronized (lock) {
+                originTick = tick;
+                tickOrigin = deadline == 0 ? 1 : deadline;
+            }
+            while (!shutdown.get()) {
+                int count = drain();
+                for (int i = 0; i < count; i++) {
+                    try {
+                        expiration.expired(expiring[i]);
+                    } catch (Throwable t) {
+                        log.error(wheelName + " expiration of " + expiring[i] + " failed: " + t.getMessage(), t);
+                    }
+                }
+                waitForNextTick();
+            }
+        }
+
+        /**
+         * park until the next tick is due, a late tick is followed by the missed ones back to back.
+         */
+        private void waitForNextTick() {
+            deadline += tickDurationNanos;
+            for (;;) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || shutdown.get()) {
+                    return;
+                }
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    return;
+                }
+            }
+        }
+    }
+
+}
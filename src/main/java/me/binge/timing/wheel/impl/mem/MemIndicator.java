@@ -1,5 +1,7 @@
 package me.binge.timing.wheel.impl.mem;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -26,4 +28,30 @@ public class MemIndicator<E extends Entry> implements Indicator<E> {
         entrySlots.remove(e);
     }
 
+    @Override
+    public void putAll(Collection<E> entries, Slot<E> slot) {
+        for (E e : entries) {
+            entrySlots.put(e, slot);
+        }
+    }
+
+    @Override
+    public Map<E, Slot<E>> getAll(Collection<E> entries) {
+        Map<E, Slot<E>> slots = new HashMap<E, Slot<E>>();
+        for (E e : entries) {
+            Slot<E> slot = entrySlots.get(e);
+            if (slot != null) {
+                slots.put(e, slot);
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public void removeAll(Collection<E> entries) {
+        for (E e : entries) {
+            entrySlots.remove(e);
+        }
+    }
+
 }
@@ -1,5 +1,6 @@
 package me.binge.timing.wheel.impl.mem;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -11,8 +12,8 @@ public class MemSlot<E extends Entry> extends Slot<E> {
 
     private Map<E, E> elements = new ConcurrentHashMap<E, E>();
 
-    protected MemSlot(long cycle, int id) {
-        super(cycle, id);
+    protected MemSlot(int level, long cycle, int id) {
+        super(level, cycle, id);
     }
 
     @Override
@@ -25,9 +26,28 @@ public class MemSlot<E extends Entry> extends Slot<E> {
         return elements.remove(e);
     }
 
+    @Override
+    public void addAll(Collection<E> entries) {
+        for (E e : entries) {
+            elements.put(e, e);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<E> entries) {
+        for (E e : entries) {
+            elements.remove(e);
+        }
+    }
+
     @Override
     public Set<E> elements() {
         return elements.keySet();
     }
 
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
 }
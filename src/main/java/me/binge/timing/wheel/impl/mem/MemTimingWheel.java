@@ -3,26 +3,150 @@ package me.binge.timing.wheel.impl.mem;
 import java.util.concurrent.TimeUnit;
 
 import me.binge.timing.wheel.Indicator;
+import me.binge.timing.wheel.RingWheel;
 import me.binge.timing.wheel.Slot;
 import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.Wheel;
+import me.binge.timing.wheel.Wheel.SlotGenerator;
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
+import me.binge.timing.wheel.entry.JacksonEntryCodecer;
+import me.binge.timing.wheel.entry.Utf8EntryCodecer;
 import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.tick.TickCondition;
 
 public class MemTimingWheel<E extends Entry> extends TimingWheel<E> {
 
-    private MemIndicator<E> indicator;
+    /**
+     * how the in-memory wheel keeps track of its entries.
+     */
+    public static enum Mode {
+        /** entries in concurrent hash slots, synchronizing on the entry and indexed by the indicator map. */
+        DEFAULT,
+        /** entry ownership moved with a CAS instead of the entry monitor and the indicator map. */
+        LOCK_FREE,
+        /** entries chained through their own links, the indicator map is replaced by the bucket link. */
+        INTRUSIVE,
+        /** entries encoded into direct memory by the entry codecer, see {@link OffHeapStore}. */
+        OFF_HEAP
+    }
+
+    private final Mode mode;
+
+    private Indicator<E> indicator;
+
+    private volatile EntryCodecer<E, byte[]> entryCodecer;
+
+    /**
+     * null unless off-heap.
+     */
+    private final OffHeapStore<E> store;
 
     private volatile int currentTickIndex = 0;
 
     private volatile int currentCycle = 0;
 
+    /**
+     * cycle and index folded into one field, so adds read a consistent tick without the lock.
+     */
+    private volatile long currentTick = 0;
+
     @SafeVarargs
     public MemTimingWheel(int tickDuration, int ticksPerWheel,
             TimeUnit timeUnit, String wheelName, Expiration<E>... expirations) {
+        this(tickDuration, ticksPerWheel, timeUnit, wheelName, Mode.DEFAULT, expirations);
+    }
+
+    /**
+     * @param mode {@link Mode#LOCK_FREE} and {@link Mode#INTRUSIVE} track the entry instance instead of
+     *            its key, so a re-add must pass the same instance. {@link Mode#OFF_HEAP} keeps no instance,
+     *            the expirations are given copies decoded from the store.
+     */
+    @SafeVarargs
+    public MemTimingWheel(int tickDuration, int ticksPerWheel,
+            TimeUnit timeUnit, String wheelName, Mode mode, Expiration<E>... expirations) {
+        this(tickDuration, ticksPerWheel, timeUnit, wheelName, mode, null, expirations);
+    }
+
+    /**
+     * @param tickCondition asked before every tick advance, the tick stands still while it answers false.
+     */
+    @SafeVarargs
+    public MemTimingWheel(int tickDuration, int ticksPerWheel,
+            TimeUnit timeUnit, String wheelName, Mode mode, TickCondition tickCondition, Expiration<E>... expirations) {
+
+        super(tickDuration, ticksPerWheel, timeUnit, wheelName, tickCondition, expirations);
+
+        this.mode = mode;
+        this.store = mode == Mode.OFF_HEAP ? new OffHeapStore<E>(OffHeapStore.DEFAULT_CHUNK_BYTES, getEntryCodecer()) : null;
+        if (mode == Mode.OFF_HEAP) {
+            this.indicator = new OffHeapIndicator<E>(store);
+        } else {
+            this.indicator = mode == Mode.INTRUSIVE ? new LinkedIndicator<E>() : new MemIndicator<E>();
+        }
+        this.lockFree = mode == Mode.LOCK_FREE;
+    }
+
+    /**
+     * How entries are encoded where the wheel keeps bytes rather than instances, e.g. off-heap.
+     * {@link JacksonEntryCodecer} JSON by default, a {@link me.binge.timing.wheel.entry.BinaryEntryCodecer}
+     * is a lot smaller and cheaper. It must be set before {@link #start()} and the first add.
+     */
+    public void setEntryCodecer(EntryCodecer<E, byte[]> entryCodecer) {
+        if (running()) {
+            throw new IllegalStateException("the entry codecer must be set before start");
+        }
+        this.entryCodecer = entryCodecer;
+        if (store != null) {
+            store.setEntryCodecer(entryCodecer);
+        }
+    }
+
+    public EntryCodecer<E, byte[]> getEntryCodecer() {
+        EntryCodecer<E, byte[]> codecer = entryCodecer;
+        if (codecer == null) { // created on demand, the modes keeping instances never encode.
+            synchronized (this) {
+                if (entryCodecer == null) {
+                    entryCodecer = new Utf8EntryCodecer<E>(new JacksonEntryCodecer<E>());
+                }
+                codecer = entryCodecer;
+            }
+        }
+        return codecer;
+    }
 
-        super(tickDuration, ticksPerWheel, timeUnit, wheelName, null, expirations);
+    /**
+     * @return the store of the off-heap mode, null in the other modes.
+     */
+    public OffHeapStore<E> getOffHeapStore() {
+        return store;
+    }
 
-        this.indicator = new MemIndicator<E>();
+    @Override
+    protected Wheel<E> newWheel(SlotGenerator<E> slotGenerator) {
+        return new RingWheel<E>(ticksPerWheel, slotGenerator);
+    }
+
+    @Override
+    protected boolean isLocalClock() {
+        return true;
+    }
+
+    @Override
+    protected boolean holdsEntries() {
+        return mode != Mode.OFF_HEAP;
+    }
+
+    /**
+     * Off-heap the renewal is written into the record, the copy drained carries it.
+     */
+    @Override
+    protected boolean renew(E e, long renewTick) {
+        if (store != null) {
+            store.renew(e, renewTick);
+            return true;
+        }
+        return super.renew(e, renewTick);
     }
 
     @Override
@@ -31,8 +155,14 @@ public class MemTimingWheel<E extends Entry> extends TimingWheel<E> {
     }
 
     @Override
-    public Slot<E> workSlot(long cycle, int id) {
-        return new MemSlot<E>(cycle, id);
+    public Slot<E> workSlot(int level, long cycle, int id) {
+        if (mode == Mode.INTRUSIVE) {
+            return new LinkedSlot<E>(level, cycle, id);
+        }
+        if (mode == Mode.OFF_HEAP) {
+            return new OffHeapSlot<E>(store, level, cycle, id);
+        }
+        return new MemSlot<E>(level, cycle, id);
     }
 
     @Override
@@ -45,10 +175,17 @@ public class MemTimingWheel<E extends Entry> extends TimingWheel<E> {
         if (currentTickIndex == this.ticksPerWheel) {
             currentTickIndex = 0;
         }
+        long cycle = currentTickIndex == 0 ? this.currentCycle + 1 : this.currentCycle;
+        this.currentTick = cycle * this.ticksPerWheel + currentTickIndex;
         this.currentTickIndex = currentTickIndex;
         return this.currentTickIndex;
     }
 
+    @Override
+    protected long getCurrentTick() {
+        return currentTick;
+    }
+
     @Override
     protected long getCurrentCycle() {
         return currentCycle;
@@ -0,0 +1,56 @@
+package me.binge.timing.wheel.impl.mem;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import me.binge.timing.wheel.Indicator;
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.entry.Entry;
+
+/**
+ * The key index of the {@link OffHeapStore}: a record is indexed when its slot stores it and leaves the
+ * index with it, so putting and removing here have nothing left to do.
+ */
+public class OffHeapIndicator<E extends Entry> implements Indicator<E> {
+
+    private final OffHeapStore<E> store;
+
+    public OffHeapIndicator(OffHeapStore<E> store) {
+        this.store = store;
+    }
+
+    @Override
+    public void put(E e, Slot<E> slot) {
+    }
+
+    @Override
+    public Slot<E> get(E e) {
+        return store.slotOf(e);
+    }
+
+    @Override
+    public void remove(E e) {
+    }
+
+    @Override
+    public void putAll(Collection<E> entries, Slot<E> slot) {
+    }
+
+    @Override
+    public Map<E, Slot<E>> getAll(Collection<E> entries) {
+        Map<E, Slot<E>> slots = new HashMap<E, Slot<E>>();
+        for (E e : entries) {
+            Slot<E> slot = store.slotOf(e);
+            if (slot != null) {
+                slots.put(e, slot);
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public void removeAll(Collection<E> entries) {
+    }
+
+}
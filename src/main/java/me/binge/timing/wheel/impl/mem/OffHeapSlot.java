@@ -0,0 +1,124 @@
+package me.binge.timing.wheel.impl.mem;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.entry.Entry;
+
+/**
+ * A slot of the {@link OffHeapStore}: the slot only knows the address of its first record, the records
+ * are chained through their own links. Entries come back as copies decoded when the slot is drained, their
+ * records stay in the store until expired, moved or removed, see {@link #keepsDrained()}.
+ */
+public class OffHeapSlot<E extends Entry> extends Slot<E> {
+
+    private final OffHeapStore<E> store;
+
+    /**
+     * the first record, how many records are chained from it, how many drained ones are kept and where the
+     * store registered the slot, guarded by the store.
+     */
+    long head = OffHeapStore.NIL;
+    int size;
+    int kept;
+    int handle = -1;
+
+    protected OffHeapSlot(OffHeapStore<E> store, int level, long cycle, int id) {
+        super(level, cycle, id);
+        this.store = store;
+    }
+
+    @Override
+    public void add(E e) {
+        store.add(this, e);
+    }
+
+    @Override
+    public E remove(E e) {
+        return store.remove(this, e);
+    }
+
+    @Override
+    public void addAll(Collection<E> entries) {
+        store.addAll(this, entries);
+    }
+
+    @Override
+    public void removeAll(Collection<E> entries) {
+        store.removeAll(this, entries);
+    }
+
+    /**
+     * Every entry, drained out of the slot. Prefer {@link #drain(int)} for slots that may be big.
+     */
+    @Override
+    public Set<E> elements() {
+        Set<E> entries = new HashSet<E>();
+        Iterator<List<E>> batches = drain(1024);
+        while (batches.hasNext()) {
+            entries.addAll(batches.next());
+        }
+        return entries;
+    }
+
+    @Override
+    public int size() {
+        return store.size(this);
+    }
+
+    /**
+     * Unchains the entries batch by batch, only one batch is decoded at a time. They stay indexed until
+     * taken out with {@link #remove(Entry)} or {@link #transfer(Entry, Slot)}.
+     */
+    @Override
+    public Iterator<List<E>> drain(final int batchSize) {
+        return new Iterator<List<E>>() {
+
+            private List<E> next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    next = store.drain(OffHeapSlot.this, batchSize);
+                    done = next.isEmpty();
+                }
+                return !done;
+            }
+
+            @Override
+            public List<E> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<E> batch = next;
+                next = null;
+                return batch;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean keepsDrained() {
+        return true;
+    }
+
+    /**
+     * Moves the record in one step, so a concurrent remove sees the entry either here or there.
+     */
+    @Override
+    public boolean transfer(E e, Slot<E> to) {
+        return store.transfer(this, e, (OffHeapSlot<E>) to);
+    }
+
+}
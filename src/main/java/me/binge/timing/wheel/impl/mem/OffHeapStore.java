@@ -0,0 +1,478 @@
+package me.binge.timing.wheel.impl.mem;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
+
+/**
+ * Where the {@link MemTimingWheel.Mode#OFF_HEAP} wheel keeps its entries: every entry is a record encoded
+ * into direct memory, in chunks of {@link ByteBuffer#allocateDirect(int)} cut into power of two blocks. A
+ * record holds the links of its slot chain and of its key index chain as addresses, the key and its hash,
+ * the renewal and the encoded entry. Blocks are reused through one free list per size. A drained record
+ * leaves its chain but stays indexed until expired, moved or removed, so all three agree on who got it.<br>
+ * The heap only holds the index buckets, a <tt>long</tt> each, and a small object per slot, so the garbage
+ * collector has next to nothing to trace however many entries are scheduled. An entry is decoded again
+ * only when its slot is drained.
+ * <p>
+ * Every operation runs under the monitor of the store, the encoding and decoding outside of it.
+ */
+public class OffHeapStore<E extends Entry> {
+
+    public static final int DEFAULT_CHUNK_BYTES = 16 * 1024 * 1024;
+
+    static final long NIL = -1;
+
+    /**
+     * the previous link of a record drained out of its chain.
+     */
+    private static final long DRAINED = -2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * the record layout, the key follows the header and the encoded entry follows the key.
+     */
+    private static final int PREV = 0;
+    private static final int NEXT = 8;
+    private static final int HASH_NEXT = 16;
+    private static final int RENEW_TICK = 24;
+    private static final int HASH = 32;
+    private static final int SLOT = 36;
+    private static final int KEY_LENGTH = 40;
+    private static final int LENGTH = 44;
+    private static final int HEADER = 48;
+
+    private static final int MIN_BLOCK_SHIFT = 6;
+
+    private final int chunkShift;
+    private final int chunkBytes;
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+    /**
+     * where the next block is cut from the latest chunk.
+     */
+    private int top;
+
+    private final long[] freeBlocks = new long[32];
+
+    /**
+     * the key index, chained through the records.
+     */
+    private long[] buckets = new long[1024];
+
+    /**
+     * the slots holding records, a record refers to its slot by the position here.
+     */
+    private OffHeapSlot<E>[] slots;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int slotCount;
+
+    private int entries;
+    private long usedBytes;
+
+    private volatile EntryCodecer<E, byte[]> entryCodecer;
+
+    /**
+     * @param chunkBytes the size of every direct buffer, rounded up to a power of two. An encoded entry,
+     *            its key and the record header must fit in one.
+     */
+    @SuppressWarnings("unchecked")
+    public OffHeapStore(int chunkBytes, EntryCodecer<E, byte[]> entryCodecer) {
+        if (chunkBytes < (1 << MIN_BLOCK_SHIFT) || chunkBytes > (1 << 30)) {
+            throw new IllegalArgumentException("chunkBytes must be between 64 and 1G: " + chunkBytes);
+        }
+        this.chunkShift = 32 - Integer.numberOfLeadingZeros(chunkBytes - 1);
+        this.chunkBytes = 1 << chunkShift;
+        this.top = this.chunkBytes;
+        this.entryCodecer = entryCodecer;
+        this.slots = (OffHeapSlot<E>[]) new OffHeapSlot<?>[16];
+        Arrays.fill(freeBlocks, NIL);
+        Arrays.fill(buckets, NIL);
+    }
+
+    public EntryCodecer<E, byte[]> getEntryCodecer() {
+        return entryCodecer;
+    }
+
+    public void setEntryCodecer(EntryCodecer<E, byte[]> entryCodecer) {
+        this.entryCodecer = entryCodecer;
+    }
+
+    /**
+     * @return the entries stored.
+     */
+    public synchronized int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the bytes of the blocks in use.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the direct memory taken by the chunks so far, never given back.
+     */
+    public synchronized long getReservedBytes() {
+        return (long) chunks.size() * chunkBytes;
+    }
+
+    // ~ -------------------------------------------------------------------------------------------------------------
+
+    void add(OffHeapSlot<E> slot, E e) {
+        byte[] key = e.getKey().getBytes(UTF8);
+        byte[] payload = entryCodecer.encode(e);
+        synchronized (this) {
+            put(slot, e.getKey().hashCode(), key, payload);
+        }
+    }
+
+    void addAll(OffHeapSlot<E> slot, Collection<E> batch) {
+        List<byte[]> keys = new ArrayList<byte[]>(batch.size());
+        List<byte[]> payloads = new ArrayList<byte[]>(batch.size());
+        for (E e : batch) {
+            keys.add(e.getKey().getBytes(UTF8));
+            payloads.add(entryCodecer.encode(e));
+        }
+        synchronized (this) {
+            int i = 0;
+            for (E e : batch) {
+                put(slot, e.getKey().hashCode(), keys.get(i), payloads.get(i));
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the entry if the slot held it.
+     */
+    E remove(OffHeapSlot<E> slot, E e) {
+        byte[] key = e.getKey().getBytes(UTF8);
+        synchronized (this) {
+            long record = find(e.getKey().hashCode(), key);
+            if (record == NIL || !slot.equals(slotOf(record))) {
+                return null;
+            }
+            delete(record);
+            return e;
+        }
+    }
+
+    void removeAll(OffHeapSlot<E> slot, Collection<E> batch) {
+        List<byte[]> keys = new ArrayList<byte[]>(batch.size());
+        for (E e : batch) {
+            keys.add(e.getKey().getBytes(UTF8));
+        }
+        synchronized (this) {
+            int i = 0;
+            for (E e : batch) {
+                long record = find(e.getKey().hashCode(), keys.get(i++));
+                if (record != NIL && slot.equals(slotOf(record))) {
+                    delete(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the entry drained from a slot into another one, re-encoded as it is now.
+     *
+     * @return <tt>false</tt> if the entry is no longer in the slot.
+     */
+    boolean transfer(OffHeapSlot<E> from, E e, OffHeapSlot<E> to) {
+        byte[] key = e.getKey().getBytes(UTF8);
+        byte[] payload = entryCodecer.encode(e);
+        synchronized (this) {
+            long record = find(e.getKey().hashCode(), key);
+            if (record == NIL || !from.equals(slotOf(record))) {
+                return false;
+            }
+            delete(record);
+            put(to, e.getKey().hashCode(), key, payload);
+            return true;
+        }
+    }
+
+    /**
+     * @return the slot holding the entry, null if none does.
+     */
+    OffHeapSlot<E> slotOf(E e) {
+        byte[] key = e.getKey().getBytes(UTF8);
+        synchronized (this) {
+            long record = find(e.getKey().hashCode(), key);
+            return record == NIL ? null : slotOf(record);
+        }
+    }
+
+    /**
+     * Record a lazy renewal of the entry, see {@link Entry#renew(long)}.
+     *
+     * @return <tt>false</tt> if the entry is not stored.
+     */
+    boolean renew(E e, long renewTick) {
+        byte[] key = e.getKey().getBytes(UTF8);
+        synchronized (this) {
+            long record = find(e.getKey().hashCode(), key);
+            if (record == NIL) {
+                return false;
+            }
+            chunk(record).putLong(offset(record) + RENEW_TICK, renewTick);
+            return true;
+        }
+    }
+
+    /**
+     * @return the entries of the slot, the drained ones not taken out yet included.
+     */
+    synchronized int size(OffHeapSlot<E> slot) {
+        return slot.size + slot.kept;
+    }
+
+    /**
+     * Unchain at most <tt>max</tt> entries of the slot, decoded with their renewal. They stay indexed.
+     */
+    List<E> drain(OffHeapSlot<E> slot, int max) {
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        long[] renewTicks;
+        synchronized (this) {
+            int n = Math.min(max, slot.size);
+            renewTicks = new long[n];
+            for (int i = 0; i < n; i++) {
+                long record = slot.head;
+                ByteBuffer chunk = chunk(record);
+                int offset = offset(record);
+                renewTicks[i] = chunk.getLong(offset + RENEW_TICK);
+                byte[] payload = new byte[chunk.getInt(offset + LENGTH)];
+                read(chunk, offset + HEADER + chunk.getInt(offset + KEY_LENGTH), payload);
+                payloads.add(payload);
+                long next = chunk.getLong(offset + NEXT);
+                if (next != NIL) {
+                    chunk(next).putLong(offset(next) + PREV, NIL);
+                }
+                slot.head = next;
+                slot.size--;
+                slot.kept++;
+                chunk.putLong(offset + PREV, DRAINED);
+            }
+        }
+        List<E> drained = new ArrayList<E>(payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            E e = entryCodecer.decode(payloads.get(i));
+            if (renewTicks[i] != 0) {
+                e.renew(renewTicks[i]);
+            }
+            drained.add(e);
+        }
+        return drained;
+    }
+
+    // ~ -------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Store the entry in the slot, replacing the record of its key if any.
+     */
+    private void put(OffHeapSlot<E> slot, int hash, byte[] key, byte[] payload) {
+        long old = find(hash, key);
+        if (old != NIL) {
+            delete(old);
+        }
+        if (slot.handle < 0) {
+            register(slot);
+        }
+        int size = HEADER + key.length + payload.length;
+        long record = allocate(size);
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record);
+        chunk.putLong(offset + PREV, NIL);
+        chunk.putLong(offset + NEXT, slot.head);
+        chunk.putLong(offset + RENEW_TICK, 0);
+        chunk.putInt(offset + HASH, hash);
+        chunk.putInt(offset + SLOT, slot.handle);
+        chunk.putInt(offset + KEY_LENGTH, key.length);
+        chunk.putInt(offset + LENGTH, payload.length);
+        write(chunk, offset + HEADER, key);
+        write(chunk, offset + HEADER + key.length, payload);
+        if (slot.head != NIL) {
+            chunk(slot.head).putLong(offset(slot.head) + PREV, record);
+        }
+        slot.head = record;
+        slot.size++;
+
+        int bucket = hash & (buckets.length - 1);
+        chunk.putLong(offset + HASH_NEXT, buckets[bucket]);
+        buckets[bucket] = record;
+        if (++entries > buckets.length - (buckets.length >> 2)) {
+            rehash();
+        }
+    }
+
+    /**
+     * Unlink the record from its slot and the index and free its block.
+     */
+    private void delete(long record) {
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record);
+        OffHeapSlot<E> slot = slots[chunk.getInt(offset + SLOT)];
+        long prev = chunk.getLong(offset + PREV);
+        if (prev == DRAINED) {
+            slot.kept--;
+        } else {
+            long next = chunk.getLong(offset + NEXT);
+            if (prev == NIL) {
+                slot.head = next;
+            } else {
+                chunk(prev).putLong(offset(prev) + NEXT, next);
+            }
+            if (next != NIL) {
+                chunk(next).putLong(offset(next) + PREV, prev);
+            }
+            slot.size--;
+        }
+        if (slot.size == 0 && slot.kept == 0) {
+            unregister(slot);
+        }
+
+        int bucket = chunk.getInt(offset + HASH) & (buckets.length - 1);
+        long hashNext = chunk.getLong(offset + HASH_NEXT);
+        if (buckets[bucket] == record) {
+            buckets[bucket] = hashNext;
+        } else {
+            long r = buckets[bucket];
+            for (long n = chunk(r).getLong(offset(r) + HASH_NEXT); n != record; n = chunk(r).getLong(offset(r) + HASH_NEXT)) {
+                r = n;
+            }
+            chunk(r).putLong(offset(r) + HASH_NEXT, hashNext);
+        }
+        entries--;
+        release(record, HEADER + chunk.getInt(offset + KEY_LENGTH) + chunk.getInt(offset + LENGTH));
+    }
+
+    private long find(int hash, byte[] key) {
+        for (long record = buckets[hash & (buckets.length - 1)]; record != NIL;) {
+            ByteBuffer chunk = chunk(record);
+            int offset = offset(record);
+            if (chunk.getInt(offset + HASH) == hash && keyEquals(chunk, offset, key)) {
+                return record;
+            }
+            record = chunk.getLong(offset + HASH_NEXT);
+        }
+        return NIL;
+    }
+
+    private static boolean keyEquals(ByteBuffer chunk, int offset, byte[] key) {
+        if (chunk.getInt(offset + KEY_LENGTH) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(offset + HEADER + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        long[] old = buckets;
+        buckets = new long[old.length << 1];
+        Arrays.fill(buckets, NIL);
+        for (long head : old) {
+            for (long record = head; record != NIL;) {
+                ByteBuffer chunk = chunk(record);
+                int offset = offset(record);
+                long next = chunk.getLong(offset + HASH_NEXT);
+                int bucket = chunk.getInt(offset + HASH) & (buckets.length - 1);
+                chunk.putLong(offset + HASH_NEXT, buckets[bucket]);
+                buckets[bucket] = record;
+                record = next;
+            }
+        }
+    }
+
+    private OffHeapSlot<E> slotOf(long record) {
+        return slots[chunk(record).getInt(offset(record) + SLOT)];
+    }
+
+    private void register(OffHeapSlot<E> slot) {
+        int handle;
+        if (freeSlotCount > 0) {
+            handle = freeSlots[--freeSlotCount];
+        } else {
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slotCount << 1);
+            }
+            handle = slotCount++;
+        }
+        slots[handle] = slot;
+        slot.handle = handle;
+    }
+
+    private void unregister(OffHeapSlot<E> slot) {
+        slots[slot.handle] = null;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount << 1);
+        }
+        freeSlots[freeSlotCount++] = slot.handle;
+        slot.handle = -1;
+    }
+
+    private static int blockShift(int size) {
+        return Math.max(MIN_BLOCK_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    private long allocate(int size) {
+        if (size > chunkBytes) {
+            throw new IllegalArgumentException("a record of " + size + " bytes does not fit in a chunk of " + chunkBytes);
+        }
+        int shift = blockShift(size);
+        usedBytes += 1 << shift;
+        long block = freeBlocks[shift];
+        if (block != NIL) {
+            freeBlocks[shift] = chunk(block).getLong(offset(block));
+            return block;
+        }
+        if (top + (1 << shift) > chunkBytes) {
+            chunks.add(ByteBuffer.allocateDirect(chunkBytes));
+            top = 0;
+        }
+        block = ((long) (chunks.size() - 1) << chunkShift) | top;
+        top += 1 << shift;
+        return block;
+    }
+
+    private void release(long block, int size) {
+        int shift = blockShift(size);
+        usedBytes -= 1 << shift;
+        chunk(block).putLong(offset(block), freeBlocks[shift]);
+        freeBlocks[shift] = block;
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks.get((int) (address >>> chunkShift));
+    }
+
+    private int offset(long address) {
+        return (int) (address & (chunkBytes - 1));
+    }
+
+    private static void write(ByteBuffer chunk, int offset, byte[] bytes) {
+        ByteBuffer view = chunk.duplicate();
+        view.position(offset);
+        view.put(bytes);
+    }
+
+    private static void read(ByteBuffer chunk, int offset, byte[] bytes) {
+        ByteBuffer view = chunk.duplicate();
+        view.position(offset);
+        view.get(bytes);
+    }
+
+}
@@ -0,0 +1,424 @@
+package me.binge.timing.wheel.impl.mmap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An append-only journal of {@link Record}s in memory-mapped segment files of a fixed size, plus checkpoints
+ * of the whole live state so the segments before them can be dropped.
+ * <ul>
+ * <li><tt>journal-&lt;seq&gt;.log</tt>: records back to back, each as its body length, the CRC32 of its body
+ * and the body. The file is zero filled, a zero length or a bad CRC, e.g. a record torn by a crash, ends it.</li>
+ * <li><tt>checkpoint-&lt;seq&gt;.ckpt</tt>: the live records when segment <tt>seq</tt> was started, written
+ * aside and renamed once forced, so replaying it and the segments from <tt>seq</tt> on rebuilds the state.</li>
+ * </ul>
+ * A record written into the mapping survives the process dying as soon as it is appended, it survives the
+ * machine crashing once forced: on every append with {@link #setForceOnAppend(boolean)}, otherwise when the
+ * segment is rotated, on checkpoints and on close.<br>
+ * The directory is locked for one journal at a time.
+ */
+public class MmapJournal implements Closeable {
+
+    private final static Log log = LogFactory.getLog(MmapJournal.class);
+
+    public static final byte ADD = 1;
+    public static final byte TOUCH = 2;
+    public static final byte REMOVE = 3;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+    private static final int CHECKPOINT_MAGIC = 0x74774350;
+
+    /**
+     * body length and CRC.
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * An add carries the encoded entry, a touch and a remove only its key. The deadline is on the
+     * {@link System#currentTimeMillis()} clock, so it still means something after a restart.
+     */
+    public static final class Record {
+
+        private final byte type;
+        private final String key;
+        private final long deadline;
+        private final byte[] payload;
+
+        public Record(byte type, String key, long deadline, byte[] payload) {
+            this.type = type;
+            this.key = key;
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+    }
+
+    /**
+     * Told every record found on {@link #replay(Replayer)}, oldest first.
+     */
+    public static interface Replayer {
+
+        public void replay(Record record);
+
+    }
+
+    private final File dir;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private volatile boolean forceOnAppend = false;
+
+    private long segmentSeq;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private long checkpointSeq;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Lock the directory and start a new segment after the ones already there, which are left for
+     * {@link #replay(Replayer)}.
+     *
+     * @param segmentBytes the size of every segment file, a record must fit in one.
+     */
+    public MmapJournal(File dir, int segmentBytes) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small: " + segmentBytes);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create the journal directory " + dir);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.lockChannel = new RandomAccessFile(new File(dir, "lock"), "rw").getChannel();
+        this.lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("the journal directory " + dir + " is in use");
+        }
+        long last = 0;
+        for (long seq : files(SEGMENT_PREFIX, SEGMENT_SUFFIX).keySet()) {
+            last = Math.max(last, seq);
+        }
+        for (long seq : files(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX).keySet()) {
+            last = Math.max(last, seq);
+            checkpointSeq = Math.max(checkpointSeq, seq);
+        }
+        openSegment(last + 1);
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Force the mapping to disk after every append, so a record survives the machine crashing too. Costs
+     * a sync of the dirty pages per record.
+     */
+    public void setForceOnAppend(boolean forceOnAppend) {
+        this.forceOnAppend = forceOnAppend;
+    }
+
+    public boolean isForceOnAppend() {
+        return forceOnAppend;
+    }
+
+    private TreeMap<Long, File> files(String prefix, String suffix) {
+        TreeMap<Long, File> files = new TreeMap<Long, File>();
+        File[] all = dir.listFiles();
+        if (all == null) {
+            return files;
+        }
+        for (File file : all) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    // not ours.
+                }
+            }
+        }
+        return files;
+    }
+
+    private File segmentFile(long seq) {
+        return new File(dir, String.format("%s%016d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    private File checkpointFile(long seq) {
+        return new File(dir, String.format("%s%016d%s", CHECKPOINT_PREFIX, seq, CHECKPOINT_SUFFIX));
+    }
+
+    private void openSegment(long seq) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(seq), "rw");
+        file.setLength(segmentBytes);
+        this.segmentChannel = file.getChannel();
+        this.segment = segmentChannel.map(MapMode.READ_WRITE, 0, segmentBytes);
+        this.segmentSeq = seq;
+    }
+
+    /**
+     * Read the latest checkpoint and every segment written before this journal was opened. Call it once,
+     * before appending.
+     *
+     * @return how many records were replayed.
+     */
+    public synchronized long replay(Replayer replayer) throws IOException {
+        long replayed = 0;
+        long from = 0;
+        TreeMap<Long, File> checkpoints = files(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+        for (Long seq : checkpoints.descendingKeySet()) {
+            List<Record> records = readCheckpoint(checkpoints.get(seq));
+            if (records == null) {
+                log.warn("ignore the unreadable checkpoint " + checkpoints.get(seq));
+                continue;
+            }
+            for (Record record : records) {
+                replayer.replay(record);
+            }
+            replayed += records.size();
+            from = seq;
+            break;
+        }
+        for (File file : files(SEGMENT_PREFIX, SEGMENT_SUFFIX).tailMap(from, true).headMap(segmentSeq, false).values()) {
+            replayed += readSegment(file, replayer);
+        }
+        return replayed;
+    }
+
+    private long readSegment(File file, Replayer replayer) throws IOException {
+        long replayed = 0;
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                buffer.get(body);
+                if (checksum != checksum(body)) {
+                    log.warn("torn record in " + file + " at " + (buffer.position() - length - HEADER_BYTES) + ", the rest is ignored");
+                    break;
+                }
+                replayer.replay(decode(body));
+                replayed++;
+            }
+        } finally {
+            channel.close();
+        }
+        return replayed;
+    }
+
+    private int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(Record record) {
+        byte[] key = record.key.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = record.payload == null ? new byte[0] : record.payload;
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + key.length + 4 + payload.length);
+        body.put(record.type).putLong(record.deadline).putInt(key.length).put(key).putInt(payload.length).put(payload);
+        return body.array();
+    }
+
+    private static Record decode(byte[] bytes) {
+        ByteBuffer body = ByteBuffer.wrap(bytes);
+        byte type = body.get();
+        long deadline = body.getLong();
+        byte[] key = new byte[body.getInt()];
+        body.get(key);
+        byte[] payload = new byte[body.getInt()];
+        body.get(payload);
+        return new Record(type, new String(key, StandardCharsets.UTF_8), deadline, payload.length == 0 ? null : payload);
+    }
+
+    /**
+     * Append a record, in a new segment if it does not fit in the current one.
+     */
+    public synchronized void append(Record record) throws IOException {
+        byte[] body = encode(record);
+        if (body.length + HEADER_BYTES > segmentBytes) {
+            throw new IllegalArgumentException("record of " + body.length + " bytes does not fit in a segment of " + segmentBytes);
+        }
+        if (body.length + HEADER_BYTES > segment.remaining()) {
+            rotate();
+        }
+        crc.reset();
+        crc.update(body, 0, body.length);
+        segment.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        if (forceOnAppend) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Force the current segment and start a new one.
+     *
+     * @return the sequence of the new segment.
+     */
+    public synchronized long rotate() throws IOException {
+        segment.force();
+        segmentChannel.close();
+        openSegment(segmentSeq + 1);
+        return segmentSeq;
+    }
+
+    /**
+     * @return how many segments were started since the latest checkpoint, the replay time is about that many
+     *         segments plus the checkpoint.
+     */
+    public synchronized long segmentsSinceCheckpoint() {
+        return segmentSeq - checkpointSeq;
+    }
+
+    /**
+     * Write the live state as it was when segment <tt>seq</tt> was started, see {@link #rotate()}, then drop
+     * the segments and checkpoints before it. Call it outside the appends, only the final rename takes the lock.
+     */
+    public void checkpoint(long seq, Collection<Record> live) throws IOException {
+        File tmp = new File(dir, CHECKPOINT_PREFIX + seq + ".tmp");
+        FileOutputStream file = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(live.size());
+            for (Record record : live) {
+                byte[] body = encode(record);
+                out.writeInt(body.length);
+                out.writeInt(checksum(body));
+                out.write(body);
+            }
+            out.flush();
+            file.getChannel().force(true);
+        } finally {
+            file.close();
+        }
+        synchronized (this) {
+            if (seq <= checkpointSeq) { // a later one made it first.
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(checkpointFile(seq))) {
+                throw new IOException("cannot rename " + tmp + " to " + checkpointFile(seq));
+            }
+            checkpointSeq = seq;
+        }
+        for (File old : files(SEGMENT_PREFIX, SEGMENT_SUFFIX).headMap(seq, false).values()) {
+            old.delete();
+        }
+        for (File old : files(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX).headMap(seq, false).values()) {
+            old.delete();
+        }
+    }
+
+    /**
+     * @return null if the checkpoint is truncated or corrupt.
+     */
+    private List<Record> readCheckpoint(File file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                return null;
+            }
+            int count = in.readInt();
+            List<Record> records = new ArrayList<Record>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] body = new byte[in.readInt()];
+                int checksum = in.readInt();
+                in.readFully(body);
+                if (checksum != checksum(body)) {
+                    return null;
+                }
+                records.add(decode(body));
+            }
+            return records;
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            log.error("read checkpoint " + file + " error: " + e.getMessage(), e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // read already.
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the segment files on disk, oldest first.
+     */
+    public List<File> segments() {
+        return Collections.unmodifiableList(new ArrayList<File>(files(SEGMENT_PREFIX, SEGMENT_SUFFIX).values()));
+    }
+
+    public synchronized void force() {
+        segment.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            segment.force();
+            segmentChannel.close();
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+}
@@ -0,0 +1,384 @@
+package me.binge.timing.wheel.impl.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import me.binge.timing.wheel.Indicator;
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.entry.BinaryEntryCodecer;
+import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
+import me.binge.timing.wheel.entry.JacksonEntryCodecer;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mmap.MmapJournal.Record;
+import me.binge.timing.wheel.impl.mmap.MmapJournal.Replayer;
+import me.binge.timing.wheel.tick.TickCondition;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The in-memory wheel with every add, touch, remove and expiry appended to a {@link MmapJournal}, so the
+ * scheduled entries survive a restart of the process at about the cost of a memory copy per operation.<br>
+ * The records are written through the indicator, under the entry monitor the wheel changes the entry under,
+ * so the journal sees the operations on an entry in the order they happened. An entry cascading down the
+ * overflow wheels is not written again.
+ * <p>
+ * {@link #start()} replays the journal of the previous run and schedules its entries again with the time
+ * they had left, the ones due meanwhile expire on the first tick. Every {@link #setCheckpointSegments(int)}
+ * segments the live entries are written to a checkpoint and the segments before it dropped, which bounds
+ * both the disk used and the replay time.<br>
+ * An entry expiring when the process dies may be lost: it is journaled as removed when it is unlinked,
+ * before its expiration runs.
+ */
+public class MmapTimingWheel<E extends Entry> extends MemTimingWheel<E> {
+
+    private final static Log log = LogFactory.getLog(MmapTimingWheel.class);
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private final MmapJournal journal;
+    private final JournaledIndicator indicator;
+
+    /**
+     * the journaled state of the scheduled entries by key, what a checkpoint writes.
+     */
+    private final Map<String, Live<E>> live = new ConcurrentHashMap<String, Live<E>>();
+
+    private volatile int checkpointSegments = 4;
+
+    private final AtomicBoolean checkpointing = new AtomicBoolean(false);
+
+    private final AtomicBoolean recovered = new AtomicBoolean(false);
+
+    private volatile long recoveredEntries = 0;
+
+    @SafeVarargs
+    public MmapTimingWheel(int tickDuration, int ticksPerWheel, TimeUnit timeUnit, String wheelName, File dir,
+            Expiration<E>... expirations) {
+        this(tickDuration, ticksPerWheel, timeUnit, wheelName, dir, DEFAULT_SEGMENT_BYTES, Mode.DEFAULT, null, expirations);
+    }
+
+    /**
+     * @param dir the journal directory, owned by this wheel alone.
+     * @param segmentBytes the size of every journal segment, an encoded entry must fit in one.
+     * @param mode {@link Mode#DEFAULT} or {@link Mode#INTRUSIVE}, the lock-free mode has no indicator to
+     *            journal through and the off-heap one would keep the live entries on the heap anyway.
+     */
+    @SafeVarargs
+    public MmapTimingWheel(int tickDuration, int ticksPerWheel, TimeUnit timeUnit, String wheelName, File dir,
+            int segmentBytes, Mode mode, TickCondition tickCondition, Expiration<E>... expirations) {
+        super(tickDuration, ticksPerWheel, timeUnit, wheelName, mode, tickCondition, expirations);
+        if (mode == Mode.LOCK_FREE) {
+            throw new IllegalArgumentException("the lock-free mode cannot be journaled");
+        }
+        if (mode == Mode.OFF_HEAP) {
+            throw new IllegalArgumentException("the off-heap mode cannot be journaled");
+        }
+        try {
+            this.journal = new MmapJournal(dir, segmentBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot open the journal in " + dir + ": " + e.getMessage(), e);
+        }
+        this.indicator = new JournaledIndicator(super.getIndicator());
+    }
+
+    /**
+     * How entries are written to the journal. {@link JacksonEntryCodecer} JSON by default, a
+     * {@link BinaryEntryCodecer} is a lot smaller and cheaper. It must be set before {@link #start()} and the
+     * first add, and stay the same across restarts.
+     */
+    @Override
+    public void setEntryCodecer(EntryCodecer<E, byte[]> entryCodecer) {
+        super.setEntryCodecer(entryCodecer);
+    }
+
+    /**
+     * Write a checkpoint once this many segments have been started since the latest one, 4 by default. Fewer
+     * means a shorter replay and less disk, for a checkpoint of all the live entries more often.
+     */
+    public void setCheckpointSegments(int checkpointSegments) {
+        if (checkpointSegments <= 0) {
+            throw new IllegalArgumentException("checkpointSegments must be greater than 0: " + checkpointSegments);
+        }
+        this.checkpointSegments = checkpointSegments;
+    }
+
+    /**
+     * @see MmapJournal#setForceOnAppend(boolean)
+     */
+    public void setForceOnAppend(boolean forceOnAppend) {
+        journal.setForceOnAppend(forceOnAppend);
+    }
+
+    public MmapJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return how many entries {@link #start()} scheduled again from the journal.
+     */
+    public long getRecoveredEntries() {
+        return recoveredEntries;
+    }
+
+    @Override
+    public Indicator<E> getIndicator() {
+        return indicator;
+    }
+
+    /**
+     * Start ticking, then schedule the entries replayed from the journal again and checkpoint them, so the
+     * journal of the previous run is dropped.
+     */
+    @Override
+    public void start() {
+        super.start();
+        if (recovered.compareAndSet(false, true)) {
+            try {
+                recover();
+                checkpoint();
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot replay the journal in " + journal.getDir() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        final Map<String, Record> replayed = new LinkedHashMap<String, Record>();
+        journal.replay(new Replayer() {
+
+            @Override
+            public void replay(Record record) {
+                switch (record.getType()) {
+                case MmapJournal.ADD:
+                    replayed.put(record.getKey(), record);
+                    break;
+                case MmapJournal.TOUCH:
+                    Record added = replayed.get(record.getKey());
+                    if (added != null) {
+                        replayed.put(record.getKey(), new Record(MmapJournal.ADD, added.getKey(), record.getDeadline(), added.getPayload()));
+                    }
+                    break;
+                default:
+                    replayed.remove(record.getKey());
+                }
+            }
+        });
+        long now = System.currentTimeMillis();
+        long count = 0;
+        for (Record record : replayed.values()) {
+            if (live.containsKey(record.getKey())) { // added again since this wheel was created.
+                continue;
+            }
+            E e;
+            try {
+                e = getEntryCodecer().decode(record.getPayload());
+            } catch (RuntimeException ex) {
+                log.error("cannot decode the journaled entry " + record.getKey() + ", dropped: " + ex.getMessage(), ex);
+                continue;
+            }
+            add(e, Math.max(0, record.getDeadline() - now), TimeUnit.MILLISECONDS);
+            count++;
+        }
+        recoveredEntries = count;
+        log.info(getName() + " recovered " + count + " entries from " + journal.getDir());
+    }
+
+    /**
+     * Write the live entries to a checkpoint and drop the journal before it. Done in the background as the
+     * segments fill up, see {@link #setCheckpointSegments(int)}.
+     */
+    public void checkpoint() throws IOException {
+        long seq;
+        List<Live<E>> snapshot;
+        synchronized (journal) {
+            seq = journal.rotate();
+            snapshot = new ArrayList<Live<E>>(live.values());
+        }
+        List<Record> records = new ArrayList<Record>(snapshot.size());
+        for (Live<E> state : snapshot) {
+            records.add(new Record(MmapJournal.ADD, state.entry.getKey(), state.deadline, getEntryCodecer().encode(state.entry)));
+        }
+        journal.checkpoint(seq, records);
+    }
+
+    private void checkpointInBackground() {
+        if (!checkpointing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    checkpoint();
+                } catch (Exception e) {
+                    log.error(getName() + " checkpoint error: " + e.getMessage(), e);
+                } finally {
+                    checkpointing.set(false);
+                }
+            }
+        }, getName() + "-checkpoint");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop ticking, then force and close the journal.
+     */
+    @Override
+    public boolean stop() {
+        if (!super.stop()) {
+            return false;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("close the journal error: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Push back the expiry as {@link MemTimingWheel} does, journaled when it does push it back.
+     */
+    @Override
+    public long touch(E e, long delay, TimeUnit unit) {
+        synchronized (e) {
+            long remain = super.touch(e, delay, unit);
+            Live<E> state = live.get(e.getKey());
+            long tick = e.getRenewTick();
+            if (state != null && tick > state.tick) {
+                long deadline = deadline(tick);
+                journal(new Record(MmapJournal.TOUCH, e.getKey(), deadline, null), e.getKey(), new Live<E>(state.entry, tick, deadline));
+            }
+            return remain;
+        }
+    }
+
+    /**
+     * the wall clock time the tick is due at.
+     */
+    private long deadline(long tick) {
+        return System.currentTimeMillis() + (tick - getCurrentTick()) * tickDurationNanos / 1000000;
+    }
+
+    /**
+     * Append the record and update the live state as one step, with respect to the checkpoints.
+     *
+     * @param state null for an entry gone.
+     */
+    private void journal(Record record, String key, Live<E> state) {
+        boolean checkpoint;
+        try {
+            synchronized (journal) {
+                journal.append(record);
+                if (state == null) {
+                    live.remove(key);
+                } else {
+                    live.put(key, state);
+                }
+                checkpoint = journal.segmentsSinceCheckpoint() >= checkpointSegments;
+            }
+        } catch (IOException ex) {
+            log.error("journal " + key + " failed:" + ex.getMessage(), ex);
+            return;
+        }
+        if (checkpoint) {
+            checkpointInBackground();
+        }
+    }
+
+    private void journalAdded(E e) {
+        long tick = Math.max(e.getExpireTick(), e.getRenewTick());
+        Live<E> state = live.get(e.getKey());
+        if (state != null && state.entry == e && state.tick == tick) { // cascaded, nothing new.
+            return;
+        }
+        long deadline = deadline(tick);
+        journal(new Record(MmapJournal.ADD, e.getKey(), deadline, getEntryCodecer().encode(e)), e.getKey(), new Live<E>(e, tick, deadline));
+    }
+
+    private void journalRemoved(E e) {
+        if (live.containsKey(e.getKey())) {
+            journal(new Record(MmapJournal.REMOVE, e.getKey(), 0, null), e.getKey(), null);
+        }
+    }
+
+    /**
+     * The entry, its expire tick and its wall clock deadline as last journaled.
+     */
+    private static final class Live<E> {
+
+        final E entry;
+        final long tick;
+        final long deadline;
+
+        Live(E entry, long tick, long deadline) {
+            this.entry = entry;
+            this.tick = tick;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * The indicator of the in-memory wheel, journaling the entries indexed and unindexed.
+     */
+    private class JournaledIndicator implements Indicator<E> {
+
+        private final Indicator<E> indicator;
+
+        JournaledIndicator(Indicator<E> indicator) {
+            this.indicator = indicator;
+        }
+
+        @Override
+        public void put(E e, Slot<E> slot) {
+            indicator.put(e, slot);
+            journalAdded(e);
+        }
+
+        @Override
+        public Slot<E> get(E e) {
+            return indicator.get(e);
+        }
+
+        @Override
+        public void remove(E e) {
+            indicator.remove(e);
+            journalRemoved(e);
+        }
+
+        @Override
+        public void putAll(Collection<E> entries, Slot<E> slot) {
+            indicator.putAll(entries, slot);
+            for (E e : entries) {
+                journalAdded(e);
+            }
+        }
+
+        @Override
+        public Map<E, Slot<E>> getAll(Collection<E> entries) {
+            return indicator.getAll(entries);
+        }
+
+        @Override
+        public void removeAll(Collection<E> entries) {
+            indicator.removeAll(entries);
+            for (E e : entries) {
+                journalRemoved(e);
+            }
+        }
+    }
+
+}
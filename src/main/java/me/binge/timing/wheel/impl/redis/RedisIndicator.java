@@ -1,6 +1,14 @@
 package me.binge.timing.wheel.impl.redis;
 
 import static me.binge.timing.wheel.utils.RedisConstant.entriesSlotKey;
+import static me.binge.timing.wheel.utils.RedisConstant.slotId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import me.binge.redis.exec.RedisExecutor;
 import me.binge.timing.wheel.Indicator;
 import me.binge.timing.wheel.Slot;
@@ -21,16 +29,27 @@ public class RedisIndicator<E extends Entry> implements Indicator<E> {
 
     @Override
     public void put(E e, Slot<E> slot) {
-        this.redisExecutor.hset(entriesSlotKey(), e.getKey(), slot.getCycle() + "_" + slot.getId());
+        this.redisExecutor.hset(entriesSlotKey(), e.getKey(), slotId(slot));
     }
 
     @Override
     public Slot<E> get(E e) {
-        String ssid = this.redisExecutor.hget(entriesSlotKey(), e.getKey());
+        return slot(this.redisExecutor.hget(entriesSlotKey(), e.getKey()));
+    }
+
+    /**
+     * the slot of the id, not kept by the wheel if it holds none: the slots behind the tick are not cleared
+     * by it.
+     */
+    Slot<E> slot(String ssid) {
         if (StringUtils.isBlank(ssid)) {
             return null;
         }
-        return wheel.get(e.getCycle(), e.getSlotId());
+        String[] parts = ssid.split("_");
+        if (parts.length == 3) { // level_cycle_id, only written for overflow wheels.
+            return wheel.level(Integer.valueOf(parts[0])).find(Long.valueOf(parts[1]), Integer.valueOf(parts[2]));
+        }
+        return wheel.find(Long.valueOf(parts[0]), Integer.valueOf(parts[1]));
     }
 
     @Override
@@ -38,4 +57,64 @@ public class RedisIndicator<E extends Entry> implements Indicator<E> {
         this.redisExecutor.hdel(entriesSlotKey(), e.getKey());
     }
 
+    /**
+     * one HMSET.
+     */
+    @Override
+    public void putAll(Collection<E> entries, Slot<E> slot) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        String slotId = slotId(slot);
+        Map<String, String> index = new HashMap<String, String>();
+        for (E e : entries) {
+            index.put(e.getKey(), slotId);
+        }
+        this.redisExecutor.hmset(entriesSlotKey(), index);
+    }
+
+    /**
+     * one HMGET.
+     */
+    @Override
+    public Map<E, Slot<E>> getAll(Collection<E> entries) {
+        Map<E, Slot<E>> slots = new HashMap<E, Slot<E>>();
+        if (entries.isEmpty()) {
+            return slots;
+        }
+        List<E> ordered = new ArrayList<E>(entries);
+        String[] keys = new String[ordered.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ordered.get(i).getKey();
+        }
+        List<String> ssids = this.redisExecutor.hmget(entriesSlotKey(), keys);
+        for (int i = 0; ssids != null && i < keys.length; i++) {
+            Slot<E> slot = slot(ssids.get(i));
+            if (slot != null) {
+                slots.put(ordered.get(i), slot);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * one HDEL.
+     */
+    @Override
+    public void removeAll(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        this.redisExecutor.hdel(entriesSlotKey(), keys(entries));
+    }
+
+    static String[] keys(Collection<? extends Entry> entries) {
+        String[] keys = new String[entries.size()];
+        int i = 0;
+        for (Entry e : entries) {
+            keys[i++] = e.getKey();
+        }
+        return keys;
+    }
+
 }
@@ -0,0 +1,156 @@
+package me.binge.timing.wheel.impl.redis;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import me.binge.redis.exec.RedisExecutor;
+import me.binge.redis.utils.RedisCmdPair;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * A Lua script run by its sha1, so every call ships the 40 chars digest instead of the script body. The
+ * digest is computed locally, the script is only sent again when the server answers NOSCRIPT.<br>
+ * Scripts must answer nil or strings: a script called inside a transaction is read back as a string reply.
+ */
+public class RedisScript {
+
+    /**
+     * Index an entry in a slot, taking it out of the slot it was in. The value is written to the slot by a
+     * binary command next to this script in the same transaction. KEYS: entries slot key. ARGV: entry key,
+     * target slot id, slot key prefix. Answers the slot id the entry was in, or nil.
+     */
+    public static final RedisScript RELOCATE = new RedisScript(
+            "local old = redis.call('hget', KEYS[1], ARGV[1])\n"
+            + "if old and old ~= ARGV[2] then redis.call('hdel', ARGV[3] .. old, ARGV[1]) end\n"
+            + "redis.call('hset', KEYS[1], ARGV[1], ARGV[2])\n"
+            + "return old");
+
+    /**
+     * Take an entry out of its slot and the index. KEYS: entries slot key. ARGV: entry key, slot key prefix.
+     * Answers the slot id the entry was in, or nil.
+     */
+    public static final RedisScript REMOVE = new RedisScript(
+            "local old = redis.call('hget', KEYS[1], ARGV[1])\n"
+            + "if not old then return nil end\n"
+            + "redis.call('hdel', KEYS[1], ARGV[1])\n"
+            + "redis.call('hdel', ARGV[2] .. old, ARGV[1])\n"
+            + "return old");
+
+    /**
+     * Take up to about ARGV[1] entries out of a slot. KEYS: slot key, optionally the slot index. ARGV: batch
+     * size, the slot id taken out of the index once the slot is found empty. Answers the encoded entries,
+     * none once the slot is empty. Every call is atomic, so an entry is answered to exactly one caller, and
+     * an entry added after the slot is unindexed indexes it again.<br>
+     * HSCAN is not deterministic, so the writes after it need effects replication (Redis 3.2+), an older
+     * server is drained with plain commands, see {@link RedisTimingWheel#setPlainCommands(boolean)}.
+     */
+    public static final RedisScript DRAIN = new RedisScript(
+            "if redis.replicate_commands then redis.replicate_commands() end\n"
+            + "local vals = {}\n"
+            + "local cursor = '0'\n"
+            + "repeat\n"
+            + "  local page = redis.call('hscan', KEYS[1], cursor, 'COUNT', ARGV[1])\n"
+            + "  cursor = page[1]\n"
+            + "  for i = 1, #page[2], 2 do\n"
+            + "    redis.call('hdel', KEYS[1], page[2][i])\n"
+            + "    vals[#vals + 1] = page[2][i + 1]\n"
+            + "  end\n"
+            + "until #vals > 0 or cursor == '0'\n"
+            + "if #vals == 0 and KEYS[2] then redis.call('zrem', KEYS[2], ARGV[2]) end\n"
+            + "return vals");
+
+    /**
+     * Write a tick state hash under a fencing token, unless it was written under a greater one, and publish
+     * the new tick if a channel is given. KEYS: tick state key. ARGV: token, channel or empty, message, then
+     * the fields and values to write, the token among them. Answers nil once written, or the greater token.
+     */
+    public static final RedisScript FENCED_WRITE = new RedisScript(
+            "local fenced = redis.call('hget', KEYS[1], 'token')\n"
+            + "if fenced and tonumber(fenced) > tonumber(ARGV[1]) then return fenced end\n"
+            + "redis.call('hmset', KEYS[1], unpack(ARGV, 4))\n"
+            + "if ARGV[2] ~= '' then redis.call('publish', ARGV[2], ARGV[3]) end\n"
+            + "return nil");
+
+    private final String script;
+    private final String sha;
+
+    public RedisScript(String script) {
+        this.script = script;
+        this.sha = sha1(script);
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    /**
+     * evalsha, falling back to eval once if the server does not know the script yet.
+     */
+    public <T> T eval(RedisExecutor<?> redisExecutor, List<String> keys, List<String> args) {
+        try {
+            return redisExecutor.cmd(evalsha(keys, args));
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+        }
+        return redisExecutor.cmd(new RedisCmdPair("eval", new Object[] {script, keys, args}));
+    }
+
+    /**
+     * {@link #eval(RedisExecutor, List, List)} with binary keys, arguments and replies.
+     */
+    public <T> T evalBinary(RedisExecutor<?> redisExecutor, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return redisExecutor.cmd(new RedisCmdPair("evalsha", new Object[] {SafeEncoder.encode(sha), keys, args}));
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+        }
+        return redisExecutor.cmd(new RedisCmdPair("eval", new Object[] {SafeEncoder.encode(script), keys, args}));
+    }
+
+    /**
+     * the evalsha command, for batching calls into a transaction.
+     */
+    public RedisCmdPair evalsha(List<String> keys, List<String> args) {
+        return new RedisCmdPair("evalsha", new Object[] {sha, keys, args});
+    }
+
+    public void load(RedisExecutor<?> redisExecutor) {
+        redisExecutor.cmd(new RedisCmdPair("scriptLoad", new Object[] {script}));
+    }
+
+    /**
+     * @return whether the error, or one of its causes, is the NOSCRIPT reply.
+     */
+    public static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(Charset.forName("UTF-8")));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
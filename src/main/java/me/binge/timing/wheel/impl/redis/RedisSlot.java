@@ -1,44 +1,202 @@
 package me.binge.timing.wheel.impl.redis;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import me.binge.redis.exec.RedisExecutor;
+import me.binge.redis.exec.impl.ClusterJedisExecutor;
+import me.binge.redis.exec.impl.ShardedJedisExecutor;
+import me.binge.redis.utils.RedisCmdPair;
 import me.binge.timing.wheel.Slot;
 import me.binge.timing.wheel.TimingWheel;
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
 import me.binge.timing.wheel.entry.JacksonEntryCodecer;
+import me.binge.timing.wheel.entry.Utf8EntryCodecer;
+import redis.clients.util.SafeEncoder;
 import static me.binge.timing.wheel.utils.RedisConstant.*;
 
+/**
+ * A slot kept in a redis hash, the entry keys to the encoded entries. An indexed slot is written in one
+ * transaction with its place in the slot index, and a scripted one drained with a Lua script, so only on an
+ * executor running transactions and scripts, see {@link #singleNode(RedisExecutor)}.
+ */
 public class RedisSlot<E extends Entry> extends Slot<E> {
 
     private final static Log log = LogFactory.getLog(TimingWheel.class);
 
-    private String allEntriesKey;
+    private static final int DRAIN_BATCH_SIZE = 1024;
+
     private String slotKey;
 
+    /**
+     * the score of this slot in the slot index, -1 for a slot not indexed.
+     */
+    private final long dueTick;
+
+    /**
+     * whether the slot is drained by the {@link RedisScript#DRAIN} script.
+     */
+    private final boolean scripted;
+
     private RedisExecutor<?> redisExecutor;
-    private JacksonEntryCodecer<E> entryCodecer = new JacksonEntryCodecer<E>();
+    private EntryCodecer<E, byte[]> entryCodecer;
 
     public RedisSlot(long cycle, int id, RedisExecutor<?> redisExecutor) {
-        super(cycle, id);
+        this(0, cycle, id, redisExecutor);
+    }
+
+    public RedisSlot(int level, long cycle, int id, RedisExecutor<?> redisExecutor) {
+        this(level, cycle, id, redisExecutor, new Utf8EntryCodecer<E>(new JacksonEntryCodecer<E>()));
+    }
+
+    public RedisSlot(int level, long cycle, int id, RedisExecutor<?> redisExecutor, EntryCodecer<E, byte[]> entryCodecer) {
+        this(level, cycle, id, redisExecutor, entryCodecer, -1);
+    }
+
+    /**
+     * @param dueTick the tick the slot comes up at. The slot is then kept in the sorted set of
+     *            <tt>slotsKey()</tt> by it while it holds entries, so the slots left behind the
+     *            tick are found with one ZRANGEBYSCORE. -1 to keep it out of the index, as on an
+     *            executor running no transaction.
+     */
+    public RedisSlot(int level, long cycle, int id, RedisExecutor<?> redisExecutor, EntryCodecer<E, byte[]> entryCodecer, long dueTick) {
+        this(level, cycle, id, redisExecutor, entryCodecer, dueTick, singleNode(redisExecutor));
+    }
+
+    /**
+     * @param scripted whether to drain the slot with the {@link RedisScript#DRAIN} script, otherwise with
+     *            plain commands, see {@link #drain(int)}.
+     */
+    public RedisSlot(int level, long cycle, int id, RedisExecutor<?> redisExecutor, EntryCodecer<E, byte[]> entryCodecer, long dueTick,
+            boolean scripted) {
+        super(level, cycle, id);
         this.redisExecutor = redisExecutor;
-        this.slotKey = slotKeyPrefix() + this.getCycle() + "_" + this.getId();
-        this.allEntriesKey = slotKey + "_vals";
+        this.entryCodecer = entryCodecer;
+        this.slotKey = slotKeyPrefix() + slotId(this);
+        this.dueTick = dueTick;
+        this.scripted = scripted;
+    }
+
+    /**
+     * @return whether every key behind the executor is on one node, which transactions and scripts need:
+     *         not for a {@link ShardedJedisExecutor}, which runs neither, nor for a
+     *         {@link ClusterJedisExecutor}, which runs no transaction and would spread the keys of one, or of
+     *         a script, over the cluster.
+     */
+    public static boolean singleNode(RedisExecutor<?> redisExecutor) {
+        return !(redisExecutor instanceof ShardedJedisExecutor || redisExecutor instanceof ClusterJedisExecutor);
+    }
+
+    public String getSlotKey() {
+        return slotKey;
+    }
+
+    public long getDueTick() {
+        return dueTick;
+    }
+
+    public boolean isIndexed() {
+        return dueTick >= 0;
+    }
+
+    /**
+     * the ZADD keeping this slot in the slot index, to go in the transaction adding to it.
+     */
+    public RedisCmdPair indexCmd() {
+        return new RedisCmdPair("zadd", new Object[] {slotsKey(), (double) dueTick, slotId(this)});
+    }
+
+    /**
+     * the value stored for the entry in this slot.
+     */
+    public byte[] encode(E e) {
+        return entryCodecer.encode(e);
+    }
+
+    /**
+     * the binary hset storing the entry in this slot, for batching into a transaction.
+     */
+    public RedisCmdPair addCmd(E e) {
+        return new RedisCmdPair("hset", new Object[] {SafeEncoder.encode(slotKey), SafeEncoder.encode(e.getKey()), encode(e)});
+    }
+
+    /**
+     * the binary hmset storing the encoded entries in this slot, for batching into a transaction.
+     */
+    public RedisCmdPair addAllCmd(Map<String, byte[]> vals) {
+        Map<byte[], byte[]> fields = new LinkedHashMap<byte[], byte[]>();
+        for (Map.Entry<String, byte[]> val : vals.entrySet()) {
+            fields.put(SafeEncoder.encode(val.getKey()), val.getValue());
+        }
+        return new RedisCmdPair("hmset", new Object[] {SafeEncoder.encode(slotKey), fields});
     }
 
     @Override
     public void add(E e) {
-        String val = null;
         try {
-            val = entryCodecer.encode(e);
-            this.redisExecutor.hset(slotKey, e.getKey(), val);
+            write(addCmd(e));
+        } catch (Exception ex) {
+            log.error("add " + e + " to slot " + this.getId() + " failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * one binary HMSET.
+     */
+    @Override
+    public void addAll(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> vals = new LinkedHashMap<String, byte[]>();
+        for (E e : entries) {
+            vals.put(e.getKey(), encode(e));
+        }
+        try {
+            write(addAllCmd(vals));
+        } catch (Exception ex) {
+            log.error("add " + entries.size() + " entries to slot " + this.getId() + " failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * the write, in one transaction with the index when indexed, a plain command otherwise.
+     */
+    private void write(RedisCmdPair cmd) throws Exception {
+        if (isIndexed()) {
+            this.redisExecutor.multi(Arrays.asList(cmd, indexCmd()));
+        } else {
+            this.redisExecutor.cmd(cmd);
+        }
+    }
+
+    /**
+     * one HDEL.
+     */
+    @Override
+    public void removeAll(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            this.redisExecutor.hdel(slotKey, RedisIndicator.keys(entries));
         } catch (Exception ex) {
-            log.error("add " + val + " to slot " + this.getId() + " failed:" + ex.getMessage(), ex);
+            log.error("remove " + entries.size() + " entries from slot " + this.getCycle() + "_" + this.getId() + " failed:" + ex.getMessage(), ex);
         }
     }
 
@@ -52,29 +210,82 @@ public class RedisSlot<E extends Entry> extends Slot<E> {
         return e;
     }
 
-    private boolean storeAllEntries() {
-        this.redisExecutor.del(allEntriesKey);
-        List<String> vals = this.redisExecutor.hvals(slotKey);
-        if (vals == null || vals.isEmpty()) {
-            return false;
+    /**
+     * Every entry, taken out of the slot. Prefer {@link #drain(int)} for slots that may be big.
+     */
+    @Override
+    public Set<E> elements() {
+        Set<E> entries = new HashSet<E>();
+        Iterator<List<E>> batches = drain(DRAIN_BATCH_SIZE);
+        while (batches.hasNext()) {
+            entries.addAll(batches.next());
         }
-        this.redisExecutor.sadd(allEntriesKey, vals.toArray(new String[]{}));
-        return true;
+        return entries;
     }
 
     @Override
-    public Set<E> elements() {
-        Set<E> entries = new HashSet<E>();
+    public int size() {
         try {
-            if (!storeAllEntries()) {
-                return entries;
+            Long size = this.redisExecutor.hlen(slotKey);
+            return size == null ? 0 : size.intValue();
+        } catch (Exception e) {
+            log.error("count entries of slot " + this.getId() + " error:" + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Takes the entries out of the slot batch by batch with the {@link RedisScript#DRAIN} script, one round
+     * trip per batch, so only one batch is held in memory at a time. The last call, finding the slot empty,
+     * takes it out of the slot index.<br>
+     * Not scripted, the keys of the slot are read with one HKEYS and then every batch with one HMGET, each
+     * entry taken with its own HDEL: still answered to exactly one caller, but at a round trip per entry.
+     */
+    @Override
+    public Iterator<List<E>> drain(final int batchSize) {
+        return new Iterator<List<E>>() {
+
+            private List<E> next;
+            private boolean done;
+            private final Deque<String> fields = new ArrayDeque<String>(); // read ahead when not scripted.
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    next = scripted ? fetch(batchSize) : fetchPlain(batchSize, fields);
+                    done = next.isEmpty();
+                }
+                return !done;
+            }
+
+            @Override
+            public List<E> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<E> batch = next;
+                next = null;
+                return batch;
             }
-            Set<String> vals = new HashSet<String>();
-            String v = null;
-            while ((v = this.redisExecutor.spop(allEntriesKey)) != null) {
-                vals.add(v);
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
             }
-            for (String val : vals) {
+        };
+    }
+
+    private List<E> fetch(int batchSize) {
+        List<E> entries = new ArrayList<E>();
+        try {
+            List<byte[]> keys = isIndexed() ? Arrays.asList(SafeEncoder.encode(slotKey), SafeEncoder.encode(slotsKey()))
+                    : Collections.singletonList(SafeEncoder.encode(slotKey));
+            List<byte[]> vals = RedisScript.DRAIN.evalBinary(redisExecutor, keys,
+                    Arrays.asList(SafeEncoder.encode(String.valueOf(batchSize)), SafeEncoder.encode(slotId(this))));
+            if (vals == null) {
+                return entries;
+            }
+            for (byte[] val : vals) {
                 entries.add(this.entryCodecer.decode(val));
             }
         } catch (Exception e) {
@@ -83,10 +294,43 @@ public class RedisSlot<E extends Entry> extends Slot<E> {
         return entries;
     }
 
+    private List<E> fetchPlain(int batchSize, Deque<String> fields) {
+        List<E> entries = new ArrayList<E>();
+        try {
+            while (entries.isEmpty()) {
+                if (fields.isEmpty()) {
+                    Set<String> keys = this.redisExecutor.hkeys(slotKey);
+                    if (keys == null || keys.isEmpty()) {
+                        if (isIndexed()) {
+                            this.redisExecutor.zrem(slotsKey(), slotId(this));
+                        }
+                        return entries;
+                    }
+                    fields.addAll(keys);
+                }
+                String[] batch = new String[Math.min(batchSize, fields.size())];
+                byte[][] binaryBatch = new byte[batch.length][];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = fields.poll();
+                    binaryBatch[i] = SafeEncoder.encode(batch[i]);
+                }
+                List<byte[]> vals = this.redisExecutor.cmd(new RedisCmdPair("hmget", new Object[] {SafeEncoder.encode(slotKey), binaryBatch}));
+                for (int i = 0; i < batch.length; i++) {
+                    byte[] val = vals == null ? null : vals.get(i);
+                    if (val != null && Long.valueOf(1).equals(this.redisExecutor.hdel(slotKey, batch[i]))) { // taken by this caller.
+                        entries.add(this.entryCodecer.decode(val));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("get entries from slot " + this.getId() + " error:" + e.getMessage(), e);
+        }
+        return entries;
+    }
+
     @Override
     public String toString() {
-        return "RedisSlot [allEntriesKey=" + allEntriesKey + ", slotKey="
-                + slotKey + ", cycle=" + cycle + ", id=" + id + "]";
+        return "RedisSlot [slotKey=" + slotKey + ", level=" + level + ", cycle=" + cycle + ", id=" + id + "]";
     }
 
 }
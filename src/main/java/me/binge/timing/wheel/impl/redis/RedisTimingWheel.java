@@ -2,26 +2,73 @@ package me.binge.timing.wheel.impl.redis;
 
 import static me.binge.timing.wheel.utils.RedisConstant.currIdxKey;
 import static me.binge.timing.wheel.utils.RedisConstant.currCycleKey;
+import static me.binge.timing.wheel.utils.RedisConstant.entriesSlotKey;
+import static me.binge.timing.wheel.utils.RedisConstant.slotId;
+import static me.binge.timing.wheel.utils.RedisConstant.slotKeyPrefix;
+import static me.binge.timing.wheel.utils.RedisConstant.slotsKey;
+import static me.binge.timing.wheel.utils.RedisConstant.tickChannel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import me.binge.redis.exec.RedisExecutor;
+import me.binge.redis.exec.impl.ClusterJedisExecutor;
+import me.binge.redis.exec.impl.ShardedJedisExecutor;
+import me.binge.redis.utils.RedisCmdPair;
 import me.binge.timing.wheel.Indicator;
 import me.binge.timing.wheel.Slot;
 import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.entry.BinaryEntryCodecer;
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
+import me.binge.timing.wheel.entry.JacksonEntryCodecer;
+import me.binge.timing.wheel.entry.Utf8EntryCodecer;
 import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.tick.FencedTickCondition;
+import me.binge.timing.wheel.tick.FencingException;
 import me.binge.timing.wheel.tick.TickCondition;
+import redis.clients.jedis.JedisPubSub;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * The wheel kept in Redis, shared by every node using the same key prefix.<br>
+ * Every slot holding entries is indexed by the tick it comes up at, so the slots left behind the tick, by
+ * a downtime or by adds placed on a stale tick on any node, are found with one ZRANGEBYSCORE. A recovery thread drains them on {@link #start()} and then every revolution of the wheel,
+ * several slots in parallel, while the tick thread goes on ticking, see {@link #setRecovery(int, long, TimeUnit)}.
+ * <br>
+ * The slot index is written in a transaction with the slot, so it is only kept on an executor running
+ * transactions: not on a {@link ShardedJedisExecutor} nor a {@link ClusterJedisExecutor}, where the wheel
+ * sends plain commands and no slot is recovered, see {@link #setPlainCommands(boolean)}.<br>
+ * Under a {@link FencedTickCondition} the tick state carries the fencing token it was written under, and is
+ * only written by a script while that token is not greater than ours, so not with plain commands.
+ */
 public class RedisTimingWheel<E extends Entry> extends TimingWheel<E> {
 
     private final static Log log = LogFactory.getLog(RedisTimingWheel.class);
 
+    /**
+     * the overdue slots read from the slot index at a time.
+     */
+    private static final int RECOVERY_PAGE = 256;
+
     private RedisExecutor<?> redisExecutor;
     private RedisIndicator<E> indicator;
 
@@ -31,14 +78,485 @@ public class RedisTimingWheel<E extends Entry> extends TimingWheel<E> {
     private volatile long currentCycle = 0;
     private volatile long cycleTime = 0;
 
+    private volatile boolean scripted = false;
+    private volatile boolean plainCommands;
+    private final boolean fenced;
+    private volatile EntryCodecer<E, byte[]> entryCodecer = new Utf8EntryCodecer<E>(new JacksonEntryCodecer<E>());
+
+    private volatile long tickStateStaleness = -1;
+    private volatile long cachedTick = -1;
+    private volatile long cachedAt = 0;
+    private TickStateSubscriber tickStateSubscriber;
+
+    private volatile int recoveryThreads = 4;
+    private volatile long recoveryInterval = -1;
+    private SlotRecovery slotRecovery;
+
     @SafeVarargs
     public RedisTimingWheel(int tickDuration, int ticksPerWheel,
             TimeUnit timeUnit, String wheelName, RedisExecutor<?> redisExecutor, TickCondition notifyExpireCondition, Expiration<E>... expirations) {
         super(tickDuration, ticksPerWheel, timeUnit, wheelName, notifyExpireCondition, expirations);
         this.redisExecutor = redisExecutor;
         this.indicator = new RedisIndicator<E>(redisExecutor, this.wheel);
+        this.plainCommands = !RedisSlot.singleNode(redisExecutor);
+        this.fenced = notifyExpireCondition instanceof FencedTickCondition;
+        if (fenced && plainCommands) {
+            throw new IllegalArgumentException(redisExecutor.getClass().getName() + " runs no script to fence the tick state with");
+        }
+    }
+
+    /**
+     * Talk to redis with plain commands only, no transaction nor script: a slot is written with a plain
+     * HSET, out of the slot index, and drained with HKEYS, HMGET and HDEL, see {@link RedisSlot#drain(int)},
+     * and the slots left behind the tick are not recovered. On by default, and for good, for a
+     * {@link ShardedJedisExecutor} or a {@link ClusterJedisExecutor}: they run no transaction, the sharded
+     * one no script, and the keys of one would be on several nodes. Turn it on too behind a proxy without
+     * MULTI or EVAL, or for a server before 3.2, which cannot run the drain script. Refused under a
+     * {@link FencedTickCondition}, the tick state is fenced by a script.<br>
+     * Must be called before {@link #start()}.
+     */
+    public void setPlainCommands(boolean plainCommands) {
+        if (running()) {
+            throw new IllegalStateException("the plain commands must be set before start");
+        }
+        if (!plainCommands && !RedisSlot.singleNode(redisExecutor)) {
+            throw new IllegalArgumentException(redisExecutor.getClass().getName() + " runs no transaction");
+        }
+        if (plainCommands && scripted) {
+            throw new IllegalStateException("no plain commands when scripted");
+        }
+        if (plainCommands && fenced) {
+            throw new IllegalStateException("no plain commands under a fenced tick condition");
+        }
+        this.plainCommands = plainCommands;
+    }
+
+    public boolean isPlainCommands() {
+        return plainCommands;
+    }
+
+
+    /**
+     * Move and remove entries with one Lua script call each, instead of reading the indicator and then
+     * writing the old slot, the new slot and the indicator one command at a time. The script keeps the
+     * slot and the indicator consistent for the other nodes too.<br>
+     * Needs a Redis with scripting, and all the wheel keys on one node: refused with plain commands, see
+     * {@link #setPlainCommands(boolean)}.
+     */
+    public void setScripted(boolean scripted) {
+        if (scripted && plainCommands) {
+            throw new IllegalStateException("no script with plain commands");
+        }
+        this.scripted = scripted;
+    }
+
+    public boolean isScripted() {
+        return scripted;
+    }
+
+    /**
+     * How entries are stored in the slots, shared by all of them. {@link JacksonEntryCodecer} JSON by
+     * default, a {@link BinaryEntryCodecer} is a lot smaller and cheaper. Every node of the wheel must use
+     * the same one, and it must be set before {@link #start()} and the first add.
+     */
+    public void setEntryCodecer(EntryCodecer<E, byte[]> entryCodecer) {
+        if (running()) {
+            throw new IllegalStateException("the entry codecer must be set before start");
+        }
+        this.entryCodecer = entryCodecer;
+    }
+
+    public EntryCodecer<E, byte[]> getEntryCodecer() {
+        return entryCodecer;
+    }
+
+    /**
+     * Keep the current tick in memory instead of reading the tick state from redis on every add. The tick
+     * leader publishes the new tick on every tick and every node keeps the latest one it heard of. A copy
+     * older than <tt>maxStaleness</tt>, e.g. while the subscription reconnects, is read again from redis.
+     * <br>
+     * Set it before {@link #start()}, to a few tick durations: an add may be placed late by that much.
+     */
+    public void setTickStateCache(long maxStaleness, TimeUnit unit) {
+        if (running()) {
+            throw new IllegalStateException("the tick state cache must be set before start");
+        }
+        this.tickStateStaleness = unit.toNanos(maxStaleness);
+    }
+
+    /**
+     * How the slots left behind the tick are recovered: drained by <tt>threads</tt> threads, 4 by default,
+     * on {@link #start()} and then every <tt>interval</tt>, one revolution of the wheel by default. 0
+     * threads to never recover them on a thread of this wheel, {@link #recover()} may still be called.
+     * Must be called before {@link #start()}.
+     */
+    public void setRecovery(int threads, long interval, TimeUnit unit) {
+        if (running()) {
+            throw new IllegalStateException("the recovery must be set before start");
+        }
+        if (threads < 0 || interval <= 0) {
+            throw new IllegalArgumentException("threads: " + threads + ", interval: " + interval);
+        }
+        this.recoveryThreads = threads;
+        this.recoveryInterval = unit.toNanos(interval);
+    }
+
+    @Override
+    public void start() {
+        if (tickStateStaleness >= 0 && tickStateSubscriber == null) {
+            tickStateSubscriber = new TickStateSubscriber();
+            tickStateSubscriber.start();
+        }
+        super.start();
+        synchronized (this) {
+            if (recoveryThreads > 0 && !plainCommands && slotRecovery == null) { // nothing indexed to recover.
+                slotRecovery = new SlotRecovery(recoveryThreads, recoveryInterval > 0 ? recoveryInterval : tickDurationNanos * ticksPerWheel);
+                slotRecovery.start();
+            }
+        }
+    }
+
+    @Override
+    public boolean stop() {
+        if (!super.stop()) {
+            return false;
+        }
+        if (tickStateSubscriber != null) {
+            tickStateSubscriber.close();
+        }
+        synchronized (this) {
+            if (slotRecovery != null) {
+                slotRecovery.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drain every slot the slot index holds behind the current tick, on the recovery threads, and wait for
+     * it: their entries due are dispatched to expire, the others, in an overflow slot, are moved to their
+     * slot. Run on {@link #start()} and every recovery interval, see {@link #setRecovery(int, long, TimeUnit)}.
+     * Safe on every node at once, a slot is drained atomically batch by batch.
+     *
+     * @return the entries drained.
+     */
+    public long recover() throws InterruptedException {
+        SlotRecovery recovery;
+        synchronized (this) {
+            recovery = slotRecovery;
+        }
+        if (recovery == null) {
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            try {
+                return recover(pool);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return recover(recovery.pool);
+    }
+
+    private long recover(ExecutorService pool) throws InterruptedException {
+        final long currentTick = getCurrentTick();
+        Set<String> tried = new HashSet<String>();
+        long drained = 0;
+        for (;;) {
+            Set<String> overdue = redisExecutor.zrangeByScore(slotsKey(), "-inf", "(" + currentTick, 0, RECOVERY_PAGE);
+            List<Future<Integer>> drains = new ArrayList<Future<Integer>>();
+            for (final String slotId : overdue == null ? Collections.<String> emptySet() : overdue) {
+                if (!tried.add(slotId)) { // still indexed after its drain, left for the next recovery.
+                    continue;
+                }
+                drains.add(pool.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws Exception {
+                        RedisSlot<E> slot = (RedisSlot<E>) indicator.slot(slotId);
+                        long late = Math.max(0, currentTick - slot.getDueTick()) * tickDurationNanos;
+                        int n = expireSlot(slot, currentTick, System.nanoTime() - late);
+                        wheel.level(slot.getLevel()).clear(slot.getCycle(), slot.getId());
+                        return n;
+                    }
+                }));
+            }
+            if (drains.isEmpty()) {
+                return drained;
+            }
+            for (Future<Integer> drain : drains) {
+                try {
+                    drained += drain.get();
+                } catch (ExecutionException e) {
+                    log.error("recover slot error: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected long getCurrentTick() {
+        if (tickStateStaleness < 0) {
+            return super.getCurrentTick();
+        }
+        long tick = this.cachedTick;
+        if (tick >= 0 && System.nanoTime() - cachedAt <= tickStateStaleness) {
+            return tick;
+        }
+        tick = super.getCurrentTick();
+        cacheTick(tick);
+        return tick;
+    }
+
+    private void cacheTick(long tick) {
+        this.cachedTick = tick;
+        this.cachedAt = System.nanoTime();
+    }
+
+    /**
+     * write the tick state, and when the tick state is cached and <tt>publish</tt>, publish the new tick in the
+     * same transaction, or right after it with plain commands. Under a fencing token, both go in one
+     * {@link RedisScript#FENCED_WRITE} instead.
+     *
+     * @throws FencingException if the tick state was written under a greater token, or this node lost the tick.
+     */
+    private void writeTickState(String key, Map<String, String> state, long cycle, int idx, boolean publish) throws Exception {
+        publish &= tickStateStaleness >= 0;
+        long token = fencingToken();
+        if (token >= 0) {
+            List<String> args = new ArrayList<String>(3 + 2 * (state.size() + 1));
+            args.add(String.valueOf(token));
+            args.add(publish ? tickChannel() : "");
+            args.add(cycle + "_" + idx);
+            state.put("token", String.valueOf(token));
+            for (Map.Entry<String, String> field : state.entrySet()) {
+                args.add(field.getKey());
+                args.add(field.getValue());
+            }
+            String fencedBy = RedisScript.FENCED_WRITE.eval(redisExecutor, Collections.singletonList(key), args);
+            if (fencedBy != null) {
+                throw new FencingException(key, token, Long.parseLong(fencedBy));
+            }
+            if (publish) {
+                cacheTick(cycle * ticksPerWheel + idx);
+            }
+            return;
+        }
+        if (!publish) {
+            redisExecutor.hmset(key, state);
+            return;
+        }
+        List<RedisCmdPair> cmds = new ArrayList<RedisCmdPair>(2);
+        cmds.add(new RedisCmdPair("hmset", new Object[] {key, state}));
+        cmds.add(new RedisCmdPair("publish", new Object[] {tickChannel(), cycle + "_" + idx}));
+        if (plainCommands) {
+            for (RedisCmdPair cmd : cmds) {
+                redisExecutor.cmd(cmd);
+            }
+        } else {
+            redisExecutor.multi(cmds);
+        }
+        cacheTick(cycle * ticksPerWheel + idx);
+    }
+
+    @Override
+    protected void relocate(E e, Slot<E> slot) {
+        if (!scripted) {
+            super.relocate(e, slot);
+            return;
+        }
+        RedisSlot<E> target = (RedisSlot<E>) slot;
+        List<RedisCmdPair> cmds = new ArrayList<RedisCmdPair>(3);
+        cmds.add(RedisScript.RELOCATE.evalsha(Collections.singletonList(entriesSlotKey()), Arrays.asList(e.getKey(), slotId(slot), slotKeyPrefix())));
+        cmds.add(target.addCmd(e));
+        if (target.isIndexed()) {
+            cmds.add(target.indexCmd());
+        }
+        try {
+            multiScripted(RedisScript.RELOCATE, cmds);
+        } catch (Exception ex) {
+            log.error("add " + e + " to slot " + slotId(slot) + " failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected boolean cancel(E e) {
+        if (!scripted) {
+            return super.cancel(e);
+        }
+        try {
+            return RedisScript.REMOVE.eval(redisExecutor, Arrays.asList(entriesSlotKey()),
+                    Arrays.asList(e.getKey(), slotKeyPrefix())) != null;
+        } catch (Exception ex) {
+            log.error("remove " + e + " failed:" + ex.getMessage(), ex);
+        }
+        return false;
     }
 
+    /**
+     * The whole batch goes in one transaction: one round trip when scripted, otherwise one more to read
+     * where the entries are before taking them out of their old slots. With plain commands, the commands of
+     * the transaction are sent one after the other.
+     */
+    @Override
+    protected void relocateAll(Collection<E> entries, Slot<E> slot, long expireTick) {
+        RedisSlot<E> target = (RedisSlot<E>) slot;
+        Map<String, byte[]> vals = new LinkedHashMap<String, byte[]>();
+        for (E e : entries) {
+            synchronized (e) {
+                e.init(slot.getLevel(), slot.getCycle(), slot.getId(), expireTick);
+                vals.put(e.getKey(), target.encode(e));
+            }
+        }
+        try {
+            if (scripted) {
+                relocateScripted(vals, target);
+            } else {
+                relocateBatched(vals, target);
+            }
+        } catch (Exception ex) {
+            log.error("add " + vals.size() + " entries to slot " + slotId(slot) + " failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    private void relocateScripted(Map<String, byte[]> vals, RedisSlot<E> target) throws Exception {
+        List<String> keys = Collections.singletonList(entriesSlotKey());
+        String slotId = slotId(target);
+        List<RedisCmdPair> cmds = new ArrayList<RedisCmdPair>(vals.size() + 2);
+        for (String key : vals.keySet()) {
+            cmds.add(RedisScript.RELOCATE.evalsha(keys, Arrays.asList(key, slotId, slotKeyPrefix())));
+        }
+        cmds.add(target.addAllCmd(vals));
+        if (target.isIndexed()) {
+            cmds.add(target.indexCmd());
+        }
+        multiScripted(RedisScript.RELOCATE, cmds);
+    }
+
+    /**
+     * run the transaction, and once more after loading the script if the server did not know it. The
+     * scripts are idempotent, so is running the batch again.
+     *
+     * @return the replies of the run that went through.
+     */
+    private List<Object> multiScripted(RedisScript script, List<RedisCmdPair> cmds) throws Exception {
+        List<Object> replies = redisExecutor.multi(cmds);
+        if (noScript(replies)) {
+            script.load(redisExecutor);
+            replies = redisExecutor.multi(cmds);
+        }
+        return replies;
+    }
+
+    /**
+     * One round trip when scripted. Otherwise the bulk hooks: one to find the slots of the entries, one to
+     * unindex them and one per slot they were in.
+     */
+    @Override
+    protected int cancelAll(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        try {
+            if (scripted) {
+                List<String> keys = Collections.singletonList(entriesSlotKey());
+                List<RedisCmdPair> cmds = new ArrayList<RedisCmdPair>(entries.size());
+                for (E e : entries) {
+                    cmds.add(RedisScript.REMOVE.evalsha(keys, Arrays.asList(e.getKey(), slotKeyPrefix())));
+                }
+                int removed = 0;
+                for (Object reply : multiScripted(RedisScript.REMOVE, cmds)) {
+                    if (reply != null && !(reply instanceof Throwable)) {
+                        removed++;
+                    }
+                }
+                return removed;
+            }
+            Map<E, Slot<E>> slots = indicator.getAll(entries);
+            indicator.removeAll(slots.keySet());
+            Map<Slot<E>, List<E>> bySlot = new HashMap<Slot<E>, List<E>>();
+            for (Map.Entry<E, Slot<E>> located : slots.entrySet()) {
+                List<E> inSlot = bySlot.get(located.getValue());
+                if (inSlot == null) {
+                    inSlot = new ArrayList<E>();
+                    bySlot.put(located.getValue(), inSlot);
+                }
+                inSlot.add(located.getKey());
+            }
+            for (Map.Entry<Slot<E>, List<E>> inSlot : bySlot.entrySet()) {
+                inSlot.getKey().removeAll(inSlot.getValue());
+            }
+            return slots.size();
+        } catch (Exception ex) {
+            log.error("remove " + entries.size() + " entries failed:" + ex.getMessage(), ex);
+        }
+        return 0;
+    }
+
+    private void relocateBatched(Map<String, byte[]> vals, RedisSlot<E> target) throws Exception {
+        String[] keys = vals.keySet().toArray(new String[vals.size()]);
+        String slotId = slotId(target);
+        // another node may move an entry between this read and the transaction, which is no worse than add.
+        List<String> olds = redisExecutor.hmget(entriesSlotKey(), keys);
+        Map<String, List<String>> stale = new HashMap<String, List<String>>();
+        for (int i = 0; i < keys.length; i++) {
+            String old = olds == null ? null : olds.get(i);
+            if (old == null || old.equals(slotId)) {
+                continue;
+            }
+            List<String> fields = stale.get(old);
+            if (fields == null) {
+                fields = new ArrayList<String>();
+                stale.put(old, fields);
+            }
+            fields.add(keys[i]);
+        }
+        Map<String, String> index = new HashMap<String, String>();
+        for (String key : keys) {
+            index.put(key, slotId);
+        }
+        List<RedisCmdPair> cmds = new ArrayList<RedisCmdPair>(stale.size() + 3);
+        for (Map.Entry<String, List<String>> old : stale.entrySet()) {
+            cmds.add(new RedisCmdPair("hdel", new Object[] {slotKeyPrefix() + old.getKey(), old.getValue().toArray(new String[old.getValue().size()])}));
+        }
+        cmds.add(target.addAllCmd(vals));
+        if (target.isIndexed()) {
+            cmds.add(target.indexCmd());
+        }
+        cmds.add(new RedisCmdPair("hmset", new Object[] {entriesSlotKey(), index}));
+        if (plainCommands) { // in the order the base relocateAll writes them.
+            for (RedisCmdPair cmd : cmds) {
+                redisExecutor.cmd(cmd);
+            }
+            return;
+        }
+        redisExecutor.multi(cmds);
+    }
+
+    private static boolean noScript(List<Object> replies) {
+        if (replies == null) {
+            return false;
+        }
+        for (Object reply : replies) {
+            if (reply instanceof Throwable && RedisScript.isNoScript((Throwable) reply)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every scheduled entry is indexed in the entries hash, so it is counted in one round trip and includes
+     * the entries added by the other nodes.
+     */
+    @Override
+    public long size() {
+        try {
+            Long size = redisExecutor.hlen(entriesSlotKey());
+            return size == null ? 0 : size;
+        } catch (Exception e) {
+            log.error("count entries error: " + e.getMessage(), e);
+            return -1;
+        }
+    }
 
     @Override
     public Indicator<E> getIndicator() {
@@ -46,8 +564,8 @@ public class RedisTimingWheel<E extends Entry> extends TimingWheel<E> {
     }
 
     @Override
-    public Slot<E> workSlot(long cycle, int id) {
-        return new RedisSlot<E>(cycle, id, redisExecutor);
+    public Slot<E> workSlot(int level, long cycle, int id) {
+        return new RedisSlot<E>(level, cycle, id, redisExecutor, entryCodecer, plainCommands ? -1 : dueTick(level, cycle, id), !plainCommands);
     }
 
     @Override
@@ -81,7 +599,10 @@ public class RedisTimingWheel<E extends Entry> extends TimingWheel<E> {
             Map<String, String> currIdxInfo = new HashMap<String, String>();
             currIdxInfo.put("idx", currentTickIndex + "");
             currIdxInfo.put("tickTime", now + "");
-            redisExecutor.hmset(currIdxKey(), currIdxInfo);
+            // published with the new cycle at 0.
+            writeTickState(currIdxKey(), currIdxInfo, this.currentCycle, currentTickIndex, currentTickIndex != 0);
+        } catch (FencingException e) {
+            throw e;
         } catch (Exception e) {
             log.error("set current tick idx error: " + e.getMessage(), e);
         }
@@ -120,7 +641,9 @@ public class RedisTimingWheel<E extends Entry> extends TimingWheel<E> {
             Map<String, String> currCycleInfo = new HashMap<String, String>();
             currCycleInfo.put("cycle", (this.currentCycle + 1) + "");
             currCycleInfo.put("cycleTime", now + "");
-            this.redisExecutor.hmset(currCycleKey(), currCycleInfo);
+            writeTickState(currCycleKey(), currCycleInfo, this.currentCycle + 1, 0, true);
+        } catch (FencingException e) {
+            throw e;
         } catch (Exception e) {
             log.error("incr current cycle error: " + e.getMessage(), e);
         }
@@ -128,4 +651,117 @@ public class RedisTimingWheel<E extends Entry> extends TimingWheel<E> {
         this.currentCycle ++;
     }
 
+    /**
+     * Runs {@link #recover()} on start and then every interval, the slots of a page drained by a pool.
+     */
+    private class SlotRecovery implements Runnable {
+
+        private final Thread thread = new Thread(this, getName() + "-recovery");
+        private final ExecutorService pool;
+        private final long interval;
+
+        SlotRecovery(int threads, long interval) {
+            this.interval = interval;
+            final AtomicInteger seq = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, getName() + "-recovery-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    long start = System.nanoTime();
+                    long drained = recover(pool);
+                    if (drained > 0) {
+                        log.info(getName() + " recovered " + drained + " entries of the slots behind the tick in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                    }
+                    TimeUnit.NANOSECONDS.sleep(interval);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    log.error(getName() + " recovery error: " + e.getMessage(), e);
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(interval);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        void close() {
+            thread.interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Listens to the ticks published by the tick leader, resubscribing whenever the connection drops.
+     */
+    private class TickStateSubscriber extends JedisPubSub implements Runnable {
+
+        private final Thread thread = new Thread(this, getName() + "-tick-state-subscriber");
+        private volatile boolean closed = false;
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    redisExecutor.cmd(new RedisCmdPair("subscribe", new Object[] {this, new String[] {tickChannel()}}));
+                } catch (Exception e) {
+                    if (closed) {
+                        return;
+                    }
+                    log.warn("tick state subscription lost, retry in a second: " + e.getMessage());
+                }
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            int i = message.indexOf('_');
+            try {
+                cacheTick(Long.parseLong(message.substring(0, i)) * ticksPerWheel + Integer.parseInt(message.substring(i + 1)));
+            } catch (RuntimeException e) {
+                log.warn("bad tick state message: " + message);
+            }
+        }
+
+        void close() {
+            closed = true;
+            try {
+                if (isSubscribed()) {
+                    unsubscribe();
+                }
+            } catch (Exception e) {
+                log.warn("unsubscribe tick state error: " + e.getMessage());
+            }
+            thread.interrupt();
+        }
+    }
+
 }
@@ -1,34 +1,145 @@
 package me.binge.timing.wheel.impl.zookeeper;
 
-import org.I0Itec.zkclient.ZkClient;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.nodeName;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.slotId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.zookeeper.Op;
 
 import me.binge.timing.wheel.Indicator;
 import me.binge.timing.wheel.Slot;
 import me.binge.timing.wheel.Wheel;
 import me.binge.timing.wheel.entry.Entry;
 
+/**
+ * One znode per scheduled entry, named after its key and holding the id of its slot.
+ */
 public class ZookeeperIndicator<E extends Entry> implements Indicator<E> {
 
-    private ZkClient zkClient;
-    private Wheel<E> wheel;
+    private final String entriesPath;
+    private final ZookeeperStore store;
+    private final Wheel<E> wheel;
 
-    public ZookeeperIndicator(ZkClient zkClient, Wheel<E> wheel) {
-        this.zkClient = zkClient;
+    public ZookeeperIndicator(String entriesPath, ZookeeperStore store, Wheel<E> wheel) {
+        this.entriesPath = entriesPath;
+        this.store = store;
         this.wheel = wheel;
     }
 
+    public String getEntriesPath() {
+        return entriesPath;
+    }
+
+    String path(E e) {
+        return entriesPath + "/" + nodeName(e.getKey());
+    }
+
     @Override
     public void put(E e, Slot<E> slot) {
+        store.write(path(e), slotId(slot).getBytes(StandardCharsets.UTF_8));
     }
 
     @Override
     public Slot<E> get(E e) {
-        return null;
+        return slot(store.read(path(e)));
+    }
+
+    private Slot<E> slot(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        String ssid = new String(data, StandardCharsets.UTF_8);
+        if (StringUtils.isBlank(ssid)) {
+            return null;
+        }
+        String[] parts = ssid.split("_");
+        if (parts.length == 3) { // level_cycle_id, only written for overflow wheels.
+            return wheel.level(Integer.valueOf(parts[0])).find(Long.valueOf(parts[1]), Integer.valueOf(parts[2]));
+        }
+        return wheel.find(Long.valueOf(parts[0]), Integer.valueOf(parts[1]));
     }
 
     @Override
     public void remove(E e) {
+        store.delete(path(e));
+    }
+
+    /**
+     * the creates and sets indexing the entries in the slot, for batching into a transaction. Whether the
+     * entries are indexed already is read first, pipelined.
+     */
+    public List<Op> putOps(Collection<E> entries, Slot<E> slot) {
+        List<String> paths = paths(entries);
+        boolean[] exist = store.existAll(paths);
+        byte[] ssid = slotId(slot).getBytes(StandardCharsets.UTF_8);
+        List<Op> ops = new ArrayList<Op>(paths.size());
+        for (int i = 0; i < exist.length; i++) {
+            ops.add(exist[i] ? Op.setData(paths.get(i), ssid, -1) : ZookeeperStore.createOp(paths.get(i), ssid));
+        }
+        return ops;
+    }
+
+    /**
+     * one transaction, or entry by entry if another node indexed or unindexed some of them meanwhile.
+     */
+    @Override
+    public void putAll(Collection<E> entries, Slot<E> slot) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            store.multi(putOps(entries, slot));
+        } catch (Exception ex) {
+            for (E e : entries) {
+                put(e, slot);
+            }
+        }
+    }
+
+    /**
+     * pipelined reads.
+     */
+    @Override
+    public Map<E, Slot<E>> getAll(Collection<E> entries) {
+        Map<E, Slot<E>> slots = new HashMap<E, Slot<E>>();
+        if (entries.isEmpty()) {
+            return slots;
+        }
+        List<E> ordered = new ArrayList<E>(entries);
+        List<byte[]> datas = store.readAll(paths(ordered));
+        for (int i = 0; i < datas.size(); i++) {
+            Slot<E> slot = slot(datas.get(i));
+            if (slot != null) {
+                slots.put(ordered.get(i), slot);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * pipelined deletes.
+     */
+    @Override
+    public void removeAll(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        store.deleteAll(paths(entries));
+    }
 
+    List<String> paths(Collection<E> entries) {
+        List<String> paths = new ArrayList<String>(entries.size());
+        for (E e : entries) {
+            paths.add(path(e));
+        }
+        return paths;
     }
 
 }
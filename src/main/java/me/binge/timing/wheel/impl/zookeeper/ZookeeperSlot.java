@@ -1,34 +1,309 @@
 package me.binge.timing.wheel.impl.zookeeper;
 
+import static me.binge.timing.wheel.utils.ZookeeperConstant.BUCKET_NODE_PREFIX;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.slotId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
-import org.I0Itec.zkclient.ZkClient;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 
 import me.binge.timing.wheel.Slot;
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
 
+/**
+ * A slot is a znode, its entries are stored in persistent sequential bucket znodes under it, one per add or
+ * per {@link #BUCKET_BYTES} of a batch added at once. Buckets are never rewritten: an entry removed or moved
+ * elsewhere stays in its bucket and is told apart at expiry by the indicator, which points to its latest
+ * slot. Expiring the slot reads the children once, the buckets pipelined, and deletes them all in one
+ * transaction.
+ */
 public class ZookeeperSlot<E extends Entry> extends Slot<E> {
 
-    private ZkClient zkClient;
+    private final static Log log = LogFactory.getLog(ZookeeperSlot.class);
+
+    /**
+     * the encoded entries a bucket holds at most, well below the 1MB a znode and a transaction may take.
+     */
+    static final int BUCKET_BYTES = 256 * 1024;
+
+    /**
+     * how many buckets are read at a time while draining.
+     */
+    private static final int BUCKETS_PER_READ = 16;
+
+    /**
+     * how many deletes go in one transaction.
+     */
+    private static final int DELETES_PER_MULTI = 1000;
+
+    private final String slotPath;
+    private final ZookeeperStore store;
+    private final EntryCodecer<E, byte[]> entryCodecer;
+
+    private volatile boolean created = false;
+
+    protected ZookeeperSlot(int level, long cycle, int id, String slotsPath, ZookeeperStore store, EntryCodecer<E, byte[]> entryCodecer) {
+        super(level, cycle, id);
+        this.slotPath = slotsPath + "/" + slotId(this);
+        this.store = store;
+        this.entryCodecer = entryCodecer;
+    }
+
+    public String getSlotPath() {
+        return slotPath;
+    }
 
-    protected ZookeeperSlot(long cycle, int id, ZkClient zkClient) {
-        super(cycle, id);
-        this.zkClient = zkClient;
+    /**
+     * the creates of the buckets storing the entries in this slot, for batching into a transaction. The slot
+     * znode is created first if needed.
+     */
+    public List<Op> addOps(Collection<E> entries) {
+        ensureCreated();
+        List<Op> ops = new ArrayList<Op>();
+        for (byte[] bucket : buckets(entries)) {
+            ops.add(ZookeeperStore.createSequentialOp(slotPath + "/" + BUCKET_NODE_PREFIX, bucket));
+        }
+        return ops;
+    }
+
+    private void ensureCreated() {
+        if (!created) {
+            store.createPersistent(slotPath);
+            created = true;
+        }
+    }
+
+    /**
+     * the entries encoded into buckets of at most {@link #BUCKET_BYTES}, as a count followed by each entry
+     * length prefixed.
+     */
+    List<byte[]> buckets(Collection<E> entries) {
+        List<byte[]> buckets = new ArrayList<byte[]>();
+        List<byte[]> vals = new ArrayList<byte[]>();
+        int size = 0;
+        for (E e : entries) {
+            byte[] val = entryCodecer.encode(e);
+            if (!vals.isEmpty() && size + val.length > BUCKET_BYTES) {
+                buckets.add(bucket(vals));
+                vals.clear();
+                size = 0;
+            }
+            vals.add(val);
+            size += val.length + 4;
+        }
+        if (!vals.isEmpty()) {
+            buckets.add(bucket(vals));
+        }
+        return buckets;
+    }
+
+    private static byte[] bucket(List<byte[]> vals) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(vals.size());
+            for (byte[] val : vals) {
+                out.writeInt(val.length);
+                out.write(val);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<E> entries(byte[] bucket) {
+        List<E> entries = new ArrayList<E>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bucket));
+        try {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] val = new byte[in.readInt()];
+                in.readFully(val);
+                entries.add(entryCodecer.decode(val));
+            }
+        } catch (IOException e) {
+            log.error("corrupt bucket in slot " + slotPath + ": " + e.getMessage(), e);
+        }
+        return entries;
     }
 
     @Override
     public void add(E e) {
+        addAll(Collections.singletonList(e));
+    }
 
+    /**
+     * one transaction creating the buckets, see {@link #write(Collection)}.
+     */
+    @Override
+    public void addAll(Collection<E> entries) {
+        write(entries);
+    }
+
+    /**
+     * One transaction creating the buckets. If the slot znode is gone although this slot created it, e.g.
+     * drained and deleted by another node, it is created again and the transaction run once more.
+     *
+     * @return whether the buckets were written, the entries must only be indexed if so.
+     */
+    public boolean write(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        try {
+            try {
+                store.multi(addOps(entries));
+            } catch (KeeperException.NoNodeException ex) {
+                created = false;
+                store.multi(addOps(entries));
+            }
+            return true;
+        } catch (Exception ex) {
+            log.error("add " + entries.size() + " entries to slot " + slotPath + " failed:" + ex.getMessage(), ex);
+            return false;
+        }
     }
 
+    /**
+     * Nothing to do, the buckets are not rewritten: once the entry is unindexed or indexed in another slot
+     * the copy left here is skipped at expiry.
+     */
     @Override
     public E remove(E e) {
-        return null;
+        return e;
+    }
+
+    @Override
+    public void removeAll(Collection<E> entries) {
     }
 
+    /**
+     * Every entry, taken out of the slot. Prefer {@link #drain(int)} for slots that may be big.
+     */
     @Override
     public Set<E> elements() {
-        return null;
+        Set<E> entries = new HashSet<E>();
+        Iterator<List<E>> batches = drain(Integer.MAX_VALUE);
+        while (batches.hasNext()) {
+            entries.addAll(batches.next());
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the buckets, newest first so the latest copy of an entry added more than once wins, a few at a
+     * time until a batch is filled. Once all are read they are deleted in one transaction per
+     * {@link #DELETES_PER_MULTI} buckets, then the slot znode.
+     */
+    @Override
+    public Iterator<List<E>> drain(final int batchSize) {
+        final List<String> buckets = new ArrayList<String>(store.children(slotPath));
+        Collections.sort(buckets, Collections.reverseOrder());
+        final Set<String> seen = new HashSet<String>();
+        return new Iterator<List<E>>() {
+
+            private int read;
+            private List<E> next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    next = fetch();
+                    done = next.isEmpty();
+                    if (done) {
+                        delete(buckets);
+                    }
+                }
+                return !done;
+            }
+
+            private List<E> fetch() {
+                List<E> batch = new ArrayList<E>();
+                while (batch.size() < batchSize && read < buckets.size()) {
+                    List<String> paths = new ArrayList<String>(BUCKETS_PER_READ);
+                    for (int i = read; i < buckets.size() && paths.size() < BUCKETS_PER_READ; i++) {
+                        paths.add(slotPath + "/" + buckets.get(i));
+                    }
+                    read += paths.size();
+                    for (byte[] bucket : store.readAll(paths)) {
+                        if (bucket == null) {
+                            continue;
+                        }
+                        for (E e : entries(bucket)) {
+                            if (seen.add(e.getKey())) {
+                                batch.add(e);
+                            }
+                        }
+                    }
+                }
+                return batch;
+            }
+
+            @Override
+            public List<E> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<E> batch = next;
+                next = null;
+                return batch;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void delete(List<String> buckets) {
+        List<Op> ops = new ArrayList<Op>(buckets.size() + 1);
+        for (String bucket : buckets) {
+            ops.add(Op.delete(slotPath + "/" + bucket, -1));
+        }
+        for (int i = 0; i < ops.size(); i += DELETES_PER_MULTI) {
+            List<Op> chunk = ops.subList(i, Math.min(ops.size(), i + DELETES_PER_MULTI));
+            try {
+                store.multi(chunk);
+            } catch (KeeperException e) { // a bucket gone already, e.g. the slot drained by another node.
+                List<String> paths = new ArrayList<String>(chunk.size());
+                for (Op op : chunk) {
+                    paths.add(op.getPath());
+                }
+                store.deleteAll(paths);
+            } catch (Exception e) {
+                log.error("delete buckets of slot " + slotPath + " failed:" + e.getMessage(), e);
+            }
+        }
+        created = false; // before the delete, so an add racing with it creates the znode again.
+        try {
+            store.delete(slotPath);
+        } catch (Exception e) { // not empty: something added meanwhile, left for the next drain.
+            log.warn("delete slot " + slotPath + " failed:" + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ZookeeperSlot [slotPath=" + slotPath + ", level=" + level + ", cycle=" + cycle + ", id=" + id + "]";
     }
 
 }
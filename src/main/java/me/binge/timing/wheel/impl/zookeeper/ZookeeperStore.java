@@ -0,0 +1,400 @@
+package me.binge.timing.wheel.impl.zookeeper;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.ZkConnection;
+import org.I0Itec.zkclient.exception.ZkException;
+import org.I0Itec.zkclient.exception.ZkInterruptedException;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * The raw ZooKeeper calls of the zookeeper backend: byte[] data bypassing the serializer of the {@link ZkClient},
+ * {@link ZooKeeper#multi(Iterable)} transactions, and reads and deletes of many nodes pipelined through the async
+ * API so they cost about one round trip. The synchronous calls retry through
+ * {@link ZkClient#retryUntilConnected(Callable)} like the client itself does.
+ */
+public class ZookeeperStore {
+
+    /**
+     * the version expected of a node that does not exist yet, see {@link #write(String, byte[], int)}.
+     */
+    public static final int ABSENT = -1;
+
+    private final ZkClient zkClient;
+    private final ZkConnection zkConnection;
+
+    /**
+     * @param zkClient a client over a {@link ZkConnection}, as built from a connect string.
+     */
+    public ZookeeperStore(ZkClient zkClient) {
+        this.zkClient = zkClient;
+        this.zkConnection = connection(zkClient);
+    }
+
+    /**
+     * ZkClient 0.4 has neither transactions nor async calls and keeps its connection to itself.
+     */
+    private static ZkConnection connection(ZkClient zkClient) {
+        try {
+            Field field = ZkClient.class.getDeclaredField("_connection");
+            field.setAccessible(true);
+            Object connection = field.get(zkClient);
+            if (connection instanceof ZkConnection) {
+                return (ZkConnection) connection;
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("cannot reach the connection of the zk client", e);
+        }
+        throw new IllegalArgumentException("the zk client must run over a ZkConnection");
+    }
+
+    public ZkClient getZkClient() {
+        return zkClient;
+    }
+
+    private ZooKeeper zookeeper() {
+        return zkConnection.getZookeeper();
+    }
+
+    public void createPersistent(String path) {
+        zkClient.createPersistent(path, true);
+    }
+
+    /**
+     * @return the data of the node, null if there is none.
+     */
+    public byte[] read(final String path) {
+        return zkClient.retryUntilConnected(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws Exception {
+                try {
+                    return zookeeper().getData(path, false, null);
+                } catch (KeeperException.NoNodeException e) {
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the data of the node, creating it if there is none.
+     */
+    public void write(final String path, final byte[] data) {
+        zkClient.retryUntilConnected(new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                for (;;) {
+                    try {
+                        zookeeper().setData(path, data, -1);
+                        return null;
+                    } catch (KeeperException.NoNodeException e) {
+                        // created below, unless someone else does it first.
+                    }
+                    try {
+                        zookeeper().create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                        return null;
+                    } catch (KeeperException.NodeExistsException e) {
+                        // set above.
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the data of the node with its stat filled in, null if there is none.
+     */
+    public byte[] read(final String path, final Stat stat) {
+        return zkClient.retryUntilConnected(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws Exception {
+                try {
+                    return zookeeper().getData(path, false, stat);
+                } catch (KeeperException.NoNodeException e) {
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the data of the node if it is still at the version, or create it if the version is {@link #ABSENT}.
+     *
+     * @return the new version, -1 if the node was changed, created or deleted meanwhile.
+     */
+    public int write(final String path, final byte[] data, final int version) {
+        return zkClient.retryUntilConnected(new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    if (version == ABSENT) {
+                        zookeeper().create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                        return 0;
+                    }
+                    return zookeeper().setData(path, data, version).getVersion();
+                } catch (KeeperException.NodeExistsException e) {
+                    return -1;
+                } catch (KeeperException.BadVersionException e) {
+                    return -1;
+                } catch (KeeperException.NoNodeException e) {
+                    return -1;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the path of the node created with the sequence number appended to the prefix, gone with the session.
+     */
+    public String createEphemeralSequential(final String prefix, final byte[] data) {
+        return zkClient.retryUntilConnected(new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return zookeeper().create(prefix, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+            }
+        });
+    }
+
+    /**
+     * @param watcher told once about the next change of the node, may be null.
+     * @return the stat of the node, null if there is none.
+     */
+    public Stat stat(final String path, final Watcher watcher) {
+        return zkClient.retryUntilConnected(new Callable<Stat>() {
+
+            @Override
+            public Stat call() throws Exception {
+                return zookeeper().exists(path, watcher);
+            }
+        });
+    }
+
+    /**
+     * Delete the node only if it is still at the version.
+     *
+     * @return <tt>true</tt> if it was deleted.
+     */
+    public boolean delete(final String path, final int version) {
+        return zkClient.retryUntilConnected(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    zookeeper().delete(path, version);
+                    return true;
+                } catch (KeeperException.NoNodeException e) {
+                    return false;
+                } catch (KeeperException.BadVersionException e) {
+                    return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return <tt>true</tt> if the node was there.
+     */
+    public boolean delete(final String path) {
+        return zkClient.retryUntilConnected(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    zookeeper().delete(path, -1);
+                    return true;
+                } catch (KeeperException.NoNodeException e) {
+                    return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the children names of the node, empty if there is no such node.
+     */
+    public List<String> children(final String path) {
+        return zkClient.retryUntilConnected(new Callable<List<String>>() {
+
+            @Override
+            public List<String> call() throws Exception {
+                try {
+                    return zookeeper().getChildren(path, false);
+                } catch (KeeperException.NoNodeException e) {
+                    return Collections.emptyList();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return how many children the node has, 0 if there is no such node.
+     */
+    public int count(final String path) {
+        return zkClient.retryUntilConnected(new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                Stat stat = zookeeper().exists(path, false);
+                return stat == null ? 0 : stat.getNumChildren();
+            }
+        });
+    }
+
+    /**
+     * One transaction, all or nothing.
+     *
+     * @throws KeeperException of the first failing op, {@link KeeperException#getResults()} tells which.
+     */
+    public List<OpResult> multi(final List<Op> ops) throws KeeperException {
+        if (ops.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            return zkClient.retryUntilConnected(new Callable<List<OpResult>>() {
+
+                @Override
+                public List<OpResult> call() throws Exception {
+                    return zookeeper().multi(ops);
+                }
+            });
+        } catch (ZkException e) {
+            if (e.getCause() instanceof KeeperException) {
+                throw (KeeperException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public static Op createOp(String path, byte[] data) {
+        return Op.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    public static Op createSequentialOp(String path, byte[] data) {
+        return Op.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
+    }
+
+    /**
+     * The data of every node, pipelined. A node answering anything but data or no node is read again.
+     *
+     * @return the data by the index of the path, null for the nodes not there.
+     */
+    public List<byte[]> readAll(List<String> paths) {
+        final byte[][] datas = new byte[paths.size()][];
+        final int[] rcs = new int[paths.size()];
+        final CountDownLatch latch = new CountDownLatch(paths.size());
+        ZooKeeper zookeeper = zookeeper();
+        for (int i = 0; i < paths.size(); i++) {
+            zookeeper.getData(paths.get(i), false, new DataCallback() {
+
+                @Override
+                public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+                    int i = (Integer) ctx;
+                    rcs[i] = rc;
+                    datas[i] = data;
+                    latch.countDown();
+                }
+            }, i);
+        }
+        await(latch);
+        for (int i = 0; i < rcs.length; i++) {
+            if (rcs[i] == Code.NONODE.intValue()) {
+                datas[i] = null;
+            } else if (rcs[i] != Code.OK.intValue()) {
+                datas[i] = read(paths.get(i));
+            }
+        }
+        return Arrays.asList(datas);
+    }
+
+    /**
+     * Whether every node is there, pipelined.
+     */
+    public boolean[] existAll(List<String> paths) {
+        final boolean[] exist = new boolean[paths.size()];
+        final int[] rcs = new int[paths.size()];
+        final CountDownLatch latch = new CountDownLatch(paths.size());
+        ZooKeeper zookeeper = zookeeper();
+        for (int i = 0; i < paths.size(); i++) {
+            zookeeper.exists(paths.get(i), false, new StatCallback() {
+
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    int i = (Integer) ctx;
+                    rcs[i] = rc;
+                    exist[i] = stat != null;
+                    latch.countDown();
+                }
+            }, i);
+        }
+        await(latch);
+        for (int i = 0; i < rcs.length; i++) {
+            if (rcs[i] != Code.OK.intValue() && rcs[i] != Code.NONODE.intValue()) {
+                exist[i] = read(paths.get(i)) != null;
+            }
+        }
+        return exist;
+    }
+
+    /**
+     * Delete every node, pipelined. Unlike a transaction, a node not there does not fail the others.
+     *
+     * @return how many of them were there.
+     */
+    public int deleteAll(List<String> paths) {
+        final int[] rcs = new int[paths.size()];
+        final CountDownLatch latch = new CountDownLatch(paths.size());
+        ZooKeeper zookeeper = zookeeper();
+        for (int i = 0; i < paths.size(); i++) {
+            zookeeper.delete(paths.get(i), -1, new VoidCallback() {
+
+                @Override
+                public void processResult(int rc, String path, Object ctx) {
+                    rcs[(Integer) ctx] = rc;
+                    latch.countDown();
+                }
+            }, i);
+        }
+        await(latch);
+        int deleted = 0;
+        for (int i = 0; i < rcs.length; i++) {
+            if (rcs[i] == Code.OK.intValue()) {
+                deleted++;
+            } else if (rcs[i] != Code.NONODE.intValue() && delete(paths.get(i))) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ZkInterruptedException(e);
+        }
+    }
+
+}
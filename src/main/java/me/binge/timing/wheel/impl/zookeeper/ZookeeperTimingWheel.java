@@ -1,20 +1,78 @@
 package me.binge.timing.wheel.impl.zookeeper;
 
+import static me.binge.timing.wheel.utils.ZookeeperConstant.CURRENT_CYCLE_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.CURRENT_IDX_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.ENTRIES_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.SLOTS_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.slotId;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.wheelPath;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import me.binge.timing.wheel.Indicator;
 import me.binge.timing.wheel.Slot;
 import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.entry.BinaryEntryCodecer;
 import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.entry.EntryCodecer;
+import me.binge.timing.wheel.entry.JacksonEntryCodecer;
+import me.binge.timing.wheel.entry.Utf8EntryCodecer;
 import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.tick.FencedTickCondition;
+import me.binge.timing.wheel.tick.FencingException;
 import me.binge.timing.wheel.tick.TickCondition;
 
 import org.I0Itec.zkclient.ZkClient;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.data.Stat;
 
+/**
+ * A durable timing wheel kept in ZooKeeper under <tt>/timing_wheel/wheels/&lt;name&gt;</tt>, shared by every node
+ * using the same name, see {@link ZookeeperSlot} and {@link ZookeeperIndicator} for the layout.<br>
+ * An add writes its bucket and its index in one transaction, a batch added at once a few buckets per
+ * transaction. Set an expiration batch size so that a chunk of expiring entries is checked against the
+ * indicator and unindexed with pipelined calls rather than a few round trips per entry.<br>
+ * Under a {@link FencedTickCondition} the tick state carries the fencing token it was written under, and is
+ * only written while its version is the one this node wrote last or its token is not greater than ours.
+ */
 public class ZookeeperTimingWheel<E extends Entry> extends TimingWheel<E> {
 
-    private ZkClient zkClient;
-    private Indicator<E> indicator;
+    private final static Log log = LogFactory.getLog(ZookeeperTimingWheel.class);
+
+    /**
+     * how many entries of a batch go in one transaction, with their buckets and index nodes.
+     */
+    private static final int ENTRIES_PER_MULTI = 512;
+
+    private ZookeeperStore store;
+    private ZookeeperIndicator<E> indicator;
+
+    private String slotsPath;
+    private String currIdxPath;
+    private String currCyclePath;
+
+    private volatile int currentTickIndex = 0;
+    private volatile long tickTime = 0;
+
+    private volatile long currentCycle = 0;
+    private volatile long cycleTime = 0;
+
+    private volatile EntryCodecer<E, byte[]> entryCodecer = new Utf8EntryCodecer<E>(new JacksonEntryCodecer<E>());
+
+    /**
+     * the version of the tick state nodes as this node last wrote them under a fencing token, tick thread only.
+     */
+    private final Map<String, Integer> fencedVersions = new HashMap<String, Integer>();
 
     @SafeVarargs
     public ZookeeperTimingWheel(int tickDuration, int ticksPerWheel,
@@ -24,45 +82,256 @@ public class ZookeeperTimingWheel<E extends Entry> extends TimingWheel<E> {
         super(tickDuration, ticksPerWheel, timeUnit, wheelName,
                 tickCondition, expirations);
 
-        this.zkClient = zkClient;
-        this.indicator = new ZookeeperIndicator<E>(zkClient, this.wheel);
+        String wheelPath = wheelPath(getName());
+        this.store = new ZookeeperStore(zkClient);
+        this.slotsPath = wheelPath + "/" + SLOTS_NODE_NAME;
+        this.currIdxPath = wheelPath + "/" + CURRENT_IDX_NODE_NAME;
+        this.currCyclePath = wheelPath + "/" + CURRENT_CYCLE_NODE_NAME;
+        this.indicator = new ZookeeperIndicator<E>(wheelPath + "/" + ENTRIES_NODE_NAME, store, this.wheel);
+        store.createPersistent(slotsPath);
+        store.createPersistent(indicator.getEntriesPath());
     }
 
+    /**
+     * How entries are stored in the buckets. {@link JacksonEntryCodecer} JSON by default, a
+     * {@link BinaryEntryCodecer} is a lot smaller and cheaper. Every node of the wheel must use the same one,
+     * and it must be set before {@link #start()} and the first add.
+     */
+    public void setEntryCodecer(EntryCodecer<E, byte[]> entryCodecer) {
+        if (running()) {
+            throw new IllegalStateException("the entry codecer must be set before start");
+        }
+        this.entryCodecer = entryCodecer;
+    }
+
+    public EntryCodecer<E, byte[]> getEntryCodecer() {
+        return entryCodecer;
+    }
+
+    public ZookeeperStore getStore() {
+        return store;
+    }
 
     @Override
     public Indicator<E> getIndicator() {
         return this.indicator;
     }
 
+    @Override
+    public Slot<E> workSlot(int level, long cycle, int id) {
+        return new ZookeeperSlot<E>(level, cycle, id, slotsPath, store, entryCodecer);
+    }
+
+    /**
+     * One read whether the entry is indexed, one transaction writing its bucket and its index. The copy in
+     * the old slot, if any, is left there for the indicator to skip. If the transaction failed, the entry is
+     * indexed once its bucket is written, never without it.
+     */
+    @Override
+    protected void relocate(E e, Slot<E> slot) {
+        List<E> entries = Collections.singletonList(e);
+        ZookeeperSlot<E> target = (ZookeeperSlot<E>) slot;
+        if (!write(entries, target) && target.write(entries)) {
+            indicator.put(e, slot);
+        }
+    }
 
+    /**
+     * {@link #ENTRIES_PER_MULTI} entries per transaction, each indexed by the same transaction storing it.
+     */
     @Override
-    public Slot<E> workSlot(long cycle, int id) {
-        return new ZookeeperSlot<E>(cycle, id, zkClient);
+    protected void relocateAll(Collection<E> entries, Slot<E> slot, long expireTick) {
+        ZookeeperSlot<E> target = (ZookeeperSlot<E>) slot;
+        List<E> chunk = new ArrayList<E>(Math.min(entries.size(), ENTRIES_PER_MULTI));
+        for (E e : entries) {
+            synchronized (e) {
+                e.init(slot.getLevel(), slot.getCycle(), slot.getId(), expireTick);
+            }
+            chunk.add(e);
+            if (chunk.size() == ENTRIES_PER_MULTI) {
+                relocateChunk(chunk, target);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            relocateChunk(chunk, target);
+        }
     }
 
+    private void relocateChunk(List<E> chunk, ZookeeperSlot<E> slot) {
+        if (!write(chunk, slot) && slot.write(chunk)) {
+            indicator.putAll(chunk, slot);
+        }
+    }
+
+    /**
+     * @return <tt>false</tt> if the transaction failed, e.g. another node indexed or unindexed one of the
+     *         entries between the read and the transaction.
+     */
+    private boolean write(List<E> entries, ZookeeperSlot<E> slot) {
+        try {
+            List<Op> ops = slot.addOps(entries);
+            ops.addAll(indicator.putOps(entries, slot));
+            store.multi(ops);
+            return true;
+        } catch (KeeperException ex) {
+            log.debug("add " + entries.size() + " entries to slot " + slotId(slot) + " raced, retry one by one: " + ex.getMessage());
+        } catch (Exception ex) {
+            log.error("add " + entries.size() + " entries to slot " + slotId(slot) + " failed:" + ex.getMessage(), ex);
+            return true;
+        }
+        return false;
+    }
 
+    /**
+     * Deleting the index node is enough, the copy in the bucket is skipped at expiry.
+     */
     @Override
-    protected long getCurrentCycle() {
-        return 0;
+    protected boolean cancel(E e) {
+        try {
+            return store.delete(indicator.path(e));
+        } catch (Exception ex) {
+            log.error("remove " + e + " failed:" + ex.getMessage(), ex);
+        }
+        return false;
     }
 
+    /**
+     * pipelined deletes of the index nodes.
+     */
+    @Override
+    protected int cancelAll(Collection<E> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        try {
+            return store.deleteAll(indicator.paths(entries));
+        } catch (Exception ex) {
+            log.error("remove " + entries.size() + " entries failed:" + ex.getMessage(), ex);
+        }
+        return 0;
+    }
 
+    /**
+     * Every scheduled entry has an index node, so they are counted with one read of the number of children,
+     * including the entries added by the other nodes.
+     */
     @Override
-    protected void incrCurrentCycle() {
+    public long size() {
+        try {
+            return store.count(indicator.getEntriesPath());
+        } catch (Exception e) {
+            log.error("count entries error: " + e.getMessage(), e);
+            return -1;
+        }
+    }
 
+    /**
+     * @return <tt>value_time[_token]</tt> of the tick state node split, the token -1 if it has none, null if
+     *         there is no node.
+     */
+    private long[] readTickState(String path) {
+        return parseTickState(store.read(path));
     }
 
+    private static long[] parseTickState(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        String[] state = new String(data, StandardCharsets.UTF_8).split("_");
+        return new long[] {Long.parseLong(state[0]), Long.parseLong(state[1]), state.length > 2 ? Long.parseLong(state[2]) : -1};
+    }
+
+    private void writeTickState(String path, long value, long time) {
+        long token = fencingToken();
+        if (token < 0) {
+            store.write(path, (value + "_" + time).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        byte[] data = (value + "_" + time + "_" + token).getBytes(StandardCharsets.UTF_8);
+        Integer version = fencedVersions.get(path);
+        for (;;) {
+            if (version != null) {
+                int written = store.write(path, data, version);
+                if (written >= 0) {
+                    fencedVersions.put(path, written);
+                    return;
+                }
+            }
+            Stat stat = new Stat(); // written by someone else since, or never by this node.
+            long[] state = parseTickState(store.read(path, stat));
+            if (state != null && state[2] > token) {
+                fencedVersions.remove(path);
+                throw new FencingException(path, token, state[2]);
+            }
+            version = state == null ? ZookeeperStore.ABSENT : stat.getVersion();
+        }
+    }
 
     @Override
     protected int getCurrentTickIndex() {
-        return 0;
+        try {
+            long[] state = readTickState(currIdxPath);
+            if (state == null) {
+                this.currentTickIndex = 0;
+                return 0;
+            }
+            if (state[0] != this.currentTickIndex && state[1] > this.tickTime) { // if false, means the idx in zookeeper is over time.
+                this.currentTickIndex = (int) state[0];
+            }
+        } catch (Exception e) {
+            log.error("get current tick idx error: " + e.getMessage(), e);
+        }
+        return this.currentTickIndex;
     }
 
-
     @Override
     protected int setCurrentTickIndex(int currentTickIndex) {
-        return 0;
+        if (currentTickIndex == this.ticksPerWheel) {
+            currentTickIndex = 0;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            writeTickState(currIdxPath, currentTickIndex, now);
+        } catch (FencingException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("set current tick idx error: " + e.getMessage(), e);
+        }
+        this.tickTime = now;
+        this.currentTickIndex = currentTickIndex;
+        return this.currentTickIndex;
+    }
+
+    @Override
+    protected long getCurrentCycle() {
+        try {
+            long[] state = readTickState(currCyclePath);
+            if (state == null) {
+                this.currentCycle = 0;
+                return 0;
+            }
+            if (state[0] != this.currentCycle && state[1] > this.cycleTime) { // if false, means the cycle in zookeeper is over time.
+                this.currentCycle = state[0];
+            }
+        } catch (Exception e) {
+            log.error("get current cycle error: " + e.getMessage(), e);
+        }
+        return this.currentCycle;
     }
 
+    @Override
+    protected void incrCurrentCycle() {
+        long now = System.currentTimeMillis();
+        try {
+            writeTickState(currCyclePath, this.currentCycle + 1, now);
+        } catch (FencingException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("incr current cycle error: " + e.getMessage(), e);
+        }
+        this.cycleTime = now;
+        this.currentCycle ++;
+    }
 
 }
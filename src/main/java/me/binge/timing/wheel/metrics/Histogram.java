@@ -0,0 +1,95 @@
+package me.binge.timing.wheel.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values in power of two buckets, so recording is a couple of atomic
+ * increments and a percentile is exact to within a factor of two, which is plenty to tell a 100 microseconds
+ * tail from a 10 milliseconds one. Negative values are recorded as 0.
+ */
+public class Histogram {
+
+    /**
+     * bucket 0 holds 0, bucket i holds [2^(i-1), 2^i).
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * record the value <tt>times</tt> times.
+     */
+    public void record(long value, int times) {
+        if (times <= 0) {
+            return;
+        }
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.addAndGet(64 - Long.numberOfLeadingZeros(value), times);
+        count.addAndGet(times);
+        sum.addAndGet(value * times);
+        for (;;) {
+            long m = max.get();
+            if (value <= m || max.compareAndSet(m, value)) {
+                return;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile in (0, 100].
+     * @return the upper bound of the bucket holding the percentile, at most the max. 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+        }
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                long bound = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(bound, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Start over. Values recorded concurrently may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+}
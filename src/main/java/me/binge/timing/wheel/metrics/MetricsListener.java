@@ -0,0 +1,45 @@
+package me.binge.timing.wheel.metrics;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.tick.TickListener;
+
+/**
+ * Told about the health of a wheel: every tick, every slot coming due, every expiration and every failed
+ * callback. The tick and slot callbacks run on the tick thread and the expiration ones on the expiration
+ * threads, so all of them must be quick and thread safe. See {@link WheelMetrics} for the provided one.
+ */
+public interface MetricsListener extends TickListener {
+
+    /**
+     * A slot came due at its tick.
+     *
+     * @param level the wheel level of the slot, always 0 as only the finest wheel expires.
+     * @param population how many entries it held.
+     */
+    public void slotExpired(int level, int population);
+
+    /**
+     * Entries are about to be handed to the expiration callbacks.
+     *
+     * @param latenessNanos how long after their tick was due, including the time spent in the dispatcher queue.
+     * @param entries how many, more than one for batch expiration.
+     */
+    public void expired(long latenessNanos, int entries);
+
+    /**
+     * The tick thread fell behind and processed the overdue ticks at once, on the tick thread, see
+     * {@link me.binge.timing.wheel.TimingWheel#setCatchUpLag(int)}. The ticks are also told to
+     * {@link #ticked(long, long, long)} as one, the last of them.
+     *
+     * @param fromTick the first overdue tick.
+     * @param ticks how many ticks were processed at once.
+     * @param lagNanos how long after its due time the first of them was processed.
+     */
+    public void caughtUp(long fromTick, int ticks, long lagNanos);
+
+    /**
+     * An expiration callback threw.
+     */
+    public void expirationFailed(Expiration<?> expiration, Throwable cause);
+
+}
@@ -0,0 +1,256 @@
+package me.binge.timing.wheel.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Expiration;
+
+/**
+ * The provided {@link MetricsListener}: histograms of the tick lateness and duration, of the expiry lateness
+ * and of the population of the expiring slots, plus the failed callbacks. The live entries and the expiration
+ * queue depth are asked from the wheel when read. Readable as is or through JMX, see {@link #register()}.
+ */
+public class WheelMetrics implements MetricsListener, WheelMetricsMXBean {
+
+    public static final String DOMAIN = "me.binge.timing.wheel";
+
+    private final TimingWheel<?> timingWheel;
+
+    private final Histogram tickLateness = new Histogram();
+    private final Histogram tickDuration = new Histogram();
+    private final Histogram expiryLateness = new Histogram();
+    private final Histogram slotPopulation = new Histogram();
+    private final Histogram catchUpLag = new Histogram();
+    private final AtomicLong caughtUpTicks = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private ObjectName objectName;
+
+    public WheelMetrics(TimingWheel<?> timingWheel) {
+        if (timingWheel == null) {
+            throw new NullPointerException("timingWheel");
+        }
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * For subclasses answering {@link #getName()}, {@link #isRunning()}, {@link #getLiveEntries()} and
+     * {@link #getExpirationQueueDepth()} themselves, e.g. for several wheels at once.
+     */
+    protected WheelMetrics() {
+        this.timingWheel = null;
+    }
+
+    @Override
+    public void ticked(long tick, long latenessNanos, long durationNanos) {
+        tickLateness.record(latenessNanos);
+        tickDuration.record(durationNanos);
+    }
+
+    @Override
+    public void slotExpired(int level, int population) {
+        slotPopulation.record(population);
+    }
+
+    @Override
+    public void caughtUp(long fromTick, int ticks, long lagNanos) {
+        catchUpLag.record(lagNanos);
+        caughtUpTicks.addAndGet(ticks);
+    }
+
+    @Override
+    public void expired(long latenessNanos, int entries) {
+        expiryLateness.record(latenessNanos, entries);
+    }
+
+    @Override
+    public void expirationFailed(Expiration<?> expiration, Throwable cause) {
+        failures.incrementAndGet();
+    }
+
+    public Histogram getTickLateness() {
+        return tickLateness;
+    }
+
+    public Histogram getTickDuration() {
+        return tickDuration;
+    }
+
+    public Histogram getExpiryLateness() {
+        return expiryLateness;
+    }
+
+    public Histogram getCatchUpLag() {
+        return catchUpLag;
+    }
+
+    public Histogram getSlotPopulation() {
+        return slotPopulation;
+    }
+
+    /**
+     * Register with the platform MBean server under the name of the wheel.
+     *
+     * @throws IllegalStateException if another wheel of that name is registered already.
+     */
+    public synchronized void register() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=TimingWheel,name=" + ObjectName.quote(getName()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("register metrics of " + getName() + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("unregister metrics of " + getName() + " failed: " + e.getMessage(), e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return timingWheel.getName();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return timingWheel.running();
+    }
+
+    @Override
+    public long getLiveEntries() {
+        return timingWheel.size();
+    }
+
+    @Override
+    public int getExpirationQueueDepth() {
+        return timingWheel.getExpirationDispatcher().queueDepth();
+    }
+
+    @Override
+    public long getTicks() {
+        return tickDuration.getCount();
+    }
+
+    @Override
+    public long getTickLateness99thMicros() {
+        return micros(tickLateness.getPercentile(99));
+    }
+
+    @Override
+    public long getTickLatenessMaxMicros() {
+        return micros(tickLateness.getMax());
+    }
+
+    @Override
+    public double getTickDurationMeanMicros() {
+        return tickDuration.getMean() / 1000;
+    }
+
+    @Override
+    public long getTickDuration99thMicros() {
+        return micros(tickDuration.getPercentile(99));
+    }
+
+    @Override
+    public long getTickDurationMaxMicros() {
+        return micros(tickDuration.getMax());
+    }
+
+    @Override
+    public long getExpired() {
+        return expiryLateness.getCount();
+    }
+
+    @Override
+    public double getExpiryLatenessMeanMicros() {
+        return expiryLateness.getMean() / 1000;
+    }
+
+    @Override
+    public long getExpiryLateness50thMicros() {
+        return micros(expiryLateness.getPercentile(50));
+    }
+
+    @Override
+    public long getExpiryLateness99thMicros() {
+        return micros(expiryLateness.getPercentile(99));
+    }
+
+    @Override
+    public long getExpiryLatenessMaxMicros() {
+        return micros(expiryLateness.getMax());
+    }
+
+    @Override
+    public double getSlotPopulationMean() {
+        return slotPopulation.getMean();
+    }
+
+    @Override
+    public long getSlotPopulation99th() {
+        return slotPopulation.getPercentile(99);
+    }
+
+    @Override
+    public long getSlotPopulationMax() {
+        return slotPopulation.getMax();
+    }
+
+    @Override
+    public long getCallbackFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public long getCatchUps() {
+        return catchUpLag.getCount();
+    }
+
+    @Override
+    public long getCaughtUpTicks() {
+        return caughtUpTicks.get();
+    }
+
+    @Override
+    public long getCatchUpLagMaxMicros() {
+        return micros(catchUpLag.getMax());
+    }
+
+    @Override
+    public void reset() {
+        tickLateness.reset();
+        tickDuration.reset();
+        expiryLateness.reset();
+        slotPopulation.reset();
+        catchUpLag.reset();
+        caughtUpTicks.set(0);
+        failures.set(0);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+}
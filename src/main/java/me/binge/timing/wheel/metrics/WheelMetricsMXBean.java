@@ -0,0 +1,70 @@
+package me.binge.timing.wheel.metrics;
+
+/**
+ * The JMX view of {@link WheelMetrics}, registered as
+ * <tt>me.binge.timing.wheel:type=TimingWheel,name=&lt;wheel name&gt;</tt>. Times are in microseconds.
+ */
+public interface WheelMetricsMXBean {
+
+    public String getName();
+
+    public boolean isRunning();
+
+    /**
+     * @return the entries scheduled right now, -1 if the backend cannot tell.
+     */
+    public long getLiveEntries();
+
+    /**
+     * @return the expirations dispatched but not started yet, -1 if the dispatcher cannot tell.
+     */
+    public int getExpirationQueueDepth();
+
+    public long getTicks();
+
+    public long getTickLateness99thMicros();
+
+    public long getTickLatenessMaxMicros();
+
+    public double getTickDurationMeanMicros();
+
+    public long getTickDuration99thMicros();
+
+    public long getTickDurationMaxMicros();
+
+    public long getExpired();
+
+    public double getExpiryLatenessMeanMicros();
+
+    public long getExpiryLateness50thMicros();
+
+    public long getExpiryLateness99thMicros();
+
+    public long getExpiryLatenessMaxMicros();
+
+    public double getSlotPopulationMean();
+
+    public long getSlotPopulation99th();
+
+    public long getSlotPopulationMax();
+
+    public long getCallbackFailures();
+
+    /**
+     * @return how many times the tick thread processed overdue ticks at once.
+     */
+    public long getCatchUps();
+
+    /**
+     * @return how many ticks were processed by catching up.
+     */
+    public long getCaughtUpTicks();
+
+    public long getCatchUpLagMaxMicros();
+
+    /**
+     * Start all histograms and counters over.
+     */
+    public void reset();
+
+}
@@ -0,0 +1,16 @@
+package me.binge.timing.wheel.tick;
+
+/**
+ * A {@link TickCondition} granting the tick to one node at a time under a fencing token: every node granted the
+ * tick later gets a greater one. The wheels sharing their tick state stamp it into every write of the tick and
+ * refuse to write under a smaller token than the one stamped, see {@link FencingException}, so a node that
+ * still believes it ticks after a pause cannot move the wheel back.
+ */
+public interface FencedTickCondition extends TickCondition {
+
+    /**
+     * @return the token of this node while it is granted the tick, -1 otherwise.
+     */
+    public long fencingToken();
+
+}
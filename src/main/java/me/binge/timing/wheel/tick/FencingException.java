@@ -0,0 +1,40 @@
+package me.binge.timing.wheel.tick;
+
+/**
+ * The tick state was written under a greater fencing token than the one of this node, see
+ * {@link FencedTickCondition}: another node ticks now.
+ */
+public class FencingException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long token;
+    private final long fencedBy;
+
+    /**
+     * this node lost the tick before writing it.
+     */
+    public FencingException(String message) {
+        super(message);
+        this.token = -1;
+        this.fencedBy = -1;
+    }
+
+    public FencingException(String what, long token, long fencedBy) {
+        super(what + " is fenced by token " + fencedBy + ", this node holds " + token);
+        this.token = token;
+        this.fencedBy = fencedBy;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    /**
+     * @return the token the state was written under, -1 if unknown.
+     */
+    public long getFencedBy() {
+        return fencedBy;
+    }
+
+}
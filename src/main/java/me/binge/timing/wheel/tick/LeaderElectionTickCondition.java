@@ -0,0 +1,254 @@
+package me.binge.timing.wheel.tick;
+
+import static me.binge.timing.wheel.utils.ZookeeperConstant.CANDIDATE_NODE_PREFIX;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.ELECTION_NODE_NAME;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import me.binge.timing.wheel.impl.zookeeper.ZookeeperStore;
+import me.binge.timing.wheel.utils.ZookeeperConstant;
+
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Elects the one node ticking among the nodes sharing a work path, and answers {@link #tick()} from the
+ * leadership cached by a background thread, so ticking costs no ZooKeeper call.<br>
+ * Every node queues an ephemeral sequential candidate node under <tt>/timing_wheel/&lt;work path&gt;/election</tt>.
+ * The first candidate leads, and its sequence number is the fencing token, see {@link FencedTickCondition}.
+ * Each candidate rewrites its node every quarter of the lease to show it is alive. A node leads only until a
+ * lease after its last rewrite. The next candidate deletes a node it has not seen rewritten for a lease and
+ * a quarter, so a crashed or paused leader is replaced within about a lease instead of the session timeout,
+ * and a closed one at once.
+ */
+public class LeaderElectionTickCondition implements FencedTickCondition {
+
+    private final static Log log = LogFactory.getLog(LeaderElectionTickCondition.class);
+
+    public static final long DEFAULT_LEASE_MILLIS = 400;
+
+    private final ZookeeperStore store;
+    private final String electionPath;
+    private final long leaseNanos;
+    private final long renewNanos;
+    private final Thread renewer;
+
+    /**
+     * the node of this candidate and its version, the predecessor watched, the last change seen of it and
+     * since when. Only touched by the renewer.
+     */
+    private String candidate;
+    private int candidateVersion;
+    private String watched;
+    private long watchedZxid;
+    private long watchedSince;
+
+    private volatile long token = -1;
+    private volatile long leaseDeadline;
+    private volatile boolean resign;
+    private volatile boolean wake;
+    private volatile boolean closed;
+
+    private final Watcher predecessorWatcher = new Watcher() {
+
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() == Event.EventType.NodeDeleted) {
+                wakeUp();
+            }
+        }
+    };
+
+    public LeaderElectionTickCondition(String workPath, ZkClient zkClient) {
+        this(workPath, zkClient, DEFAULT_LEASE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param lease how long a node leads after it last showed it is alive, and about how long a crashed
+     *            leader is waited for.
+     */
+    public LeaderElectionTickCondition(String workPath, ZkClient zkClient, long lease, TimeUnit unit) {
+        if (lease <= 0) {
+            throw new IllegalArgumentException("lease must be greater than 0: " + lease);
+        }
+        this.store = new ZookeeperStore(zkClient);
+        this.electionPath = ZookeeperConstant.ROOT + "/" + workPath + "/" + ELECTION_NODE_NAME;
+        this.leaseNanos = unit.toNanos(lease);
+        this.renewNanos = leaseNanos / 4;
+        store.createPersistent(electionPath);
+        this.renewer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                renewLoop();
+            }
+        }, "tick-election-" + workPath);
+        renewer.setDaemon(true);
+        renewer.start();
+    }
+
+    /**
+     * Whether this node leads and its lease still runs, a volatile read.
+     */
+    @Override
+    public boolean tick() {
+        return token >= 0 && leaseDeadline - System.nanoTime() > 0;
+    }
+
+    /**
+     * Give the tick up, e.g. once fenced off: this node queues again behind the others.
+     */
+    @Override
+    public void untick() {
+        token = -1;
+        resign = true;
+        wakeUp();
+    }
+
+    @Override
+    public long fencingToken() {
+        long t = token;
+        return t >= 0 && leaseDeadline - System.nanoTime() > 0 ? t : -1;
+    }
+
+    public boolean isLeader() {
+        return tick();
+    }
+
+    public String getElectionPath() {
+        return electionPath;
+    }
+
+    /**
+     * Leave the election, the next candidate leads right away.
+     */
+    public void close() {
+        closed = true;
+        token = -1;
+        wakeUp();
+        try {
+            renewer.join(TimeUnit.NANOSECONDS.toMillis(leaseNanos) * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeUp() {
+        wake = true;
+        LockSupport.unpark(renewer);
+    }
+
+    private void renewLoop() {
+        while (!closed) {
+            long start = System.nanoTime();
+            try {
+                renew(start);
+            } catch (RuntimeException e) {
+                log.warn("renew " + electionPath + " failed, the lease runs out unless renewed in time: " + e.getMessage(), e);
+            }
+            for (;;) {
+                if (wake || closed) {
+                    wake = false;
+                    break;
+                }
+                long remaining = start + renewNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+        token = -1;
+        if (candidate != null) {
+            try {
+                store.delete(candidate);
+            } catch (RuntimeException e) {
+                log.warn("leave " + electionPath + " failed, the session takes " + candidate + " away: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * One round of the renewer, every quarter of the lease or as soon as the predecessor is gone: rewrite the
+     * node of this candidate, lead if it is the first of the queue, otherwise watch the one before it.
+     *
+     * @param now when the round started, the lease runs from there.
+     */
+    protected void renew(long now) {
+        if (resign) {
+            resign = false;
+            if (candidate != null) {
+                store.delete(candidate);
+                candidate = null;
+            }
+        }
+        if (candidate == null) {
+            candidate = store.createEphemeralSequential(electionPath + "/" + CANDIDATE_NODE_PREFIX, null);
+            candidateVersion = 0;
+        } else {
+            int version = store.write(candidate, null, candidateVersion);
+            if (version < 0) { // taken out as stale by the next one, or the session expired.
+                token = -1;
+                log.warn(candidate + " was taken out of the election, queue again");
+                candidate = null;
+                wakeUp();
+                return;
+            }
+            candidateVersion = version;
+        }
+
+        List<String> queue = new ArrayList<String>(store.children(electionPath));
+        Collections.sort(queue);
+        String name = candidate.substring(candidate.lastIndexOf('/') + 1);
+        int i = queue.indexOf(name);
+        if (i < 0) {
+            token = -1;
+            candidate = null;
+            wakeUp();
+            return;
+        }
+        if (i == 0) {
+            long sequence = Long.parseLong(name.substring(CANDIDATE_NODE_PREFIX.length()));
+            leaseDeadline = now + leaseNanos;
+            if (token != sequence) {
+                token = sequence;
+                log.info(candidate + " leads the tick with token " + sequence);
+            }
+            watched = null;
+            return;
+        }
+        if (token >= 0) {
+            token = -1;
+            log.info(candidate + " no longer leads the tick");
+        }
+
+        String predecessor = electionPath + "/" + queue.get(i - 1);
+        Stat stat = store.stat(predecessor, predecessorWatcher);
+        if (stat == null) { // gone meanwhile, look again.
+            wakeUp();
+            return;
+        }
+        if (!predecessor.equals(watched) || stat.getMzxid() != watchedZxid) {
+            watched = predecessor;
+            watchedZxid = stat.getMzxid();
+            watchedSince = now;
+            return;
+        }
+        if (now - watchedSince > leaseNanos + renewNanos) {
+            if (store.delete(predecessor, stat.getVersion())) {
+                log.warn(predecessor + " was not renewed for " + TimeUnit.NANOSECONDS.toMillis(now - watchedSince)
+                        + "ms, taken out of the election");
+            }
+            wakeUp();
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package me.binge.timing.wheel.tick;
+
+/**
+ * Told about every tick the tick thread processes, on the tick thread, so it must be quick.
+ */
+public interface TickListener {
+
+    /**
+     * @param tick the absolute tick, <tt>cycle * (ticksPerWheel + 1) + index</tt>.
+     * @param latenessNanos how long after its due time the tick was processed. Grows while the tick thread
+     *            catches up with ticks missed by a slow expiration or a stall.
+     * @param durationNanos how long cascading and expiring the tick took.
+     */
+    public void ticked(long tick, long latenessNanos, long durationNanos);
+
+}
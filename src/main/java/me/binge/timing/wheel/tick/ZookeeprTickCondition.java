@@ -8,6 +8,11 @@ import org.I0Itec.zkclient.IZkChildListener;
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.exception.ZkNodeExistsException;
 
+/**
+ * @deprecated tries to create the occupy node on every tick of every node, and only forgets it holds the tick
+ *             once told to untick. Use {@link LeaderElectionTickCondition}.
+ */
+@Deprecated
 public class ZookeeprTickCondition implements TickCondition {
 
     private ZkClient zkClient;
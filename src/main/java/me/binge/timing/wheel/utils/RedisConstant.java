@@ -1,5 +1,7 @@
 package me.binge.timing.wheel.utils;
 
+import me.binge.timing.wheel.Slot;
+
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -43,5 +45,22 @@ public class RedisConstant {
         return check() + "timingwheel_current_cycle";
     }
 
+    /**
+     * the channel the tick leader publishes <tt>cycle_idx</tt> on after every tick.
+     */
+    public static String tickChannel() {
+        return check() + "timingwheel_tick";
+    }
+
+    /**
+     * <tt>cycle_id</tt> for the finest wheel, <tt>level_cycle_id</tt> for the overflow wheels.
+     */
+    public static String slotId(Slot<?> slot) {
+        if (slot.getLevel() == 0) {
+            return slot.getCycle() + "_" + slot.getId();
+        }
+        return slot.getLevel() + "_" + slot.getCycle() + "_" + slot.getId();
+    }
+
 
 }
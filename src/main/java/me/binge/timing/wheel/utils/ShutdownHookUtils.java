@@ -1,6 +1,7 @@
 package me.binge.timing.wheel.utils;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ShutdownHookUtils {
 
@@ -22,4 +23,26 @@ public class ShutdownHookUtils {
         }));
     }
 
+    /**
+     * shutdown the executor on exit and let the queued tasks finish within the timeout.
+     */
+    public static void hook(final ExecutorService executor, final long timeout, final TimeUnit unit) {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (executor != null) {
+                    executor.shutdown();
+                    try {
+                        executor.awaitTermination(timeout, unit);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+            }
+        }));
+    }
+
 }
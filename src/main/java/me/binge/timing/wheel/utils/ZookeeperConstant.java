@@ -1,8 +1,59 @@
 package me.binge.timing.wheel.utils;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import me.binge.timing.wheel.Slot;
+
 public class ZookeeperConstant {
 
     public static final String ROOT = "/timing_wheel";
     public static final String TICK_OCCUPY_NODE_NAME = "tick";
 
+    /**
+     * the node the candidates of a {@link me.binge.timing.wheel.tick.LeaderElectionTickCondition} queue under,
+     * and the prefix of their sequential nodes.
+     */
+    public static final String ELECTION_NODE_NAME = "election";
+    public static final String CANDIDATE_NODE_PREFIX = "c-";
+
+    public static final String SLOTS_NODE_NAME = "slots";
+    public static final String ENTRIES_NODE_NAME = "entries";
+    public static final String CURRENT_IDX_NODE_NAME = "current_idx";
+    public static final String CURRENT_CYCLE_NODE_NAME = "current_cycle";
+
+    /**
+     * the prefix of the sequential bucket znodes under a slot.
+     */
+    public static final String BUCKET_NODE_PREFIX = "b-";
+
+    /**
+     * the node all the state of a {@link me.binge.timing.wheel.impl.zookeeper.ZookeeperTimingWheel} lives under.
+     */
+    public static String wheelPath(String wheelName) {
+        return ROOT + "/wheels/" + wheelName;
+    }
+
+    /**
+     * <tt>cycle_id</tt> for the finest wheel, <tt>level_cycle_id</tt> for the overflow wheels.
+     */
+    public static String slotId(Slot<?> slot) {
+        if (slot.getLevel() == 0) {
+            return slot.getCycle() + "_" + slot.getId();
+        }
+        return slot.getLevel() + "_" + slot.getCycle() + "_" + slot.getId();
+    }
+
+    /**
+     * the entry key as a znode name, '/' and the other reserved characters escaped.
+     */
+    public static String nodeName(String key) {
+        try {
+            String name = URLEncoder.encode(key, "UTF-8");
+            return ".".equals(name) || "..".equals(name) ? name.replace(".", "%2E") : name;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
@@ -0,0 +1,76 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+import me.binge.timing.wheel.impl.mem.test.AgeEntryCodecer;
+import me.binge.timing.wheel.impl.mem.test.FakeRedisExecutor;
+import me.binge.timing.wheel.impl.mmap.MmapTimingWheel;
+import me.binge.timing.wheel.impl.redis.RedisTimingWheel;
+import me.binge.timing.wheel.tick.TickCondition;
+
+/**
+ * The wheels the benchmarks compare. The redis one talks to a {@link FakeRedisExecutor}, so its numbers
+ * are the client side cost without the network, the mmap one journals to a fresh temporary directory.
+ */
+class Backends {
+
+    static final String MEM = "mem";
+    static final String REDIS = "redis";
+    static final String MMAP = "mmap";
+
+    static TimingWheel<AgeEntry> wheel(String backend, int tickDuration, TickCondition tickCondition, Expiration<AgeEntry> expiration) {
+        if (REDIS.equals(backend)) {
+            RedisTimingWheel<AgeEntry> wheel = new RedisTimingWheel<AgeEntry>(tickDuration, 60, TimeUnit.MILLISECONDS, backend,
+                    new FakeRedisExecutor(), tickCondition, expiration);
+            wheel.setScripted(true);
+            wheel.setTickStateCache(tickDuration * 10, TimeUnit.MILLISECONDS);
+            return wheel;
+        }
+        if (MMAP.equals(backend)) {
+            File dir;
+            try {
+                dir = Files.createTempDirectory("wheel-journal").toFile();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            MmapTimingWheel<AgeEntry> wheel = new MmapTimingWheel<AgeEntry>(tickDuration, 60, TimeUnit.MILLISECONDS, backend, dir,
+                    MmapTimingWheel.DEFAULT_SEGMENT_BYTES, Mode.DEFAULT, tickCondition, expiration);
+            wheel.setEntryCodecer(new AgeEntryCodecer());
+            return wheel;
+        }
+        return new MemTimingWheel<AgeEntry>(tickDuration, 60, TimeUnit.MILLISECONDS, backend, Mode.DEFAULT, tickCondition, expiration);
+    }
+
+    /**
+     * holds the tick still until opened.
+     */
+    static class Gate implements TickCondition {
+
+        volatile boolean open;
+
+        @Override
+        public boolean tick() {
+            return open;
+        }
+
+        @Override
+        public void untick() {
+        }
+    }
+
+    static class NopExpiration extends Expiration<AgeEntry> {
+
+        @Override
+        public void expired(AgeEntry entry) {
+        }
+    }
+
+}
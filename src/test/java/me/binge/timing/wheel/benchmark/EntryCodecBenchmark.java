@@ -0,0 +1,87 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.entry.EntryCodecer;
+import me.binge.timing.wheel.entry.JacksonEntryCodecer;
+import me.binge.timing.wheel.entry.Utf8EntryCodecer;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+import me.binge.timing.wheel.impl.mem.test.AgeEntryCodecer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encode and decode throughput of the codecers the redis slots store entries with. {@link #main(String[])}
+ * prints the stored bytes per entry first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryCodecBenchmark {
+
+    @Param({"jackson", "binary"})
+    public String codec;
+
+    private EntryCodecer<AgeEntry, byte[]> codecer;
+
+    private AgeEntry entry;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        codecer = codecer(codec);
+        entry = entry();
+        encoded = codecer.encode(entry);
+    }
+
+    static EntryCodecer<AgeEntry, byte[]> codecer(String codec) {
+        if ("binary".equals(codec)) {
+            return new AgeEntryCodecer();
+        }
+        return new Utf8EntryCodecer<AgeEntry>(new JacksonEntryCodecer<AgeEntry>());
+    }
+
+    static AgeEntry entry() {
+        AgeEntry entry = new AgeEntry(42);
+        entry.init(1, 1234, 37, 1234 * 61 + 37);
+        return entry;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codecer.encode(entry);
+    }
+
+    @Benchmark
+    public AgeEntry decode() {
+        return codecer.decode(encoded);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String codec : new String[] {"jackson", "binary"}) {
+            System.out.println(codec + ": " + codecer(codec).encode(entry()).length + " bytes per entry");
+        }
+        new Runner(new OptionsBuilder()
+                .include(EntryCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,104 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Backpressure;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.expire.ExpirationDispatchers;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * How long a slot of <tt>slotSize</tt> entries takes from its tick to the last expiration callback. The
+ * tick is held still while the slot is filled, then let go: the measured time is at most one 1ms tick
+ * plus draining the slot and running the callbacks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExpiryBurstBenchmark {
+
+    private static final int ADD_BATCH = 10000;
+
+    @Param({Backends.MEM, Backends.REDIS, Backends.MMAP})
+    public String backend;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int slotSize;
+
+    private final Backends.Gate gate = new Backends.Gate();
+
+    private volatile CountDownLatch fired;
+
+    private TimingWheel<AgeEntry> wheel;
+
+    private List<AgeEntry> entries;
+
+    @Setup
+    public void setup() {
+        wheel = Backends.wheel(backend, 1, gate, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                fired.countDown();
+            }
+        });
+        wheel.setExpirationDispatcher(ExpirationDispatchers.bounded("burst", 4, 1 << 16, Backpressure.CALLER_RUNS), 60000);
+        wheel.start();
+        entries = new ArrayList<AgeEntry>(slotSize);
+        for (int i = 0; i < slotSize; i++) {
+            entries.add(new AgeEntry(i));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        gate.open = false;
+        fired = new CountDownLatch(slotSize);
+        for (int i = 0; i < slotSize; i += ADD_BATCH) {
+            wheel.addAll(entries.subList(i, Math.min(i + ADD_BATCH, slotSize)), 1, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        gate.open = true;
+        fired.await();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ExpiryBurstBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
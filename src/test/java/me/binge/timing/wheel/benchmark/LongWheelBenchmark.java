@@ -0,0 +1,104 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.LongExpiration;
+import me.binge.timing.wheel.impl.mem.LongTimingWheel;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Scheduling timers identified by a long: a {@link LongTimingWheel} against the in-memory wheel, which needs
+ * an entry keyed by the id as a string. Run with the gc profiler, the long wheel allocates nothing per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongWheelBenchmark {
+
+    private static final int IDS = 1 << 16;
+
+    private LongTimingWheel longWheel;
+    private TimingWheel<AgeEntry> memWheel;
+    private long next;
+
+    @Setup
+    public void setup() {
+        longWheel = new LongTimingWheel(100, 60, TimeUnit.MILLISECONDS, "long", new LongExpiration() {
+
+            @Override
+            public void expired(long id) {
+            }
+        }, IDS);
+        longWheel.start();
+        memWheel = Backends.wheel(Backends.MEM, 100, null, new Backends.NopExpiration());
+        memWheel.start();
+        for (int i = 0; i < IDS; i++) {
+            longWheel.schedule(i, 1, TimeUnit.HOURS);
+            memWheel.add(new AgeEntry(i), 1, TimeUnit.HOURS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        longWheel.stop();
+        memWheel.stop();
+    }
+
+    private long next() {
+        next = (next + 1) & (IDS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public long longReschedule() {
+        long id = next();
+        return longWheel.schedule(id, (id & 1) == 0 ? 30 : 40, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public boolean longScheduleCancel() {
+        long id = IDS + next();
+        longWheel.schedule(id, 30, TimeUnit.MINUTES);
+        return longWheel.cancel(id);
+    }
+
+    @Benchmark
+    public long entryReAdd() {
+        long id = next();
+        return memWheel.add(new AgeEntry(id), (id & 1) == 0 ? 30 : 40, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public boolean entryAddRemove() {
+        AgeEntry e = new AgeEntry(IDS + next());
+        memWheel.add(e, 30, TimeUnit.MINUTES);
+        return memWheel.remove(e);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(LongWheelBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
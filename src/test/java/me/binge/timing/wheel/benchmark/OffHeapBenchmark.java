@@ -0,0 +1,95 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+import me.binge.timing.wheel.impl.mem.test.AgeEntryCodecer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A million timers pending for an hour while a few of them are rescheduled, with the slots on the heap and
+ * off it. The setup prints the heap used once they are all added, the gc profiler shows what the old
+ * generation costs to collect while the churn goes on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g", "-XX:MaxDirectMemorySize=2g" })
+public class OffHeapBenchmark {
+
+    private static final int ENTRIES = 1 << 20;
+
+    @Param({ "DEFAULT", "OFF_HEAP" })
+    private String mode;
+
+    private MemTimingWheel<AgeEntry> wheel;
+    private long next;
+
+    @Setup
+    public void setup() {
+        long before = usedHeap();
+        wheel = new MemTimingWheel<AgeEntry>(100, 60, TimeUnit.MILLISECONDS, "off-heap", MemTimingWheel.Mode.valueOf(mode),
+                new Backends.NopExpiration());
+        wheel.setEntryCodecer(new AgeEntryCodecer());
+        wheel.start();
+        for (int i = 0; i < ENTRIES; i++) {
+            wheel.add(new AgeEntry(i), 1, TimeUnit.HOURS);
+        }
+        long used = usedHeap() - before;
+        StringBuilder line = new StringBuilder().append(mode).append(": ").append(ENTRIES).append(" entries, heap used ")
+                .append(used >> 20).append("MB");
+        if (wheel.getOffHeapStore() != null) {
+            line.append(", off heap ").append(wheel.getOffHeapStore().getUsedBytes() >> 20).append("MB");
+        }
+        System.out.println(line);
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public long reAdd() {
+        next = (next + 1) & (ENTRIES - 1);
+        return wheel.add(new AgeEntry(next), (next & 1) == 0 ? 30 : 40, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public boolean exist() {
+        next = (next + 1) & (ENTRIES - 1);
+        return wheel.exist(new AgeEntry(next));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(OffHeapBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,103 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.ShardedTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Producer side throughput of the in-memory wheel split into 1 to 16 shards, adding and removing entries
+ * and moving scheduled ones. {@link #main(String[])} runs it with 1, 4, 16 and 32 producer threads: with
+ * enough cores the throughput should grow with the threads as long as there are about as many shards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedWheelBenchmark {
+
+    private static final int ENTRIES_PER_PRODUCER = 1024;
+
+    @Param({"1", "4", "16"})
+    public int shards;
+
+    @Param({"DEFAULT", "INTRUSIVE"})
+    public Mode mode;
+
+    private ShardedTimingWheel<AgeEntry> wheel;
+
+    @Setup
+    public void setup() {
+        wheel = new ShardedTimingWheel<AgeEntry>(shards, 100, 60, TimeUnit.MILLISECONDS, "sharded", mode, new Backends.NopExpiration());
+        wheel.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        private final AgeEntry[] absent = new AgeEntry[ENTRIES_PER_PRODUCER];
+        private final AgeEntry[] present = new AgeEntry[ENTRIES_PER_PRODUCER];
+        private int next;
+
+        @Setup
+        public void setup(ShardedWheelBenchmark benchmark) {
+            for (int i = 0; i < ENTRIES_PER_PRODUCER; i++) {
+                absent[i] = new AgeEntry(i);
+                present[i] = new AgeEntry(i);
+                benchmark.wheel.add(present[i], 1, TimeUnit.HOURS);
+            }
+        }
+
+        int next() {
+            next = (next + 1) & (ENTRIES_PER_PRODUCER - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean addRemove(Producer producer) {
+        AgeEntry e = producer.absent[producer.next()];
+        wheel.add(e, 30, TimeUnit.MINUTES);
+        return wheel.remove(e);
+    }
+
+    @Benchmark
+    public long reAdd(Producer producer) {
+        int i = producer.next();
+        return wheel.add(producer.present[i], (i & 1) == 0 ? 30 : 40, TimeUnit.MINUTES);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[] {1, 4, 16, 32}) {
+            new Runner(new OptionsBuilder()
+                    .include(ShardedWheelBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+        }
+    }
+
+}
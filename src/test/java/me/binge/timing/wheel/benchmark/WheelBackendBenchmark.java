@@ -0,0 +1,107 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.impl.mem.test.AgeEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Producer side throughput of every backend: adding an entry that is not in the wheel and removing it
+ * again, moving an entry that is in the wheel to a new slot, and renewing it with a touch instead. The
+ * entries never expire while measured.
+ * {@link #main(String[])} runs it with 1, 4 and 16 producer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WheelBackendBenchmark {
+
+    private static final int ENTRIES_PER_PRODUCER = 1024;
+
+    @Param({Backends.MEM, Backends.REDIS, Backends.MMAP})
+    public String backend;
+
+    private TimingWheel<AgeEntry> wheel;
+
+    @Setup
+    public void setup() {
+        wheel = Backends.wheel(backend, 100, null, new Backends.NopExpiration());
+        wheel.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        private final AgeEntry[] absent = new AgeEntry[ENTRIES_PER_PRODUCER];
+        private final AgeEntry[] present = new AgeEntry[ENTRIES_PER_PRODUCER];
+        private int next;
+
+        @Setup
+        public void setup(WheelBackendBenchmark benchmark) {
+            for (int i = 0; i < ENTRIES_PER_PRODUCER; i++) {
+                absent[i] = new AgeEntry(i);
+                present[i] = new AgeEntry(i);
+                benchmark.wheel.add(present[i], 1, TimeUnit.HOURS);
+            }
+        }
+
+        int next() {
+            next = (next + 1) & (ENTRIES_PER_PRODUCER - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean addRemove(Producer producer) {
+        AgeEntry e = producer.absent[producer.next()];
+        wheel.add(e, 30, TimeUnit.MINUTES);
+        return wheel.remove(e);
+    }
+
+    @Benchmark
+    public long reAdd(Producer producer) {
+        int i = producer.next();
+        return wheel.add(producer.present[i], (i & 1) == 0 ? 30 : 40, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public long touch(Producer producer) {
+        int i = producer.next();
+        return wheel.touch(producer.present[i], (i & 1) == 0 ? 30 : 40, TimeUnit.MINUTES);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[] {1, 4, 16}) {
+            new Runner(new OptionsBuilder()
+                    .include(WheelBackendBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package me.binge.timing.wheel.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.RingWheel;
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.Wheel;
+import me.binge.timing.wheel.Wheel.SlotGenerator;
+import me.binge.timing.wheel.entry.Entry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the map-of-maps {@link Wheel} with the {@link RingWheel} on the two hot paths: the slot lookup
+ * done by every add and the get/clear done by the tick thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WheelLayoutBenchmark {
+
+    @Param({"map", "ring"})
+    public String layout;
+
+    @Param({"60", "512"})
+    public int ticksPerWheel;
+
+    private Wheel<Entry> wheel;
+
+    private long currentTick;
+
+    @Setup
+    public void setup() {
+        SlotGenerator<Entry> generator = new SlotGenerator<Entry>() {
+
+            @Override
+            public Slot<Entry> gene(int level, long cycle, int id) {
+                return new NopSlot(level, cycle, id);
+            }
+        };
+        wheel = "ring".equals(layout) ? new RingWheel<Entry>(ticksPerWheel, generator) : new Wheel<Entry>(generator);
+        currentTick = 0;
+        for (int i = 0; i < ticksPerWheel; i++) {
+            wheel.get(0, i);
+        }
+    }
+
+    @Benchmark
+    public Slot<Entry> lookup() {
+        long tick = currentTick + ThreadLocalRandom.current().nextInt(1, ticksPerWheel);
+        return wheel.get(tick / ticksPerWheel, (int) (tick % ticksPerWheel));
+    }
+
+    @Benchmark
+    public Slot<Entry> tick() {
+        long tick = currentTick++;
+        long cycle = tick / ticksPerWheel;
+        int idx = (int) (tick % ticksPerWheel);
+        Slot<Entry> slot = wheel.get(cycle, idx);
+        wheel.clear(cycle, idx);
+        wheel.get(cycle + 1, idx);
+        return slot;
+    }
+
+    static class NopSlot extends Slot<Entry> {
+
+        NopSlot(int level, long cycle, int id) {
+            super(level, cycle, id);
+        }
+
+        @Override
+        public void add(Entry e) {
+        }
+
+        @Override
+        public Entry remove(Entry e) {
+            return null;
+        }
+
+        @Override
+        public Set<Entry> elements() {
+            return null;
+        }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(WheelLayoutBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
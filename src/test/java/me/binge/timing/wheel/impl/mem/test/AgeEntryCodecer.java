@@ -0,0 +1,26 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import me.binge.timing.wheel.entry.BinaryEntryCodecer;
+
+public class AgeEntryCodecer extends BinaryEntryCodecer<AgeEntry> {
+
+    @Override
+    protected AgeEntry newEntry() {
+        return new AgeEntry();
+    }
+
+    @Override
+    protected void writePayload(AgeEntry e, DataOutput out) throws IOException {
+        writeVarLong(out, e.getAge());
+    }
+
+    @Override
+    protected void readPayload(AgeEntry e, DataInput in) throws IOException {
+        e.setAge(readVarLong(in));
+    }
+
+}
@@ -0,0 +1,109 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.expire.Backpressure;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.expire.ExpirationDispatcher;
+import me.binge.timing.wheel.expire.ExpirationDispatchers;
+import me.binge.timing.wheel.expire.ExpirationWorker;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+
+/**
+ * A slot expiring into a full bounded dispatcher that discards: the expirations dropped never fire, but their
+ * entries are gone from the wheel all the same, one by one and in batches. A dispatcher running on the caller
+ * but already shut down drops its workers the same way.
+ */
+public class BackpressureTest {
+
+    private static final int ENTRIES = 50;
+
+    public static void main(String[] args) throws Exception {
+        for (Mode mode : new Mode[] { Mode.DEFAULT, Mode.LOCK_FREE, Mode.OFF_HEAP }) {
+            run(mode, 0);
+            run(mode, 10);
+        }
+        shutDown();
+        System.exit(0);
+    }
+
+    private static void run(Mode mode, int batchSize) throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fired = new AtomicInteger();
+        MemTimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(10, 64, TimeUnit.MILLISECONDS, "backpressure-" + mode, mode,
+                new Expiration<AgeEntry>() {
+
+                    @Override
+                    public void expired(AgeEntry entry) {
+                        fired.incrementAndGet();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        wheel.setExpirationDispatcher(ExpirationDispatchers.bounded("backpressure-" + mode, 1, 2, Backpressure.DISCARD), 1000);
+        wheel.setExpirationBatchSize(batchSize);
+        wheel.start();
+
+        List<AgeEntry> entries = new ArrayList<AgeEntry>();
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.add(new AgeEntry(i));
+        }
+        wheel.addAll(entries, 100, TimeUnit.MILLISECONDS);
+        TimeUnit.MILLISECONDS.sleep(300);
+        release.countDown();
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        int scheduled = 0;
+        for (AgeEntry e : entries) {
+            if (wheel.exist(e)) {
+                scheduled++;
+            }
+        }
+        long size = wheel.size();
+        wheel.stop();
+        String label = mode + (batchSize > 0 ? " in batches" : "");
+        System.out.println(label + ": fired=" + fired.get() + " of " + ENTRIES + ", still scheduled=" + scheduled + ", size=" + size);
+        if (fired.get() >= ENTRIES) {
+            throw new AssertionError(label + ": nothing discarded");
+        }
+        if (scheduled != 0 || size > 0) {
+            throw new AssertionError(label + ": discarded entries left scheduled " + scheduled + ", size " + size);
+        }
+    }
+
+    private static void shutDown() throws Exception {
+        ExpirationDispatcher dispatcher = ExpirationDispatchers.bounded("backpressure-shut-down", 1, 1, Backpressure.CALLER_RUNS);
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+        final AtomicInteger unlinked = new AtomicInteger();
+        final AtomicInteger fired = new AtomicInteger();
+        AgeEntry e = new AgeEntry(0);
+        dispatcher.dispatch(new ExpirationWorker<AgeEntry>(new Callable<AgeEntry>() {
+
+            @Override
+            public AgeEntry call() throws Exception {
+                unlinked.incrementAndGet();
+                return null;
+            }
+        }, e, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                fired.incrementAndGet();
+            }
+        }));
+        System.out.println("shut down: unlinked=" + unlinked.get() + ", fired=" + fired.get());
+        if (unlinked.get() != 1 || fired.get() != 0) {
+            throw new AssertionError("shut down dispatcher: unlinked " + unlinked.get() + ", fired " + fired.get());
+        }
+    }
+
+}
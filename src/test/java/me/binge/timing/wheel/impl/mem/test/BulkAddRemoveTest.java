@@ -0,0 +1,77 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+
+/**
+ * addAll moves a batch that is partly scheduled elsewhere already, removeAll takes out part of it plus
+ * entries never added: in every mode each remaining entry expires exactly once and no removed one does.
+ */
+public class BulkAddRemoveTest {
+
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (Mode mode : Mode.values()) {
+            run(mode);
+        }
+        System.exit(0);
+    }
+
+    private static void run(Mode mode) throws Exception {
+        final Map<AgeEntry, AtomicInteger> expired = new ConcurrentHashMap<AgeEntry, AtomicInteger>();
+        MemTimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(10, 64, TimeUnit.MILLISECONDS, "bulk-" + mode, mode, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                expired.get(entry).incrementAndGet();
+            }
+        });
+        wheel.setEntryCodecer(new AgeEntryCodecer()); // the off-heap one encodes.
+        wheel.start();
+        List<AgeEntry> batch = new ArrayList<AgeEntry>();
+        for (int i = 0; i < BATCH; i++) {
+            AgeEntry e = new AgeEntry(i);
+            batch.add(e);
+            expired.put(e, new AtomicInteger());
+        }
+        wheel.addAll(batch.subList(0, BATCH / 2), 200, TimeUnit.MILLISECONDS); // long enough for the off-heap encoding of both batches.
+        wheel.addAll(batch, 400, TimeUnit.MILLISECONDS);
+
+        List<AgeEntry> removing = new ArrayList<AgeEntry>(batch.subList(0, BATCH / 4));
+        for (int i = 0; i < 10; i++) {
+            removing.add(new AgeEntry(-1));
+        }
+        int removed = wheel.removeAll(removing);
+        check(removed == BATCH / 4, mode + " removed " + removed);
+        for (AgeEntry e : batch.subList(0, BATCH / 4)) {
+            check(!wheel.exist(e), mode + " still scheduled " + e);
+        }
+        check(wheel.size() == BATCH - BATCH / 4, mode + " size " + wheel.size());
+
+        TimeUnit.MILLISECONDS.sleep(700);
+        wheel.stop();
+        int fired = 0;
+        for (int i = 0; i < BATCH; i++) {
+            int n = expired.get(batch.get(i)).get();
+            check(n == (i < BATCH / 4 ? 0 : 1), mode + " entry " + i + " expired " + n + " times");
+            fired += n;
+        }
+        System.out.println(mode + ": removed=" + removed + ", expired=" + fired);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.metrics.WheelMetrics;
+import me.binge.timing.wheel.tick.TickListener;
+
+/**
+ * Stalls the tick thread of a 10ms wheel for 1200ms while 50 slots come due: catching up, the wheel jumps
+ * over the missed ticks at once and every due entry fires once right after the stall, the removed ones never
+ * and the ones due after the stall not early. The lag shows in the metrics. Ticking through the missed ticks
+ * one by one is printed for comparison.
+ */
+public class CatchUpTest {
+
+    private static final int SLOTS = 50;
+    private static final int PER_SLOT = 100;
+    private static final int REMOVED = 500;
+    private static final int LATE = 100;
+
+    public static void main(String[] args) throws Exception {
+        for (Mode mode : new Mode[] { Mode.DEFAULT, Mode.LOCK_FREE }) {
+            run(mode, 5);
+        }
+        run(Mode.DEFAULT, 0);
+        System.exit(0);
+    }
+
+    private static void run(Mode mode, int catchUpLag) throws Exception {
+        final ConcurrentHashMap<Long, AtomicInteger> fired = new ConcurrentHashMap<Long, AtomicInteger>();
+        final CountDownLatch due = new CountDownLatch(SLOTS * PER_SLOT - REMOVED);
+        final AtomicLong lateFiredAt = new AtomicLong();
+        final AtomicLong stalledUntil = new AtomicLong();
+        MemTimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(10, 512, TimeUnit.MILLISECONDS, "catch-up-" + mode, mode,
+                new Expiration<AgeEntry>() {
+
+                    @Override
+                    public void expired(AgeEntry entry) {
+                        AtomicInteger count = fired.get(entry.getAge());
+                        if (count == null) {
+                            AtomicInteger raced = fired.putIfAbsent(entry.getAge(), count = new AtomicInteger());
+                            if (raced != null) {
+                                count = raced;
+                            }
+                        }
+                        count.incrementAndGet();
+                        if (entry.getAge() >= SLOTS * PER_SLOT) {
+                            lateFiredAt.compareAndSet(0, System.nanoTime());
+                        } else {
+                            due.countDown();
+                        }
+                    }
+                });
+        wheel.setCatchUpLag(catchUpLag);
+        WheelMetrics metrics = wheel.enableMetrics();
+        wheel.start();
+
+        List<AgeEntry> entries = new ArrayList<AgeEntry>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            List<AgeEntry> batch = new ArrayList<AgeEntry>();
+            for (int i = 0; i < PER_SLOT; i++) {
+                batch.add(new AgeEntry(slot * PER_SLOT + i));
+            }
+            wheel.addAll(batch, 200 + slot * 20, TimeUnit.MILLISECONDS);
+            entries.addAll(batch);
+        }
+        List<AgeEntry> late = new ArrayList<AgeEntry>();
+        for (int i = 0; i < LATE; i++) {
+            late.add(new AgeEntry(SLOTS * PER_SLOT + i));
+        }
+        wheel.addAll(late, 3, TimeUnit.SECONDS);
+        long added = System.nanoTime();
+        for (int i = 0; i < REMOVED; i++) {
+            wheel.remove(entries.get(i * (entries.size() / REMOVED)));
+        }
+
+        final CountDownLatch stalled = new CountDownLatch(1);
+        wheel.setTickListener(new TickListener() {
+
+            @Override
+            public void ticked(long tick, long latenessNanos, long durationNanos) {
+                if (stalled.getCount() > 0) { // on the tick thread, as a gc pause or a slow store would.
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(1200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    stalledUntil.set(System.nanoTime());
+                    stalled.countDown();
+                }
+            }
+        });
+        stalled.await();
+        if (!due.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError(mode + ": not fired " + due.getCount());
+        }
+        long caughtUpIn = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stalledUntil.get());
+        TimeUnit.MILLISECONDS.sleep(3000 - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - added) + 200);
+        wheel.stop();
+
+        int doubled = 0;
+        for (AtomicInteger count : fired.values()) {
+            if (count.get() > 1) {
+                doubled++;
+            }
+        }
+        for (int i = 0; i < REMOVED; i++) {
+            if (fired.containsKey(entries.get(i * (entries.size() / REMOVED)).getAge())) {
+                throw new AssertionError(mode + ": removed entry expired");
+            }
+        }
+        long lateAfter = TimeUnit.NANOSECONDS.toMillis(lateFiredAt.get() - added);
+        String label = catchUpLag > 0 ? mode.toString() : "tick by tick " + mode;
+        System.out.println(label + ": expired=" + fired.size() + ", doubled=" + doubled + ", due ones fired " + caughtUpIn
+                + "ms after the stall, catch ups=" + metrics.getCatchUps() + " over " + metrics.getCaughtUpTicks() + " ticks, lag max="
+                + TimeUnit.MICROSECONDS.toMillis(metrics.getCatchUpLagMaxMicros()) + "ms, late ones after " + lateAfter + "ms");
+        if (fired.size() != SLOTS * PER_SLOT - REMOVED + LATE || doubled != 0) {
+            throw new AssertionError(mode + ": expired " + fired.size() + ", doubled " + doubled);
+        }
+        if (lateAfter < 2990) {
+            throw new AssertionError(mode + ": late entries fired after " + lateAfter + "ms");
+        }
+        if (catchUpLag > 0 && (metrics.getCatchUps() == 0 || metrics.getCaughtUpTicks() < 100 || metrics.getCatchUpLagMaxMicros() < 1000000)) {
+            throw new AssertionError(mode + ": caught up " + metrics.getCatchUps() + " times over " + metrics.getCaughtUpTicks() + " ticks");
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.tick.TickCondition;
+
+/**
+ * A producer stalling between reading the tick and placing its entry, e.g. descheduled, while the tick thread
+ * passes and clears the slot it aimed at and other adds already target that slot in the next revolution: on
+ * every mode, with and without a tick condition, every entry still expires exactly once and none is left
+ * scheduled.
+ */
+public class DelayedProducerTest {
+
+    private static final int ENTRIES = 200;
+
+    public static void main(String[] args) throws Exception {
+        for (MemTimingWheel.Mode mode : MemTimingWheel.Mode.values()) {
+            run(mode, false);
+            run(mode, true);
+        }
+        System.exit(0);
+    }
+
+    private static void run(MemTimingWheel.Mode mode, boolean conditioned) throws Exception {
+        final ConcurrentHashMap<Long, AtomicInteger> fired = new ConcurrentHashMap<Long, AtomicInteger>();
+        TickCondition tickCondition = !conditioned ? null : new TickCondition() {
+
+            @Override
+            public boolean tick() {
+                return true;
+            }
+
+            @Override
+            public void untick() {
+            }
+        };
+        Stalling wheel = new Stalling(mode, tickCondition, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                AtomicInteger count = fired.putIfAbsent(entry.getAge(), new AtomicInteger(1));
+                if (count != null) {
+                    count.incrementAndGet();
+                }
+            }
+        });
+        wheel.start();
+
+        List<AgeEntry> entries = new ArrayList<AgeEntry>();
+        for (int i = 0; i < ENTRIES; i++) {
+            AgeEntry e = new AgeEntry(i);
+            entries.add(e);
+            wheel.stallNext = i % 4 == 0;
+            long delay = 2 + i * 7 % 30; // up to about a revolution, so later adds come back to the slots passed.
+            if (i % 2 == 0) {
+                wheel.add(e, delay, TimeUnit.MILLISECONDS);
+            } else {
+                List<AgeEntry> batch = new ArrayList<AgeEntry>();
+                batch.add(e);
+                wheel.addAll(batch, delay, TimeUnit.MILLISECONDS);
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        int lost = 0;
+        int doubled = 0;
+        int leaked = 0;
+        for (AgeEntry e : entries) {
+            AtomicInteger count = fired.get(e.getAge());
+            if (count == null) {
+                lost++;
+            } else if (count.get() > 1) {
+                doubled++;
+            }
+            if (wheel.exist(e)) {
+                leaked++;
+            }
+        }
+        long size = wheel.size();
+        wheel.stop();
+        System.out.println(mode + (conditioned ? " with tick condition" : "") + ": lost=" + lost + ", doubled=" + doubled
+                + ", still scheduled=" + leaked + ", size=" + size);
+        if (lost != 0 || doubled != 0 || leaked != 0 || size > 0) {
+            throw new AssertionError(mode + ": lost " + lost + ", doubled " + doubled + ", leaked " + leaked + ", size " + size);
+        }
+    }
+
+    /**
+     * stalls the next add for two ticks right after it read the tick.
+     */
+    private static class Stalling extends MemTimingWheel<AgeEntry> {
+
+        volatile boolean stallNext;
+
+        @SuppressWarnings("unchecked")
+        Stalling(Mode mode, TickCondition tickCondition, Expiration<AgeEntry> expiration) {
+            super(2, 16, TimeUnit.MILLISECONDS, "delayed-producer-" + mode, mode, tickCondition, expiration);
+        }
+
+        @Override
+        protected long getCurrentTick() {
+            long tick = super.getCurrentTick();
+            if (stallNext && !Thread.currentThread().getName().equals(getName())) {
+                stallNext = false;
+                try {
+                    TimeUnit.MILLISECONDS.sleep(4);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return tick;
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import static me.binge.timing.wheel.utils.RedisConstant.currCycleKey;
+import static me.binge.timing.wheel.utils.RedisConstant.currIdxKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.timing.wheel.Slot;
+import me.binge.timing.wheel.Wheel;
+import me.binge.timing.wheel.Wheel.SlotGenerator;
+import me.binge.timing.wheel.entry.Entry;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemSlot;
+import me.binge.timing.wheel.impl.redis.RedisTimingWheel;
+import me.binge.timing.wheel.tick.TickListener;
+
+/**
+ * A tick costs the same however many cycles went by: the wheel hands back only the older slots it still
+ * holds at an index, and a redis wheel whose tick state is a million cycles on spends a few round trips
+ * per tick and expires its entries on time.
+ */
+public class ElapsedCyclesTest {
+
+    public static void main(String[] args) throws Exception {
+        pending();
+        redis();
+        System.exit(0);
+    }
+
+    private static void pending() {
+        Wheel<Entry> wheel = new Wheel<Entry>(new SlotGenerator<Entry>() {
+
+            @Override
+            public Slot<Entry> gene(int level, long cycle, int id) {
+                return new MemSlot<Entry>(level, cycle, id) {
+                };
+            }
+        });
+        wheel.get(5, 3);
+        wheel.get(1000, 3);
+        wheel.get(7, 4);
+        wheel.find(9, 3);
+        check(cycles(wheel.pending(3, 999)).equals(list(5L)), "pending " + cycles(wheel.pending(3, 999)));
+        check(cycles(wheel.pending(3, 1000)).equals(list(1000L, 5L)), "pending " + cycles(wheel.pending(3, 1000)));
+        wheel.clear(5, 3);
+        check(wheel.pending(3, 999).isEmpty(), "cleared still pending");
+        check(wheel.pending(2, Long.MAX_VALUE).isEmpty(), "pending at an unused id");
+    }
+
+    private static void redis() throws Exception {
+        final FakeRedisExecutor redis = new FakeRedisExecutor();
+        long cycle = 1000000;
+        Map<String, String> state = new HashMap<String, String>();
+        state.put("cycle", String.valueOf(cycle));
+        state.put("cycleTime", String.valueOf(System.currentTimeMillis()));
+        redis.hmset(currCycleKey(), state);
+        state = new HashMap<String, String>();
+        state.put("idx", "0");
+        state.put("tickTime", String.valueOf(System.currentTimeMillis()));
+        redis.hmset(currIdxKey(), state);
+
+        final AtomicInteger expired = new AtomicInteger();
+        final AtomicLong lateness = new AtomicLong();
+        RedisTimingWheel<AgeEntry> wheel = new RedisTimingWheel<AgeEntry>(10, 16, TimeUnit.MILLISECONDS, "elapsed", redis, null, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                lateness.set(Math.max(lateness.get(), System.currentTimeMillis() - entry.getAge()));
+                expired.incrementAndGet();
+            }
+        });
+        wheel.setScripted(true);
+        wheel.setRecovery(0, 1, TimeUnit.SECONDS);
+        final AtomicLong ticks = new AtomicLong();
+        final AtomicLong roundTrips = new AtomicLong();
+        wheel.setTickListener(new TickListener() {
+
+            @Override
+            public void ticked(long tick, long latenessNanos, long durationNanos) {
+                ticks.incrementAndGet();
+                roundTrips.set(redis.ownRoundTrips());
+            }
+        });
+        wheel.start();
+        for (int i = 0; i < 20; i++) {
+            wheel.add(new AgeEntry(System.currentTimeMillis() + 100), 100, TimeUnit.MILLISECONDS);
+        }
+        TimeUnit.MILLISECONDS.sleep(500);
+        wheel.stop();
+
+        long perTick = roundTrips.get() / Math.max(1, ticks.get());
+        System.out.println("cycle " + cycle + ": ticks=" + ticks + ", round trips per tick=" + perTick + ", expired="
+                + expired + ", latest by " + lateness + "ms");
+        check(ticks.get() > 10, "ticks " + ticks);
+        check(perTick < 10, "round trips per tick " + perTick);
+        check(expired.get() == 20, "expired " + expired);
+    }
+
+    private static List<Long> cycles(Collection<Slot<Entry>> slots) {
+        List<Long> cycles = new ArrayList<Long>();
+        for (Slot<Entry> slot : slots) {
+            cycles.add(slot.getCycle());
+        }
+        return cycles;
+    }
+
+    private static List<Long> list(Long... cycles) {
+        List<Long> list = new ArrayList<Long>();
+        for (Long c : cycles) {
+            list.add(c);
+        }
+        return list;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
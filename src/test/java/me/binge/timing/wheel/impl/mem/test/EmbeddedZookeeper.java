@@ -0,0 +1,46 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+/**
+ * A standalone ZooKeeper server in this process on a free port, its data in a temporary directory.
+ */
+public class EmbeddedZookeeper {
+
+    private final File dir;
+    private final ZooKeeperServer server;
+    private final ServerCnxnFactory factory;
+
+    public EmbeddedZookeeper() throws Exception {
+        dir = Files.createTempDirectory("zookeeper").toFile();
+        server = new ZooKeeperServer(dir, dir, 2000);
+        factory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", 0), 100);
+        factory.startup(server);
+    }
+
+    public String getConnectString() {
+        return "127.0.0.1:" + factory.getLocalPort();
+    }
+
+    public void shutdown() {
+        factory.shutdown();
+        server.shutdown();
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
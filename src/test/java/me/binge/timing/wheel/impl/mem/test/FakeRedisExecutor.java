@@ -0,0 +1,554 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.redis.exception.RedisExecExecption;
+import me.binge.redis.exec.RedisExecutor;
+import me.binge.redis.utils.RedisCmdPair;
+import me.binge.timing.wheel.impl.redis.RedisScript;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * An in-process stand-in for a Redis server, for the commands the wheel sends. Every call, transaction
+ * or script counts as one round trip. The wheel's scripts are run by their Java equivalent, and a script
+ * is unknown by its sha1 until loaded, as on a fresh server. Published messages are delivered on the
+ * publishing thread.
+ */
+public class FakeRedisExecutor extends RedisExecutor<Jedis> {
+
+    private final Map<String, Map<String, String>> hashes = new HashMap<String, Map<String, String>>();
+    private final Map<String, Set<String>> sets = new HashMap<String, Set<String>>();
+    private final Map<String, Map<String, Double>> sortedSets = new HashMap<String, Map<String, Double>>();
+    private final Set<String> loaded = new HashSet<String>();
+    private final boolean singleNode;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private final Map<JedisPubSub, String> subscribers = new ConcurrentHashMap<JedisPubSub, String>();
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final Map<String, AtomicLong> calls = new HashMap<String, AtomicLong>();
+    private final ThreadLocal<long[]> ownRoundTrips = new ThreadLocal<long[]>() {
+
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    public FakeRedisExecutor() {
+        this(true);
+    }
+
+    /**
+     * @param singleNode false to refuse transactions and scripts, as a sharded executor does.
+     */
+    public FakeRedisExecutor(boolean singleNode) {
+        this.singleNode = singleNode;
+    }
+
+    public long roundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * @return round trips made by the calling thread.
+     */
+    public long ownRoundTrips() {
+        return ownRoundTrips.get()[0];
+    }
+
+    /**
+     * @return round trips spent on the command, a transaction counts as <tt>multi</tt>.
+     */
+    public synchronized long roundTrips(String cmd) {
+        AtomicLong n = calls.get(cmd);
+        return n == null ? 0 : n.get();
+    }
+
+    public synchronized Map<String, String> hash(String key) {
+        Map<String, String> hash = hashes.get(key);
+        return hash == null ? new HashMap<String, String>() : new HashMap<String, String>(hash);
+    }
+
+    private synchronized void count(String cmd) {
+        roundTrips.incrementAndGet();
+        ownRoundTrips.get()[0]++;
+        AtomicLong n = calls.get(cmd);
+        if (n == null) {
+            n = new AtomicLong();
+            calls.put(cmd, n);
+        }
+        n.incrementAndGet();
+    }
+
+    private Map<String, String> hashOf(String key) {
+        Map<String, String> hash = hashes.get(key);
+        if (hash == null) {
+            hash = new LinkedHashMap<String, String>();
+            hashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private void dropIfEmpty(String key) {
+        Map<String, String> hash = hashes.get(key);
+        if (hash != null && hash.isEmpty()) {
+            hashes.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized String hget(String key, String field) {
+        count("hget");
+        return doHget(key, field);
+    }
+
+    private String doHget(String key, String field) {
+        Map<String, String> hash = hashes.get(key);
+        return hash == null ? null : hash.get(field);
+    }
+
+    @Override
+    public synchronized Long hset(String key, String field, String value) {
+        count("hset");
+        return doHset(key, field, value);
+    }
+
+    private Long doHset(String key, String field, String value) {
+        return hashOf(key).put(field, value) == null ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized Long hdel(String key, String... fields) {
+        count("hdel");
+        return doHdel(key, fields);
+    }
+
+    private Long doHdel(String key, String... fields) {
+        Map<String, String> hash = hashes.get(key);
+        long n = 0;
+        if (hash != null) {
+            for (String field : fields) {
+                if (hash.remove(field) != null) {
+                    n++;
+                }
+            }
+            dropIfEmpty(key);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized List<String> hmget(String key, String... fields) {
+        count("hmget");
+        List<String> vals = new ArrayList<String>(fields.length);
+        for (String field : fields) {
+            vals.add(doHget(key, field));
+        }
+        return vals;
+    }
+
+    @Override
+    public synchronized String hmset(String key, Map<String, String> hash) {
+        count("hmset");
+        return doHmset(key, hash);
+    }
+
+    private String doHmset(String key, Map<String, String> hash) {
+        hashOf(key).putAll(hash);
+        return "OK";
+    }
+
+    @Override
+    public synchronized Map<String, String> hgetAll(String key) {
+        count("hgetAll");
+        return hash(key);
+    }
+
+    @Override
+    public synchronized Set<String> hkeys(String key) {
+        count("hkeys");
+        return new LinkedHashSet<String>(hash(key).keySet());
+    }
+
+    @Override
+    public synchronized List<String> hvals(String key) {
+        count("hvals");
+        return new ArrayList<String>(hash(key).values());
+    }
+
+    @Override
+    public synchronized Long hlen(String key) {
+        count("hlen");
+        return (long) hash(key).size();
+    }
+
+    @Override
+    public synchronized Long del(String key) {
+        count("del");
+        boolean existed = hashes.remove(key) != null | sets.remove(key) != null | sortedSets.remove(key) != null;
+        return existed ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized Long sadd(String key, String... members) {
+        count("sadd");
+        Set<String> set = sets.get(key);
+        if (set == null) {
+            set = new LinkedHashSet<String>();
+            sets.put(key, set);
+        }
+        long n = 0;
+        for (String member : members) {
+            if (set.add(member)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized String spop(String key) {
+        count("spop");
+        Set<String> set = sets.get(key);
+        if (set == null || set.isEmpty()) {
+            return null;
+        }
+        Iterator<String> it = set.iterator();
+        String member = it.next();
+        it.remove();
+        return member;
+    }
+
+    /**
+     * @return the members of the sorted set with their scores.
+     */
+    public synchronized Map<String, Double> sortedSet(String key) {
+        Map<String, Double> zset = sortedSets.get(key);
+        return zset == null ? new HashMap<String, Double>() : new HashMap<String, Double>(zset);
+    }
+
+    private Long doZadd(String key, double score, String member) {
+        Map<String, Double> zset = sortedSets.get(key);
+        if (zset == null) {
+            zset = new HashMap<String, Double>();
+            sortedSets.put(key, zset);
+        }
+        return zset.put(member, score) == null ? 1L : 0L;
+    }
+
+    private Long doZrem(String key, String member) {
+        Map<String, Double> zset = sortedSets.get(key);
+        if (zset == null || zset.remove(member) == null) {
+            return 0L;
+        }
+        if (zset.isEmpty()) {
+            sortedSets.remove(key);
+        }
+        return 1L;
+    }
+
+    @Override
+    public synchronized Long zadd(String key, double score, String member) {
+        count("zadd");
+        return doZadd(key, score, member);
+    }
+
+    /**
+     * the bounds as numbers, <tt>(</tt> for exclusive, or <tt>-inf</tt> and <tt>+inf</tt>.
+     */
+    @Override
+    public synchronized Set<String> zrangeByScore(String key, String min, String max, int offset, int count) {
+        count("zrangeByScore");
+        List<Map.Entry<String, Double>> members = new ArrayList<Map.Entry<String, Double>>(sortedSet(key).entrySet());
+        Collections.sort(members, new Comparator<Map.Entry<String, Double>>() {
+
+            @Override
+            public int compare(Map.Entry<String, Double> a, Map.Entry<String, Double> b) {
+                int c = Double.compare(a.getValue(), b.getValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            }
+        });
+        Set<String> range = new LinkedHashSet<String>();
+        int skipped = 0;
+        for (Map.Entry<String, Double> member : members) {
+            if (!above(member.getValue(), min) || !above(max, member.getValue())) {
+                continue;
+            }
+            if (skipped++ < offset) {
+                continue;
+            }
+            if (range.size() == count) {
+                break;
+            }
+            range.add(member.getKey());
+        }
+        return range;
+    }
+
+    private static boolean above(double score, String min) {
+        if ("-inf".equals(min)) {
+            return true;
+        }
+        if ("+inf".equals(min)) {
+            return false;
+        }
+        return min.startsWith("(") ? score > Double.parseDouble(min.substring(1)) : score >= Double.parseDouble(min);
+    }
+
+    private static boolean above(String max, double score) {
+        if ("+inf".equals(max)) {
+            return true;
+        }
+        if ("-inf".equals(max)) {
+            return false;
+        }
+        return max.startsWith("(") ? score < Double.parseDouble(max.substring(1)) : score <= Double.parseDouble(max);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <E> E cmd(RedisCmdPair cmdPair) {
+        if ("subscribe".equals(cmdPair.getCmd())) {
+            subscribe((JedisPubSub) cmdPair.getoArgs()[0], (String[]) cmdPair.getoArgs()[1]);
+            return null;
+        }
+        if (!singleNode && cmdPair.getCmd().matches("eval|evalsha|scriptLoad")) {
+            throw new UnsupportedOperationException(cmdPair.getCmd());
+        }
+        synchronized (this) {
+            count(cmdPair.getCmd());
+            try {
+                return (E) exec(cmdPair);
+            } catch (JedisDataException e) {
+                throw new RedisExecExecption(cmdPair.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * blocks until the subscribing thread is interrupted, as there is no connection to unsubscribe on.
+     */
+    private void subscribe(JedisPubSub pubSub, String... channels) {
+        for (String channel : channels) {
+            subscribers.put(pubSub, channel);
+            pubSub.onSubscribe(channel, subscribers.size());
+        }
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.remove(pubSub);
+        }
+    }
+
+    @Override
+    public synchronized List<Object> multi(List<RedisCmdPair> cmds) throws Exception {
+        if (!singleNode) {
+            throw new UnsupportedOperationException("multi");
+        }
+        count("multi");
+        List<Object> replies = new ArrayList<Object>(cmds.size());
+        for (RedisCmdPair cmd : cmds) {
+            try {
+                replies.add(exec(cmd));
+            } catch (JedisDataException e) { // as Transaction.exec does, the error takes the reply's place.
+                replies.add(e);
+            }
+        }
+        return replies;
+    }
+
+    @Override
+    public Response<List<Object>> pipeline(List<RedisCmdPair> cmds) throws Exception {
+        throw new UnsupportedOperationException("pipeline");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object exec(RedisCmdPair cmdPair) {
+        String cmd = cmdPair.getCmd();
+        Object[] args = cmdPair.getoArgs();
+        if (args.length > 0 && args[0] instanceof byte[]) {
+            return execBinary(cmd, args);
+        }
+        if ("hget".equals(cmd)) {
+            return doHget((String) args[0], (String) args[1]);
+        }
+        if ("hset".equals(cmd)) {
+            return doHset((String) args[0], (String) args[1], (String) args[2]);
+        }
+        if ("hdel".equals(cmd)) {
+            return doHdel((String) args[0], (String[]) args[1]);
+        }
+        if ("hmset".equals(cmd)) {
+            return doHmset((String) args[0], (Map<String, String>) args[1]);
+        }
+        if ("zadd".equals(cmd)) {
+            return doZadd((String) args[0], ((Number) args[1]).doubleValue(), (String) args[2]);
+        }
+        if ("publish".equals(cmd)) {
+            long n = 0;
+            for (Map.Entry<JedisPubSub, String> subscriber : subscribers.entrySet()) {
+                if (subscriber.getValue().equals(args[0])) {
+                    subscriber.getKey().onMessage((String) args[0], (String) args[1]);
+                    n++;
+                }
+            }
+            return n;
+        }
+        if ("scriptLoad".equals(cmd)) {
+            String sha = new RedisScript((String) args[0]).getSha();
+            loaded.add(sha);
+            return sha;
+        }
+        if ("eval".equals(cmd)) {
+            String sha = new RedisScript((String) args[0]).getSha();
+            loaded.add(sha);
+            return script(sha, (List<String>) args[1], (List<String>) args[2]);
+        }
+        if ("evalsha".equals(cmd)) {
+            String sha = (String) args[0];
+            if (!loaded.contains(sha)) {
+                throw new JedisDataException("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            return script(sha, (List<String>) args[1], (List<String>) args[2]);
+        }
+        throw new UnsupportedOperationException(cmd + " " + Arrays.toString(args));
+    }
+
+    /**
+     * the binary commands: keys and fields are text, values are held as ISO-8859-1 strings so every byte
+     * survives.
+     */
+    @SuppressWarnings("unchecked")
+    private Object execBinary(String cmd, Object[] args) {
+        if ("hset".equals(cmd)) {
+            return doHset(text(args[0]), text(args[1]), bytes((byte[]) args[2]));
+        }
+        if ("hmset".equals(cmd)) {
+            Map<String, String> hash = new LinkedHashMap<String, String>();
+            for (Map.Entry<byte[], byte[]> field : ((Map<byte[], byte[]>) args[1]).entrySet()) {
+                hash.put(text(field.getKey()), bytes(field.getValue()));
+            }
+            return doHmset(text(args[0]), hash);
+        }
+        if ("hmget".equals(cmd)) {
+            List<byte[]> vals = new ArrayList<byte[]>();
+            for (byte[] field : (byte[][]) args[1]) {
+                String val = doHget(text(args[0]), text(field));
+                vals.add(val == null ? null : bytes(val));
+            }
+            return vals;
+        }
+        if ("eval".equals(cmd) || "evalsha".equals(cmd)) {
+            List<String> keys = new ArrayList<String>();
+            for (byte[] key : (List<byte[]>) args[1]) {
+                keys.add(text(key));
+            }
+            List<String> argv = new ArrayList<String>();
+            for (byte[] arg : (List<byte[]>) args[2]) {
+                argv.add(text(arg));
+            }
+            String sha = "eval".equals(cmd) ? new RedisScript(text(args[0])).getSha() : text(args[0]);
+            Object reply = exec(new RedisCmdPair(cmd, new Object[] {"eval".equals(cmd) ? text(args[0]) : sha, keys, argv}));
+            if (!(reply instanceof List)) {
+                return reply == null ? null : bytes((String) reply);
+            }
+            List<byte[]> replies = new ArrayList<byte[]>();
+            for (String r : (List<String>) reply) {
+                replies.add(bytes(r));
+            }
+            return replies;
+        }
+        throw new UnsupportedOperationException(cmd + " " + Arrays.toString(args));
+    }
+
+    private static String text(Object bytes) {
+        return new String((byte[]) bytes, UTF8);
+    }
+
+    private static String bytes(byte[] bytes) {
+        return new String(bytes, LATIN1);
+    }
+
+    private static byte[] bytes(String bytes) {
+        return bytes.getBytes(LATIN1);
+    }
+
+    private Object script(String sha, List<String> keys, List<String> args) {
+        if (RedisScript.RELOCATE.getSha().equals(sha)) {
+            String old = doHget(keys.get(0), args.get(0));
+            if (old != null && !old.equals(args.get(1))) {
+                doHdel(args.get(2) + old, args.get(0));
+            }
+            doHset(keys.get(0), args.get(0), args.get(1));
+            return old;
+        }
+        if (RedisScript.REMOVE.getSha().equals(sha)) {
+            String old = doHget(keys.get(0), args.get(0));
+            if (old == null) {
+                return null;
+            }
+            doHdel(keys.get(0), args.get(0));
+            doHdel(args.get(1) + old, args.get(0));
+            return old;
+        }
+        if (RedisScript.DRAIN.getSha().equals(sha)) {
+            List<String> vals = new ArrayList<String>();
+            Map<String, String> hash = hashes.get(keys.get(0));
+            int count = Integer.parseInt(args.get(0));
+            if (hash == null) { // unindexed once found empty.
+                if (keys.size() > 1) {
+                    doZrem(keys.get(1), args.get(1));
+                }
+                return vals;
+            }
+            Iterator<String> it = hash.values().iterator();
+            while (it.hasNext() && vals.size() < count) {
+                vals.add(it.next());
+                it.remove();
+            }
+            dropIfEmpty(keys.get(0));
+            return vals;
+        }
+        if (RedisScript.FENCED_WRITE.getSha().equals(sha)) {
+            String fenced = doHget(keys.get(0), "token");
+            if (fenced != null && Long.parseLong(fenced) > Long.parseLong(args.get(0))) {
+                return fenced;
+            }
+            Map<String, String> state = new LinkedHashMap<String, String>();
+            for (int i = 3; i + 1 < args.size(); i += 2) {
+                state.put(args.get(i), args.get(i + 1));
+            }
+            doHmset(keys.get(0), state);
+            if (!args.get(1).isEmpty()) {
+                exec(new RedisCmdPair("publish", new Object[] {args.get(1), args.get(2)}));
+            }
+            return null;
+        }
+        throw new JedisDataException("NOSCRIPT unknown script " + sha);
+    }
+
+}
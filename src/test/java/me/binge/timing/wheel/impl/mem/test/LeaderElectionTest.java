@@ -0,0 +1,307 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import static me.binge.timing.wheel.utils.RedisConstant.currCycleKey;
+import static me.binge.timing.wheel.utils.RedisConstant.currIdxKey;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.CURRENT_IDX_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.wheelPath;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.impl.redis.RedisTimingWheel;
+import me.binge.timing.wheel.impl.zookeeper.ZookeeperStore;
+import me.binge.timing.wheel.impl.zookeeper.ZookeeperTimingWheel;
+import me.binge.timing.wheel.tick.FencedTickCondition;
+import me.binge.timing.wheel.tick.FencingException;
+import me.binge.timing.wheel.tick.LeaderElectionTickCondition;
+import me.binge.timing.wheel.tick.TickCondition;
+
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * The leader elected tick condition against an in-process server: exactly one of three nodes ticks, ticking
+ * costs no write, a closed leader is followed at once and a paused one within a second, and a tick state
+ * written under a newer fencing token refuses an older one, on the zookeeper and on the redis wheel.
+ */
+public class LeaderElectionTest {
+
+    private static final long LEASE_MILLIS = 400;
+
+    public static void main(String[] args) throws Exception {
+        EmbeddedZookeeper zookeeper = new EmbeddedZookeeper();
+        ZkClient[] clients = new ZkClient[3];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new ZkClient(zookeeper.getConnectString(), 5000, 5000);
+        }
+        try {
+            election(clients);
+            pausedLeader(clients);
+            fencing(clients[0], clients[1]);
+            redisFencing();
+        } finally {
+            for (ZkClient client : clients) {
+                client.close();
+            }
+            zookeeper.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private static void election(ZkClient[] clients) throws Exception {
+        LeaderElectionTickCondition[] nodes = new LeaderElectionTickCondition[clients.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new LeaderElectionTickCondition("election-test", clients[i], LEASE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        int leader = awaitLeader(nodes, -1, 2000);
+        check(leader >= 0, "no leader elected");
+        Thread.sleep(LEASE_MILLIS);
+        check(leaders(nodes) == 1, "leaders " + leaders(nodes));
+
+        ZookeeperStore store = new ZookeeperStore(clients[0]);
+        String path = candidateOf(clients[0], nodes[leader]);
+        Stat before = new Stat();
+        store.read(path, before);
+        long start = System.nanoTime();
+        for (int i = 0; i < 100000; i++) {
+            check(nodes[leader].tick(), "leader lost the tick at " + i);
+        }
+        long took = System.nanoTime() - start;
+        Stat after = new Stat();
+        store.read(path, after);
+        long heartbeats = TimeUnit.NANOSECONDS.toMillis(took) / (LEASE_MILLIS / 4) + 2;
+        System.out.println("100000 ticks in " + TimeUnit.NANOSECONDS.toMicros(took) + "us, "
+                + (after.getVersion() - before.getVersion()) + " writes");
+        check(after.getVersion() - before.getVersion() <= heartbeats, "ticking wrote " + (after.getVersion() - before.getVersion()) + " times");
+        check(TimeUnit.NANOSECONDS.toMillis(took) < 500, "ticking took " + TimeUnit.NANOSECONDS.toMillis(took) + "ms");
+
+        long token = nodes[leader].fencingToken();
+        start = System.nanoTime();
+        nodes[leader].close();
+        int next = awaitLeader(nodes, leader, 1000);
+        long failover = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("closed leader followed in " + failover + "ms");
+        check(next >= 0 && next != leader, "no leader after close");
+        check(failover < 200, "failover after close took " + failover + "ms");
+        check(nodes[next].fencingToken() > token, "token did not grow: " + token + " -> " + nodes[next].fencingToken());
+        for (LeaderElectionTickCondition node : nodes) {
+            node.close();
+        }
+    }
+
+    private static void pausedLeader(ZkClient[] clients) throws Exception {
+        Pausable paused = new Pausable("pause-test", clients[0]);
+        check(awaitLeader(new LeaderElectionTickCondition[] {paused}, -1, 2000) == 0, "first node did not lead");
+        LeaderElectionTickCondition other = new LeaderElectionTickCondition("pause-test", clients[1], LEASE_MILLIS, TimeUnit.MILLISECONDS);
+        Thread.sleep(LEASE_MILLIS);
+        check(!other.tick(), "both lead");
+
+        long start = System.nanoTime();
+        paused.paused = true;
+        int next = awaitLeader(new LeaderElectionTickCondition[] {other}, -1, 3000);
+        long failover = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("paused leader replaced in " + failover + "ms");
+        check(next == 0, "paused leader not replaced");
+        check(failover < 1000, "failover took " + failover + "ms");
+        check(!paused.tick() && paused.fencingToken() < 0, "paused leader still ticks");
+
+        paused.paused = false;
+        Thread.sleep(LEASE_MILLIS);
+        check(other.tick() && !paused.tick(), "leadership did not stay with the new leader");
+        paused.close();
+        other.close();
+    }
+
+    private static void fencing(ZkClient zkClient, ZkClient otherClient) throws Exception {
+        Fixed stale = new Fixed(5);
+        Fixed current = new Fixed(7);
+        Probe old = new Probe("fence-test", stale, zkClient);
+        Probe leader = new Probe("fence-test", current, otherClient);
+
+        old.advance(1);
+        leader.advance(2);
+        leader.advance(3);
+        boolean fenced = false;
+        try {
+            old.advance(2);
+        } catch (FencingException e) {
+            fenced = e.getToken() == 5 && e.getFencedBy() == 7;
+        }
+        check(fenced, "stale token was not fenced off");
+        ZookeeperStore store = new ZookeeperStore(zkClient);
+        String path = wheelPath("fence-test") + "/" + CURRENT_IDX_NODE_NAME;
+        String state = new String(store.read(path), StandardCharsets.UTF_8);
+        check(state.startsWith("3_") && state.endsWith("_7"), "tick state " + state);
+
+        stale.token = -1;
+        boolean refused = false;
+        try {
+            old.advance(4);
+        } catch (FencingException e) {
+            refused = true;
+        }
+        check(refused, "lost tick was written");
+
+        stale.token = 9; // a newer leader takes over from whatever was written.
+        old.advance(4);
+        check(new String(store.read(path), StandardCharsets.UTF_8).endsWith("_9"), "newer token not written");
+    }
+
+    private static void redisFencing() throws Exception {
+        FakeRedisExecutor redis = new FakeRedisExecutor();
+        Fixed stale = new Fixed(5);
+        Fixed current = new Fixed(7);
+        RedisProbe old = new RedisProbe("fence-test", stale, redis);
+        RedisProbe leader = new RedisProbe("fence-test", current, redis);
+
+        old.advance(1);
+        leader.advance(2);
+        leader.advance(3);
+        boolean fenced = false;
+        try {
+            old.advance(2);
+        } catch (FencingException e) {
+            fenced = e.getToken() == 5 && e.getFencedBy() == 7;
+        }
+        check(fenced, "stale token was not fenced off on redis");
+        Map<String, String> state = redis.hash(currIdxKey());
+        check("3".equals(state.get("idx")) && "7".equals(state.get("token")), "redis tick state " + state);
+        leader.newCycle();
+        fenced = false;
+        try {
+            old.newCycle();
+        } catch (FencingException e) {
+            fenced = true;
+        }
+        check(fenced && "7".equals(redis.hash(currCycleKey()).get("token")), "stale cycle written " + redis.hash(currCycleKey()));
+
+        stale.token = 9; // a newer leader takes over from whatever was written.
+        old.advance(4);
+        check("9".equals(redis.hash(currIdxKey()).get("token")), "newer token not written on redis");
+
+        RedisProbe plain = new RedisProbe("fence-test", current, redis);
+        boolean refused = false;
+        try {
+            plain.setPlainCommands(true);
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check(refused, "plain commands under a fenced tick condition");
+        System.out.println("redis tick state fenced");
+    }
+
+    private static int awaitLeader(LeaderElectionTickCondition[] nodes, int except, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (i != except && nodes[i].isLeader()) {
+                    return i;
+                }
+            }
+            Thread.sleep(1);
+        }
+        return -1;
+    }
+
+    private static int leaders(LeaderElectionTickCondition[] nodes) {
+        int n = 0;
+        for (LeaderElectionTickCondition node : nodes) {
+            if (node.isLeader()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static String candidateOf(ZkClient zkClient, LeaderElectionTickCondition node) {
+        String path = node.getElectionPath();
+        for (String child : zkClient.getChildren(path)) {
+            if (Long.parseLong(child.substring(2)) == node.fencingToken()) {
+                return path + "/" + child;
+            }
+        }
+        throw new IllegalStateException("no node for token " + node.fencingToken());
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * stops showing it is alive while paused, as a leader stuck in a long GC pause.
+     */
+    private static class Pausable extends LeaderElectionTickCondition {
+
+        volatile boolean paused;
+
+        Pausable(String workPath, ZkClient zkClient) {
+            super(workPath, zkClient, LEASE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        protected void renew(long now) {
+            if (!paused) {
+                super.renew(now);
+            }
+        }
+    }
+
+    private static class Fixed implements FencedTickCondition {
+
+        volatile long token;
+
+        Fixed(long token) {
+            this.token = token;
+        }
+
+        @Override
+        public boolean tick() {
+            return token >= 0;
+        }
+
+        @Override
+        public void untick() {
+        }
+
+        @Override
+        public long fencingToken() {
+            return token;
+        }
+    }
+
+    /**
+     * writes the tick state straight away, as the tick thread does.
+     */
+    /**
+     * writes the redis tick state straight away, as the tick thread does.
+     */
+    private static class RedisProbe extends RedisTimingWheel<AgeEntry> {
+
+        RedisProbe(String name, TickCondition tickCondition, FakeRedisExecutor redis) {
+            super(100, 16, TimeUnit.MILLISECONDS, name, redis, tickCondition);
+        }
+
+        void advance(int idx) {
+            setCurrentTickIndex(idx);
+        }
+
+        void newCycle() {
+            incrCurrentCycle();
+        }
+    }
+
+    private static class Probe extends ZookeeperTimingWheel<AgeEntry> {
+
+        Probe(String name, TickCondition tickCondition, ZkClient zkClient) {
+            super(100, 16, TimeUnit.MILLISECONDS, name, tickCondition, zkClient);
+        }
+
+        void advance(int idx) {
+            setCurrentTickIndex(idx);
+        }
+    }
+
+}
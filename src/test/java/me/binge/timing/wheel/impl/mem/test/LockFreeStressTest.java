@@ -0,0 +1,110 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+
+/**
+ * Many producers add, re-add and remove entries racing with their expiration on a 1ms lock-free wheel.
+ * Every round of an entry ends either by a successful remove or by exactly one expiration, so at the end
+ * the expirations of every entry must equal its rounds minus its successful removes.
+ */
+public class LockFreeStressTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int ENTRIES = 64;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        final Map<AgeEntry, AtomicInteger> expired = new ConcurrentHashMap<AgeEntry, AtomicInteger>();
+        final TimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(1, 16, TimeUnit.MILLISECONDS, "stress", Mode.LOCK_FREE, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                expired.get(entry).incrementAndGet();
+            }
+        });
+        wheel.start();
+
+        final Map<AgeEntry, AtomicInteger> expected = new ConcurrentHashMap<AgeEntry, AtomicInteger>();
+        final AtomicLong lost = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final List<AgeEntry> entries = new ArrayList<AgeEntry>();
+            for (int i = 0; i < ENTRIES; i++) {
+                AgeEntry e = new AgeEntry(i);
+                entries.add(e);
+                expired.put(e, new AtomicInteger());
+                expected.put(e, new AtomicInteger());
+            }
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        for (int r = 0; r < ROUNDS; r++) {
+                            for (AgeEntry e : entries) {
+                                int before = expired.get(e).get();
+                                if (random.nextBoolean()) { // reschedule a live entry before it could expire.
+                                    wheel.add(e, 10, TimeUnit.SECONDS);
+                                }
+                                wheel.add(e, random.nextInt(1, 4), TimeUnit.MILLISECONDS);
+                                if (random.nextBoolean()) {
+                                    TimeUnit.MICROSECONDS.sleep(random.nextInt(0, 4000));
+                                }
+                                if (wheel.remove(e)) {
+                                    continue;
+                                }
+                                expected.get(e).incrementAndGet();
+                                long deadline = System.currentTimeMillis() + 1000;
+                                while (expired.get(e).get() == before && System.currentTimeMillis() < deadline) {
+                                    Thread.yield();
+                                }
+                                if (expired.get(e).get() == before) {
+                                    lost.incrementAndGet();
+                                }
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "producer-" + p).start();
+        }
+
+        done.await();
+        TimeUnit.MILLISECONDS.sleep(200);
+        wheel.stop();
+
+        long doubled = 0;
+        for (Map.Entry<AgeEntry, AtomicInteger> e : expected.entrySet()) {
+            int fired = expired.get(e.getKey()).get();
+            if (fired > e.getValue().get()) {
+                doubled += fired - e.getValue().get();
+            }
+            if (wheel.exist(e.getKey())) {
+                lost.incrementAndGet();
+            }
+        }
+        System.out.println("rounds=" + PRODUCERS * ENTRIES * ROUNDS + ", lost=" + lost.get() + ", doubled=" + doubled);
+        if (lost.get() != 0 || doubled != 0) {
+            throw new AssertionError("lost or double expirations");
+        }
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,101 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import me.binge.timing.wheel.expire.LongExpiration;
+import me.binge.timing.wheel.impl.mem.LongTimingWheel;
+
+/**
+ * Ids scheduled on a 10ms wheel spanning 160ms, from a capacity of 16 so the arrays grow: every id still
+ * scheduled expires exactly once, cancelled ids never, a rescheduled id at its new time, ids due beyond
+ * one revolution in their round. Once grown, scheduling and cancelling allocate nothing.
+ */
+public class LongTimingWheelTest {
+
+    private static final int IDS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        final AtomicIntegerArray expired = new AtomicIntegerArray(IDS);
+        final long[] firedAt = new long[IDS];
+        LongTimingWheel wheel = new LongTimingWheel(10, 16, TimeUnit.MILLISECONDS, "long", new LongExpiration() {
+
+            @Override
+            public void expired(long id) {
+                int i = (int) (id - Integer.MAX_VALUE);
+                expired.incrementAndGet(i);
+                firedAt[i] = System.currentTimeMillis();
+            }
+        }, 16);
+        wheel.start();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < IDS; i++) {
+            wheel.schedule(id(i), i % 3 == 0 ? 500 : 100 + i % 50, TimeUnit.MILLISECONDS);
+        }
+        int cancelled = 0;
+        for (int i = 0; i < IDS; i += 7) {
+            check(wheel.cancel(id(i)), "cancel " + i);
+            cancelled++;
+        }
+        check(!wheel.cancel(id(0)), "cancelled twice");
+        check(!wheel.exist(id(0)) && wheel.exist(id(1)), "exist");
+        wheel.schedule(id(1), 400, TimeUnit.MILLISECONDS);
+        check(wheel.size() == IDS - cancelled, "size " + wheel.size());
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (wheel.size() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        for (int i = 0; i < IDS; i++) {
+            check(expired.get(i) == (i % 7 == 0 ? 0 : 1), i + " expired " + expired.get(i) + " times");
+        }
+        check(firedAt[1] - start >= 400, "rescheduled fired after " + (firedAt[1] - start));
+        check(firedAt[3] - start >= 500, "beyond one revolution fired after " + (firedAt[3] - start));
+
+        long allocated = steadyState(wheel);
+        wheel.stop();
+        System.out.println("expired=" + (IDS - cancelled) + ", cancelled=" + cancelled + ", allocated in steady state=" + allocated + " bytes");
+        check(allocated < 1024, "allocated " + allocated);
+        System.exit(0);
+    }
+
+    /**
+     * @return the bytes allocated by this thread scheduling, moving and cancelling ids the arrays already hold room for.
+     */
+    private static long steadyState(LongTimingWheel wheel) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long self = Thread.currentThread().getId();
+        for (int round = 0; round < 2; round++) {
+            long before = threads.getThreadAllocatedBytes(self);
+            for (int n = 0; n < 100; n++) {
+                for (int i = 0; i < IDS; i++) {
+                    wheel.schedule(id(i), 1, TimeUnit.HOURS);
+                }
+                for (int i = 0; i < IDS; i += 2) {
+                    wheel.schedule(id(i), 2, TimeUnit.HOURS);
+                }
+                for (int i = 0; i < IDS; i++) {
+                    wheel.cancel(id(i));
+                }
+            }
+            long allocated = threads.getThreadAllocatedBytes(self) - before;
+            if (round == 1) {
+                return allocated;
+            }
+        }
+        return -1;
+    }
+
+    private static long id(int i) {
+        return Integer.MAX_VALUE + (long) i;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Backpressure;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.expire.ExpirationDispatchers;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.metrics.WheelMetrics;
+
+/**
+ * Reads the metrics of a 10ms wheel through JMX: the live entries while scheduled, one expiring slot holding
+ * them all, every expiration counted with its lateness, the failing callbacks counted, the queue depth of a
+ * blocked dispatcher, and the MBean gone once the wheel stops.
+ */
+public class MetricsTest {
+
+    private static final int ENTRIES = 100;
+    private static final int FAILING = 10;
+
+    public static void main(String[] args) throws Exception {
+        final CountDownLatch fired = new CountDownLatch(ENTRIES);
+        final CountDownLatch release = new CountDownLatch(1);
+        TimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(10, 16, TimeUnit.MILLISECONDS, "metrics-test", new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                fired.countDown();
+                if (entry.getAge() < FAILING) {
+                    throw new IllegalStateException("callback failure " + entry.getAge());
+                }
+            }
+        });
+        wheel.setExpirationDispatcher(ExpirationDispatchers.bounded("metrics-test", 1, ENTRIES, Backpressure.BLOCK), 1000);
+        WheelMetrics metrics = wheel.enableMetrics();
+        wheel.start();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(WheelMetrics.DOMAIN + ":type=TimingWheel,name=\"metrics-test\"");
+        List<AgeEntry> entries = new ArrayList<AgeEntry>();
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.add(new AgeEntry(i));
+        }
+        wheel.addAll(entries, 50, TimeUnit.MILLISECONDS);
+        long live = (Long) server.getAttribute(name, "LiveEntries");
+        check("live entries", live == ENTRIES, live);
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (metrics.getExpirationQueueDepth() < ENTRIES - 1 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        int depth = (Integer) server.getAttribute(name, "ExpirationQueueDepth");
+        check("queue depth", depth == ENTRIES - 1, depth); // one of them is running, blocked.
+        release.countDown();
+        if (!fired.await(5, TimeUnit.SECONDS)) {
+            throw new AssertionError("not fired " + fired.getCount());
+        }
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        long expired = (Long) server.getAttribute(name, "Expired");
+        long failures = (Long) server.getAttribute(name, "CallbackFailures");
+        long slotMax = (Long) server.getAttribute(name, "SlotPopulationMax");
+        long latenessMax = (Long) server.getAttribute(name, "ExpiryLatenessMaxMicros");
+        long ticks = (Long) server.getAttribute(name, "Ticks");
+        live = (Long) server.getAttribute(name, "LiveEntries");
+        System.out.println("expired=" + expired + ", failures=" + failures + ", slot max=" + slotMax + ", ticks=" + ticks
+                + ", expiry lateness p50=" + metrics.getExpiryLateness50thMicros() + "us max=" + latenessMax
+                + "us, tick duration p99=" + metrics.getTickDuration99thMicros() + "us, live=" + live);
+        check("expired", expired == ENTRIES, expired);
+        check("callback failures", failures == FAILING, failures);
+        check("slot population", slotMax == ENTRIES, slotMax);
+        check("ticks", ticks > 0, ticks);
+        check("live entries after expiry", live == 0, live);
+
+        wheel.stop();
+        check("unregistered", !server.isRegistered(name), name);
+        System.exit(0);
+    }
+
+    private static void check(String what, boolean ok, Object actual) {
+        if (!ok) {
+            throw new AssertionError(what + ": " + actual);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.expire.ExpirationDispatchers;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.tick.TickListener;
+
+/**
+ * A 100 microseconds wheel: entries fire within a few ticks of their delay, and after the tick thread is
+ * stalled for 20ms by a slow expiration the missed ticks are all processed, back to back, none skipped.
+ */
+public class MicroTickTest {
+
+    private static final int ENTRIES = 200;
+
+    public static void main(String[] args) throws Exception {
+        final Map<AgeEntry, Long> due = new ConcurrentHashMap<AgeEntry, Long>();
+        final AtomicLong maxError = new AtomicLong();
+        final AtomicLong early = new AtomicLong();
+        final CountDownLatch fired = new CountDownLatch(ENTRIES + 1);
+        final TimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(100, 64, TimeUnit.MICROSECONDS, "micro", new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                long now = System.nanoTime();
+                if (entry.getAge() < 0) { // stalls the tick thread, expirations run inline.
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    long error = now - due.get(entry);
+                    if (error < -TimeUnit.MICROSECONDS.toNanos(100)) {
+                        early.incrementAndGet();
+                    }
+                    long max;
+                    while ((max = maxError.get()) < error && !maxError.compareAndSet(max, error)) {
+                    }
+                }
+                fired.countDown();
+            }
+        });
+        wheel.setExpirationDispatcher(ExpirationDispatchers.inline(), 1000);
+        final AtomicLong ticks = new AtomicLong();
+        final AtomicLong lastTick = new AtomicLong(-1);
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong maxLateness = new AtomicLong();
+        wheel.setTickListener(new TickListener() {
+
+            @Override
+            public void ticked(long tick, long latenessNanos, long durationNanos) {
+                ticks.incrementAndGet();
+                long last = lastTick.getAndSet(tick);
+                if (last >= 0 && tick != last && tick != last + 1) {
+                    skipped.incrementAndGet();
+                }
+                if (latenessNanos > maxLateness.get()) {
+                    maxLateness.set(latenessNanos);
+                }
+            }
+        });
+        wheel.start();
+        TimeUnit.MILLISECONDS.sleep(10);
+
+        for (int i = 0; i < ENTRIES; i++) {
+            AgeEntry e = new AgeEntry(i);
+            long delay = TimeUnit.MICROSECONDS.toNanos(300 + (i % 50) * 100);
+            due.put(e, System.nanoTime() + delay);
+            wheel.add(e, delay, TimeUnit.NANOSECONDS);
+            TimeUnit.MICROSECONDS.sleep(50);
+        }
+        long stallStart = System.nanoTime();
+        wheel.add(new AgeEntry(-1), 100, TimeUnit.MICROSECONDS);
+        if (!fired.await(5, TimeUnit.SECONDS)) {
+            throw new AssertionError("not fired " + fired.getCount());
+        }
+        TimeUnit.MILLISECONDS.sleep(30);
+        long elapsedTicks = (System.nanoTime() - stallStart) / TimeUnit.MICROSECONDS.toNanos(100);
+        long ticksBefore = ticks.get();
+        wheel.stop();
+
+        System.out.println("max error=" + TimeUnit.NANOSECONDS.toMicros(maxError.get()) + "us, early=" + early.get()
+                + ", max lateness=" + TimeUnit.NANOSECONDS.toMicros(maxLateness.get()) + "us, skipped=" + skipped.get()
+                + ", ticks=" + ticksBefore + " (>= " + elapsedTicks + " expected since the stall)");
+        if (early.get() != 0 || skipped.get() != 0) {
+            throw new AssertionError("early or skipped ticks");
+        }
+        if (maxLateness.get() < TimeUnit.MILLISECONDS.toNanos(20)) {
+            throw new AssertionError("the stall was not seen as lateness");
+        }
+        if (ticksBefore < elapsedTicks) {
+            throw new AssertionError("ticks lost after the stall");
+        }
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,136 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.impl.mmap.MmapTimingWheel;
+
+/**
+ * A child JVM schedules 2000 entries for 1500ms on a journaled wheel with 64KB segments, removes every
+ * tenth, touches another tenth to 3000ms and lets 50 short ones expire, then halts without stopping. The
+ * wheel reopened on the same directory here must expire each remaining entry exactly once and not before
+ * its deadline, none of the removed or expired ones, and have checkpointed the journal down to a few
+ * segments.
+ */
+public class MmapTimingWheelTest {
+
+    private static final int ENTRIES = 2000;
+    private static final int SHORT = 50;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "child".equals(args[0])) {
+            child(new File(args[1]));
+            return;
+        }
+        for (Mode mode : new Mode[] {Mode.DEFAULT, Mode.INTRUSIVE}) {
+            run(mode);
+        }
+        System.exit(0);
+    }
+
+    private static MmapTimingWheel<AgeEntry> wheel(File dir, Mode mode, Expiration<AgeEntry> expiration) {
+        MmapTimingWheel<AgeEntry> wheel = new MmapTimingWheel<AgeEntry>(50, 20, TimeUnit.MILLISECONDS, "mmap-" + mode, dir,
+                64 * 1024, mode, null, expiration);
+        wheel.setEntryCodecer(new AgeEntryCodecer());
+        wheel.setCheckpointSegments(2);
+        return wheel;
+    }
+
+    private static void child(File dir) throws Exception {
+        Mode mode = Mode.valueOf(System.getProperty("mode"));
+        MmapTimingWheel<AgeEntry> wheel = wheel(dir, mode, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+            }
+        });
+        wheel.start();
+        System.out.println(System.currentTimeMillis());
+        for (int i = 0; i < ENTRIES; i++) {
+            AgeEntry e = new AgeEntry(i);
+            wheel.add(e, 1500, TimeUnit.MILLISECONDS);
+            if (i % 10 == 0) {
+                wheel.remove(e);
+            } else if (i % 10 == 1) {
+                wheel.touch(e, 3000, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (int i = 0; i < SHORT; i++) {
+            wheel.add(new AgeEntry(ENTRIES + i), 100, TimeUnit.MILLISECONDS);
+        }
+        TimeUnit.MILLISECONDS.sleep(500);
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void run(Mode mode) throws Exception {
+        File dir = Files.createTempDirectory("mmap-wheel").toFile();
+        Process child = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-Dmode=" + mode, "-cp",
+                System.getProperty("java.class.path"), MmapTimingWheelTest.class.getName(), "child", dir.getPath())
+                .redirectErrorStream(true).start();
+        long scheduled = 0;
+        BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream(), "UTF-8"));
+        for (String line; (line = out.readLine()) != null;) {
+            if (scheduled == 0 && line.matches("\\d+")) {
+                scheduled = Long.parseLong(line);
+            }
+        }
+        check(child.waitFor() == 0 && scheduled > 0, mode + " child failed");
+
+        final Map<Long, Long> fired = new ConcurrentHashMap<Long, Long>();
+        final AtomicInteger doubled = new AtomicInteger();
+        MmapTimingWheel<AgeEntry> wheel = wheel(dir, mode, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                if (fired.put(entry.getAge(), System.currentTimeMillis()) != null) {
+                    doubled.incrementAndGet();
+                }
+            }
+        });
+        wheel.start();
+        long recovered = wheel.getRecoveredEntries();
+        int segments = wheel.getJournal().segments().size();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (fired.size() < ENTRIES * 9 / 10 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        TimeUnit.MILLISECONDS.sleep(200);
+        wheel.stop();
+
+        System.out.println(mode + ": recovered=" + recovered + ", expired=" + fired.size() + ", doubled=" + doubled
+                + ", segments=" + segments);
+        check(recovered == ENTRIES * 9 / 10, mode + " recovered " + recovered);
+        check(doubled.get() == 0, mode + " doubled " + doubled);
+        for (long i = 0; i < ENTRIES + SHORT; i++) {
+            Long at = fired.get(i);
+            if (i >= ENTRIES || i % 10 == 0) {
+                check(at == null, mode + " removed or expired entry " + i + " expired again");
+            } else {
+                long due = scheduled + (i % 10 == 1 ? 3000 : 1500);
+                check(at != null, mode + " entry " + i + " lost");
+                check(at >= due - 100, mode + " entry " + i + " expired " + (due - at) + "ms early");
+            }
+        }
+        check(segments <= 2, mode + " segments left " + segments);
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
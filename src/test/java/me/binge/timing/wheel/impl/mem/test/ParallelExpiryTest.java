@@ -0,0 +1,130 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.tick.TickListener;
+
+/**
+ * Expires one slot of 200000 entries on a fork join pool in every mode: each entry fires once, the removed
+ * ones never, the touched ones when the touch says, and the slowest tick is at least ten times faster than
+ * with the same slot expired on the tick thread, run first for the comparison. Relative, so a gc pause or a
+ * slower machine does not fail it.
+ */
+public class ParallelExpiryTest {
+
+    private static final int ENTRIES = 200000;
+    private static final int REMOVED = 1000;
+    private static final int TOUCHED = 1000;
+
+    public static void main(String[] args) throws Exception {
+        long serialTick = run(Mode.DEFAULT, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (Mode mode : Mode.values()) {
+            long slowestTick = run(mode, pool);
+            if (slowestTick * 10 > serialTick) {
+                throw new AssertionError(mode + ": a tick took " + TimeUnit.NANOSECONDS.toMicros(slowestTick) + "us, "
+                        + TimeUnit.NANOSECONDS.toMicros(serialTick) + "us on the tick thread");
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * @return the slowest tick once the slot is scheduled, in nanoseconds.
+     */
+    private static long run(Mode mode, ForkJoinPool pool) throws Exception {
+        final ConcurrentHashMap<Long, AtomicInteger> fired = new ConcurrentHashMap<Long, AtomicInteger>();
+        final CountDownLatch done = new CountDownLatch(ENTRIES - REMOVED);
+        final AtomicLong touchedAt = new AtomicLong();
+        final AtomicLong touchedFiredAt = new AtomicLong();
+        final AtomicLong slowestTick = new AtomicLong();
+        MemTimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(10, 512, TimeUnit.MILLISECONDS, "parallel-" + mode, mode,
+                new Expiration<AgeEntry>() {
+
+                    @Override
+                    public void expired(AgeEntry entry) {
+                        AtomicInteger count = fired.get(entry.getAge());
+                        if (count == null) {
+                            AtomicInteger raced = fired.putIfAbsent(entry.getAge(), count = new AtomicInteger());
+                            if (raced != null) {
+                                count = raced;
+                            }
+                        }
+                        count.incrementAndGet();
+                        if (entry.getAge() < TOUCHED) {
+                            touchedFiredAt.compareAndSet(0, System.nanoTime());
+                        }
+                        done.countDown();
+                    }
+                });
+        wheel.setEntryCodecer(new AgeEntryCodecer()); // the off-heap one encodes.
+        if (pool != null) {
+            wheel.setParallelExpiry(pool, 256);
+        }
+        wheel.setTickListener(new TickListener() {
+
+            @Override
+            public void ticked(long tick, long latenessNanos, long durationNanos) {
+                if (touchedAt.get() != 0 && durationNanos > slowestTick.get()) { // once scheduled, adding competes for the cpu.
+                    slowestTick.set(durationNanos);
+                }
+            }
+        });
+        wheel.start();
+
+        List<AgeEntry> entries = new ArrayList<AgeEntry>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.add(new AgeEntry(i));
+        }
+        long start = System.nanoTime();
+        wheel.addAll(entries, 3, TimeUnit.SECONDS);
+        for (int i = ENTRIES - REMOVED; i < ENTRIES; i++) {
+            wheel.remove(entries.get(i));
+        }
+        for (int i = 0; i < TOUCHED; i++) {
+            wheel.touch(entries.get(i), 4, TimeUnit.SECONDS);
+        }
+        touchedAt.set(System.nanoTime());
+        if (!done.await(60, TimeUnit.SECONDS)) {
+            throw new AssertionError(mode + ": not fired " + done.getCount());
+        }
+        long elapsed = System.nanoTime() - start;
+        TimeUnit.MILLISECONDS.sleep(100);
+        wheel.stop();
+
+        int doubled = 0;
+        for (AtomicInteger count : fired.values()) {
+            if (count.get() > 1) {
+                doubled++;
+            }
+        }
+        for (int i = ENTRIES - REMOVED; i < ENTRIES; i++) {
+            if (fired.containsKey((long) i)) {
+                throw new AssertionError(mode + ": removed entry " + i + " expired");
+            }
+        }
+        long touchedLate = TimeUnit.NANOSECONDS.toMillis(touchedFiredAt.get() - touchedAt.get());
+        String label = pool == null ? "serial " + mode : mode.toString();
+        System.out.println(label + ": expired=" + fired.size() + ", doubled=" + doubled + ", touched fired after " + touchedLate
+                + "ms, all fired in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, slowest tick "
+                + TimeUnit.NANOSECONDS.toMicros(slowestTick.get()) + "us");
+        if (fired.size() != ENTRIES - REMOVED || doubled != 0) {
+            throw new AssertionError(mode + ": expired " + fired.size() + ", doubled " + doubled);
+        }
+        if (touchedLate < 3900) {
+            throw new AssertionError(mode + ": touched entries fired " + touchedLate + "ms after the touch");
+        }
+        return slowestTick.get();
+    }
+
+}
@@ -0,0 +1,139 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import static me.binge.timing.wheel.utils.RedisConstant.currCycleKey;
+import static me.binge.timing.wheel.utils.RedisConstant.currIdxKey;
+import static me.binge.timing.wheel.utils.RedisConstant.slotsKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.redis.RedisSlot;
+import me.binge.timing.wheel.impl.redis.RedisTimingWheel;
+import me.binge.timing.wheel.tick.TickListener;
+
+/**
+ * A wheel schedules 5000 entries over 60 slots and stops, then the tick state is moved 1000 cycles on, as
+ * if the wheel had been down while the tick went on. A new wheel on the same redis must expire every
+ * entry exactly once through the slot index, while its tick thread keeps ticking without walking the
+ * older cycles, and leave the index empty. An entry added later to a slot behind the tick is expired by
+ * the next periodic recovery.
+ */
+public class RedisRecoveryTest {
+
+    private static final int ENTRIES = 5000;
+
+    public static void main(String[] args) throws Exception {
+        FakeRedisExecutor redis = new FakeRedisExecutor();
+        final Map<AgeEntry, AtomicInteger> expired = new ConcurrentHashMap<AgeEntry, AtomicInteger>();
+        Expiration<AgeEntry> expiration = new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                AtomicInteger n = expired.get(entry);
+                if (n != null) {
+                    n.incrementAndGet();
+                }
+            }
+        };
+
+        RedisTimingWheel<AgeEntry> before = new RedisTimingWheel<AgeEntry>(10, 16, TimeUnit.MILLISECONDS, "before", redis, null, expiration);
+        before.setScripted(true);
+        before.setEntryCodecer(new AgeEntryCodecer());
+        List<AgeEntry> entries = new ArrayList<AgeEntry>();
+        for (int i = 0; i < ENTRIES; i++) {
+            AgeEntry e = new AgeEntry(i);
+            entries.add(e);
+            expired.put(e, new AtomicInteger());
+        }
+        for (int i = 0; i < 60; i++) {
+            before.addAll(entries.subList(i * ENTRIES / 60, (i + 1) * ENTRIES / 60), 200 + i * 100, TimeUnit.MILLISECONDS);
+        }
+        int indexed = redis.sortedSet(slotsKey()).size();
+        check(indexed > 1, "slots indexed " + indexed);
+        check(before.size() == ENTRIES, "scheduled " + before.size());
+
+        Map<String, String> cycle = redis.hash(currCycleKey());
+        long downCycles = 1000 + (cycle.isEmpty() ? 0 : Long.parseLong(cycle.get("cycle")));
+        Map<String, String> state = new HashMap<String, String>();
+        state.put("cycle", String.valueOf(downCycles));
+        state.put("cycleTime", String.valueOf(System.currentTimeMillis()));
+        redis.hmset(currCycleKey(), state);
+        state = new HashMap<String, String>();
+        state.put("idx", "0");
+        state.put("tickTime", String.valueOf(System.currentTimeMillis()));
+        redis.hmset(currIdxKey(), state);
+
+        final RedisTimingWheel<AgeEntry> after = new RedisTimingWheel<AgeEntry>(10, 16, TimeUnit.MILLISECONDS, "after", redis, null, expiration);
+        after.setScripted(true);
+        after.setEntryCodecer(new AgeEntryCodecer());
+        after.setExpirationBatchSize(256);
+        after.setRecovery(4, 200, TimeUnit.MILLISECONDS);
+        final AtomicLong ticks = new AtomicLong();
+        final AtomicLong slowestTick = new AtomicLong();
+        final AtomicLong tickRoundTrips = new AtomicLong();
+        after.setTickListener(new TickListener() {
+
+            @Override
+            public void ticked(long tick, long latenessNanos, long durationNanos) {
+                ticks.incrementAndGet();
+                slowestTick.set(Math.max(slowestTick.get(), durationNanos));
+                tickRoundTrips.set(redis.ownRoundTrips());
+            }
+        });
+        long start = System.currentTimeMillis();
+        after.start();
+        long deadline = start + 10000;
+        while (fired(expired) < ENTRIES && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        long recovered = System.currentTimeMillis() - start;
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        AgeEntry late = new AgeEntry(-1);
+        expired.put(late, new AtomicInteger());
+        RedisSlot<AgeEntry> behind = (RedisSlot<AgeEntry>) after.workSlot(0, downCycles - 1, 3);
+        behind.add(late);
+        after.getIndicator().put(late, behind);
+        deadline = System.currentTimeMillis() + 2000;
+        while (expired.get(late).get() == 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        after.stop();
+        before.stop();
+
+        long perTick = tickRoundTrips.get() / Math.max(1, ticks.get());
+        System.out.println("recovered " + fired(expired) + " of " + (ENTRIES + 1) + " from " + indexed + " slots in " + recovered
+                + "ms, ticks=" + ticks + ", slowest tick=" + TimeUnit.NANOSECONDS.toMillis(slowestTick.get())
+                + "ms, round trips per tick=" + perTick + ", left indexed=" + redis.sortedSet(slotsKey()).size());
+        for (Map.Entry<AgeEntry, AtomicInteger> e : expired.entrySet()) {
+            check(e.getValue().get() == 1, e.getKey() + " expired " + e.getValue().get() + " times");
+        }
+        check(ticks.get() > 0, "no tick while recovering");
+        check(perTick < 10, "round trips per tick " + perTick);
+        check(redis.sortedSet(slotsKey()).isEmpty(), "left indexed " + redis.sortedSet(slotsKey()));
+        check(after.size() == 0, "left scheduled " + after.size());
+        System.exit(0);
+    }
+
+    private static int fired(Map<AgeEntry, AtomicInteger> expired) {
+        int n = 0;
+        for (AtomicInteger count : expired.values()) {
+            n += count.get() > 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
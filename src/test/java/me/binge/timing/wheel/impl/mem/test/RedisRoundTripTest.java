@@ -0,0 +1,257 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import static me.binge.timing.wheel.utils.RedisConstant.entriesSlotKey;
+import static me.binge.timing.wheel.utils.RedisConstant.slotKeyPrefix;
+import static me.binge.timing.wheel.utils.RedisConstant.slotsKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.redis.RedisSlot;
+import me.binge.timing.wheel.impl.redis.RedisTimingWheel;
+
+/**
+ * Counts the round trips the redis wheel spends per add, remove, batch add and batch remove, plain and scripted, and
+ * checks the slots and the indicator agree afterwards. Reading the tick state (hgetAll) is left out.
+ * Then drains a big slot in batches.
+ */
+public class RedisRoundTripTest {
+
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (boolean scripted : new boolean[] {false, true}) {
+            run(scripted, false);
+        }
+        run(true, true);
+        drain(true);
+        drain(false);
+        tickStateCache();
+        plainCommands();
+        System.exit(0);
+    }
+
+    private static void run(boolean scripted, boolean binary) throws Exception {
+        FakeRedisExecutor redis = new FakeRedisExecutor();
+        final AtomicInteger expired = new AtomicInteger();
+        final AtomicInteger corrupt = new AtomicInteger();
+        RedisTimingWheel<AgeEntry> wheel = new RedisTimingWheel<AgeEntry>(50, 10, TimeUnit.MILLISECONDS, "rt", redis, null, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                expired.incrementAndGet();
+                if (entry.getKey() == null || entry.getAge() < 0 || entry.getAge() >= BATCH) {
+                    corrupt.incrementAndGet();
+                }
+            }
+        });
+        wheel.setScripted(scripted);
+        if (binary) {
+            wheel.setEntryCodecer(new AgeEntryCodecer());
+        }
+
+        AgeEntry warm = new AgeEntry(-1);
+        wheel.add(warm, 200, TimeUnit.MILLISECONDS); // a fresh server does not know the script yet.
+        wheel.remove(warm);
+
+        AgeEntry e = new AgeEntry(0);
+        long add = spent(redis);
+        wheel.add(e, 200, TimeUnit.MILLISECONDS);
+        wheel.add(e, 300, TimeUnit.MILLISECONDS);
+        add = (spent(redis) - add) / 2;
+        long remove = spent(redis);
+        check(wheel.remove(e), "remove a live entry");
+        check(!wheel.remove(e), "remove a removed entry");
+        remove = (spent(redis) - remove) / 2;
+
+        List<AgeEntry> batch = new ArrayList<AgeEntry>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(new AgeEntry(i));
+        }
+        wheel.addAll(batch.subList(0, BATCH / 2), 400, TimeUnit.MILLISECONDS);
+        long addAll = spent(redis);
+        wheel.addAll(batch, 200, TimeUnit.MILLISECONDS); // half of them move out of their slot.
+        addAll = spent(redis) - addAll;
+
+        Map<String, String> index = redis.hash(entriesSlotKey());
+        check(index.size() == BATCH, "indexed " + index.size());
+        int slotted = 0;
+        for (String slotId : new HashSet<String>(index.values())) {
+            slotted += redis.hash(slotKeyPrefix() + slotId).size();
+        }
+        check(slotted == BATCH, "slotted " + slotted);
+
+        List<AgeEntry> removing = new ArrayList<AgeEntry>(batch.subList(0, BATCH / 2));
+        removing.add(new AgeEntry(-1)); // never added.
+        long removeAll = spent(redis);
+        int removed = wheel.removeAll(removing);
+        removeAll = spent(redis) - removeAll;
+        check(removed == BATCH / 2, "removed " + removed);
+        check(redis.hash(entriesSlotKey()).size() == BATCH / 2, "indexed after removeAll " + redis.hash(entriesSlotKey()).size());
+
+        wheel.start();
+        long deadline = System.currentTimeMillis() + 3000;
+        while (expired.get() < BATCH / 2 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+        wheel.stop();
+        check(expired.get() == BATCH / 2, "expired " + expired.get());
+        check(corrupt.get() == 0, "decoded wrong " + corrupt.get());
+
+        System.out.println((scripted ? "scripted" : "plain") + (binary ? " binary" : "") + ": add=" + add + ", remove=" + remove + ", addAll(" + BATCH + ")=" + addAll
+                + ", removeAll(" + removing.size() + ")=" + removeAll);
+        if (scripted) {
+            check(add == 1 && remove == 1 && addAll == 1 && removeAll == 1, "one round trip each");
+        } else {
+            check(addAll == 2, "two round trips per batch");
+            check(removeAll == 3, "three round trips to remove a batch out of one slot");
+        }
+    }
+
+    /**
+     * a slot is drained one batch per round trip, and every entry comes out once. Not scripted, the entries
+     * are taken one by one.
+     */
+    private static void drain(boolean scripted) {
+        FakeRedisExecutor redis = new FakeRedisExecutor(scripted);
+        RedisSlot<AgeEntry> slot = new RedisSlot<AgeEntry>(0, 1, 1, redis, new AgeEntryCodecer(), -1, scripted);
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < 2500; i++) {
+            AgeEntry e = new AgeEntry(i);
+            slot.add(e);
+            keys.add(e.getKey());
+        }
+        long spent = redis.roundTrips();
+        List<Integer> sizes = new ArrayList<Integer>();
+        Iterator<List<AgeEntry>> batches = slot.drain(1000);
+        while (batches.hasNext()) {
+            List<AgeEntry> batch = batches.next();
+            sizes.add(batch.size());
+            for (AgeEntry e : batch) {
+                check(keys.remove(e.getKey()), "drained twice " + e);
+            }
+        }
+        spent = redis.roundTrips() - spent;
+        System.out.println((scripted ? "scripted" : "plain") + " drain(2500): batches=" + sizes + ", roundTrips=" + spent);
+        check(keys.isEmpty(), "not drained " + keys.size());
+        check(sizes.equals(Arrays.asList(1000, 1000, 500)), "batches " + sizes);
+        if (scripted) {
+            check(spent <= 5, "round trips " + spent); // a NOSCRIPT, three batches and the empty answer.
+        } else {
+            check(spent == 2500 + 5, "round trips " + spent); // the keys, three batches, an hdel each and the keys again.
+        }
+        check(redis.hash(slot.getSlotKey()).isEmpty(), "slot left behind");
+    }
+
+    /**
+     * with the tick state cached an add reads nothing from redis, and still expires on time.
+     */
+    private static void tickStateCache() throws Exception {
+        FakeRedisExecutor redis = new FakeRedisExecutor();
+        final AtomicInteger expired = new AtomicInteger();
+        RedisTimingWheel<AgeEntry> wheel = new RedisTimingWheel<AgeEntry>(20, 10, TimeUnit.MILLISECONDS, "cached", redis, null, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                expired.incrementAndGet();
+            }
+        });
+        wheel.setScripted(true);
+        wheel.setTickStateCache(200, TimeUnit.MILLISECONDS);
+        wheel.start();
+        TimeUnit.MILLISECONDS.sleep(100);
+        check(threadNamed("cached-tick-state-subscriber"), "no subscriber named after the wheel");
+
+        wheel.add(new AgeEntry(-1), 100, TimeUnit.MILLISECONDS); // a fresh server does not know the script yet.
+        long spent = redis.ownRoundTrips();
+        for (int i = 0; i < 100; i++) {
+            wheel.add(new AgeEntry(i), 100, TimeUnit.MILLISECONDS);
+        }
+        spent = redis.ownRoundTrips() - spent;
+        long deadline = System.currentTimeMillis() + 3000;
+        while (expired.get() < 101 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        wheel.stop();
+        System.out.println("cached tick state: 100 adds=" + spent + " round trips, expired=" + expired.get());
+        check(spent == 100, "round trips " + spent);
+        check(expired.get() == 101, "expired " + expired.get());
+    }
+
+    /**
+     * on an executor running no transaction, as a sharded one, every write is a plain command and no slot is
+     * indexed, one by one and in batches, the cached tick state included, and scripting is refused.
+     */
+    private static void plainCommands() throws Exception {
+        FakeRedisExecutor redis = new FakeRedisExecutor(false);
+        final AtomicInteger expired = new AtomicInteger();
+        RedisTimingWheel<AgeEntry> wheel = new RedisTimingWheel<AgeEntry>(20, 10, TimeUnit.MILLISECONDS, "plain", redis, null, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                expired.incrementAndGet();
+            }
+        });
+        wheel.setPlainCommands(true);
+        wheel.setTickStateCache(200, TimeUnit.MILLISECONDS);
+        boolean refused = false;
+        try {
+            wheel.setScripted(true);
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check(refused, "scripted with plain commands");
+        wheel.start();
+        List<AgeEntry> batch = new ArrayList<AgeEntry>();
+        for (int i = 0; i < 100; i++) {
+            AgeEntry e = new AgeEntry(i);
+            if (i % 2 == 0) {
+                wheel.add(e, 100, TimeUnit.MILLISECONDS);
+            } else {
+                batch.add(e);
+            }
+        }
+        wheel.addAll(batch.subList(0, 20), 300, TimeUnit.MILLISECONDS);
+        wheel.addAll(batch, 100, TimeUnit.MILLISECONDS); // 20 of them move out of their slot.
+        long deadline = System.currentTimeMillis() + 3000;
+        while (expired.get() < 100 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        TimeUnit.MILLISECONDS.sleep(300);
+        wheel.stop();
+        int indexed = redis.sortedSet(slotsKey()).size();
+        System.out.println("plain commands: expired=" + expired.get() + ", slots indexed=" + indexed);
+        check(expired.get() == 100, "expired " + expired.get());
+        check(indexed == 0, "slots indexed " + indexed);
+        check(redis.hash(entriesSlotKey()).isEmpty(), "entries left " + redis.hash(entriesSlotKey()).size());
+    }
+
+    private static boolean threadNamed(String name) {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long spent(FakeRedisExecutor redis) {
+        return redis.roundTrips() - redis.roundTrips("hgetAll");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import me.binge.timing.wheel.ShardedTimingWheel;
+import me.binge.timing.wheel.TimingWheel;
+import me.binge.timing.wheel.expire.Backpressure;
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+import me.binge.timing.wheel.metrics.WheelMetrics;
+
+/**
+ * Several producers add to a 4 shards wheel and remove part of their entries: every entry lands in the
+ * shard of its key, every remaining entry expires exactly once, and the metrics published through JMX
+ * add up over the shards.
+ */
+public class ShardedTimingWheelTest {
+
+    private static final int SHARDS = 4;
+    private static final int PRODUCERS = 4;
+    private static final int ENTRIES = 2500;
+
+    public static void main(String[] args) throws Exception {
+        final Map<AgeEntry, AtomicInteger> expired = new ConcurrentHashMap<AgeEntry, AtomicInteger>();
+        final ShardedTimingWheel<AgeEntry> wheel = new ShardedTimingWheel<AgeEntry>(SHARDS, 10, 16, TimeUnit.MILLISECONDS, "sharded",
+                Mode.DEFAULT, new Expiration<AgeEntry>() {
+
+                    @Override
+                    public void expired(AgeEntry entry) {
+                        expired.get(entry).incrementAndGet();
+                    }
+                });
+        wheel.setExpirationDispatchers(1, 10000, Backpressure.BLOCK);
+        WheelMetrics metrics = wheel.enableMetrics();
+        wheel.start();
+
+        final List<AgeEntry> removed = new ArrayList<AgeEntry>();
+        final AtomicInteger removeFailed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final List<AgeEntry> entries = new ArrayList<AgeEntry>();
+            for (int i = 0; i < ENTRIES; i++) {
+                AgeEntry e = new AgeEntry(i);
+                entries.add(e);
+                expired.put(e, new AtomicInteger());
+            }
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    List<AgeEntry> removing = new ArrayList<AgeEntry>();
+                    for (AgeEntry e : entries) {
+                        wheel.add(e, ThreadLocalRandom.current().nextInt(500, 1000), TimeUnit.MILLISECONDS);
+                        if (e.getAge() % 10 == 0) {
+                            removing.add(e);
+                        }
+                    }
+                    for (AgeEntry e : removing.subList(0, removing.size() / 2)) {
+                        if (!wheel.remove(e)) {
+                            removeFailed.incrementAndGet();
+                        }
+                    }
+                    List<AgeEntry> rest = removing.subList(removing.size() / 2, removing.size());
+                    if (wheel.removeAll(rest) != rest.size()) {
+                        removeFailed.incrementAndGet();
+                    }
+                    synchronized (removed) {
+                        removed.addAll(removing);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        check(removeFailed.get() == 0, "remove failed " + removeFailed.get());
+        int expected = PRODUCERS * ENTRIES - removed.size();
+        check(wheel.size() <= expected, "size " + wheel.size());
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (metrics.getExpired() < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        int[] perShard = new int[SHARDS];
+        for (Map.Entry<AgeEntry, AtomicInteger> e : expired.entrySet()) {
+            int n = e.getValue().get();
+            check(n == (removed.contains(e.getKey()) ? 0 : 1), e.getKey() + " expired " + n + " times");
+            TimingWheel<AgeEntry> shard = wheel.shardOf(e.getKey());
+            for (int i = 0; i < SHARDS; i++) {
+                if (wheel.getShard(i) == shard) {
+                    perShard[i] += n;
+                }
+            }
+        }
+        System.out.println("expired=" + metrics.getExpired() + " of " + expected + ", per shard=" + Arrays.toString(perShard)
+                + ", live=" + metrics.getLiveEntries() + ", queue=" + metrics.getExpirationQueueDepth());
+        ObjectName name = new ObjectName(WheelMetrics.DOMAIN + ":type=TimingWheel,name=\"sharded\"");
+        long jmxExpired = (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Expired");
+        check(jmxExpired == expected, "jmx expired " + jmxExpired);
+        check(metrics.getExpired() == expected, "metrics expired " + metrics.getExpired());
+        check(metrics.getLiveEntries() == 0, "live " + metrics.getLiveEntries());
+        for (int n : perShard) {
+            check(n > expected / SHARDS / 2, "unbalanced shards");
+        }
+        check(wheel.stop(), "stop");
+        check(!wheel.running(), "still running");
+        check(!ManagementFactory.getPlatformMBeanServer().isRegistered(name), "still registered");
+        System.exit(0);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel;
+import me.binge.timing.wheel.impl.mem.MemTimingWheel.Mode;
+
+/**
+ * Lazy renewal on a 10ms wheel spanning 170ms, in every mode: an entry touched every 20ms outlives its
+ * 100ms life-time and expires about 100ms after the last touch, an entry touched beyond the span of the
+ * wheel goes through the overflow wheel, a shorter touch does not bring the expiry forward, and a removed
+ * entry stays removed once touched.
+ */
+public class TouchTest {
+
+    public static void main(String[] args) throws Exception {
+        for (Mode mode : Mode.values()) {
+            run(mode);
+        }
+        System.exit(0);
+    }
+
+    private static void run(Mode mode) throws Exception {
+        final Map<Long, Long> fired = new ConcurrentHashMap<Long, Long>();
+        MemTimingWheel<AgeEntry> wheel = new MemTimingWheel<AgeEntry>(10, 16, TimeUnit.MILLISECONDS, "touch-" + mode, mode, new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                fired.put(entry.getAge(), System.currentTimeMillis());
+            }
+        });
+        wheel.setEntryCodecer(new AgeEntryCodecer()); // the off-heap one encodes.
+        wheel.start();
+
+        AgeEntry renewed = new AgeEntry(1);
+        AgeEntry far = new AgeEntry(2);
+        AgeEntry shorter = new AgeEntry(3);
+        AgeEntry removed = new AgeEntry(4);
+        long start = System.currentTimeMillis();
+        for (AgeEntry e : new AgeEntry[] {renewed, far, shorter, removed}) {
+            wheel.add(e, 100, TimeUnit.MILLISECONDS);
+        }
+        wheel.touch(far, 400, TimeUnit.MILLISECONDS);
+        wheel.touch(shorter, 20, TimeUnit.MILLISECONDS);
+        wheel.remove(removed);
+        wheel.touch(removed, 100, TimeUnit.MILLISECONDS);
+
+        long lastTouch = 0;
+        while (System.currentTimeMillis() - start < 300) {
+            lastTouch = System.currentTimeMillis();
+            wheel.touch(renewed, 100, TimeUnit.MILLISECONDS);
+            check(!fired.containsKey(1L), mode + " renewed entry expired while touched");
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        TimeUnit.MILLISECONDS.sleep(300);
+        wheel.stop();
+
+        check(fired.containsKey(1L) && fired.containsKey(2L) && fired.containsKey(3L), mode + " not expired " + fired.keySet());
+        long renewedAfter = fired.get(1L) - lastTouch;
+        long farAfter = fired.get(2L) - start;
+        long shorterAfter = fired.get(3L) - start;
+        System.out.println(mode + ": renewed fired " + renewedAfter + "ms after its last touch, far after " + farAfter
+                + "ms, shorter after " + shorterAfter + "ms");
+        check(renewedAfter >= 90 && renewedAfter < 200, mode + " renewed fired after " + renewedAfter);
+        check(farAfter >= 390 && farAfter < 450, mode + " far fired after " + farAfter);
+        check(shorterAfter >= 90 && shorterAfter < 150, mode + " shorter fired after " + shorterAfter);
+        check(!fired.containsKey(4L), mode + " removed entry expired");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}
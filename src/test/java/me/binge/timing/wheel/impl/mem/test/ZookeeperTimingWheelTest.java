@@ -0,0 +1,177 @@
+package me.binge.timing.wheel.impl.mem.test;
+
+import static me.binge.timing.wheel.utils.ZookeeperConstant.ENTRIES_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.SLOTS_NODE_NAME;
+import static me.binge.timing.wheel.utils.ZookeeperConstant.wheelPath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.binge.timing.wheel.expire.Expiration;
+import me.binge.timing.wheel.impl.zookeeper.ZookeeperTimingWheel;
+
+import org.I0Itec.zkclient.ZkClient;
+
+/**
+ * The zookeeper wheel against an in-process server: a batch added at once lands in one bucket znode, entries
+ * added, moved and removed one by one or in batches expire exactly once or never, another client sees the
+ * scheduled entries, and nothing is left under the wheel once all expired. A slot znode deleted behind the
+ * wheel, as by another node draining it, is created again by the next add to it.
+ */
+public class ZookeeperTimingWheelTest {
+
+    private static final int BATCH = 300;
+    private static final int SINGLES = 50;
+
+    public static void main(String[] args) throws Exception {
+        EmbeddedZookeeper zookeeper = new EmbeddedZookeeper();
+        ZkClient zkClient = new ZkClient(zookeeper.getConnectString(), 5000, 5000);
+        ZkClient otherClient = new ZkClient(zookeeper.getConnectString(), 5000, 5000);
+        try {
+            run(zkClient, otherClient);
+            slotDeleted(zkClient);
+        } finally {
+            zkClient.close();
+            otherClient.close();
+            zookeeper.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private static void run(ZkClient zkClient, ZkClient otherClient) throws Exception {
+        final Map<String, AtomicInteger> expired = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger corrupt = new AtomicInteger();
+        Expiration<AgeEntry> expiration = new Expiration<AgeEntry>() {
+
+            @Override
+            public void expired(AgeEntry entry) {
+                AtomicInteger n = expired.get(entry.getKey());
+                if (n == null || entry.getAge() < 0) {
+                    corrupt.incrementAndGet();
+                    return;
+                }
+                n.incrementAndGet();
+            }
+        };
+        ZookeeperTimingWheel<AgeEntry> wheel = new ZookeeperTimingWheel<AgeEntry>(100, 16, TimeUnit.MILLISECONDS, "zk-test", null, zkClient, expiration);
+        wheel.setExpirationBatchSize(100);
+        ZookeeperTimingWheel<AgeEntry> other = new ZookeeperTimingWheel<AgeEntry>(100, 16, TimeUnit.MILLISECONDS, "zk-test", null, otherClient, expiration);
+        wheel.start();
+
+        List<AgeEntry> batch = new ArrayList<AgeEntry>();
+        List<AgeEntry> singles = new ArrayList<AgeEntry>();
+        for (int i = 0; i < BATCH + SINGLES; i++) {
+            AgeEntry e = new AgeEntry(i);
+            (i < BATCH ? batch : singles).add(e);
+            expired.put(e.getKey(), new AtomicInteger());
+        }
+        wheel.addAll(batch, 3000, TimeUnit.MILLISECONDS);
+        String wheelPath = wheelPath("zk-test");
+        int buckets = 0;
+        for (String slot : zkClient.getChildren(wheelPath + "/" + SLOTS_NODE_NAME)) {
+            buckets += zkClient.countChildren(wheelPath + "/" + SLOTS_NODE_NAME + "/" + slot);
+        }
+        check(buckets == 1, "buckets of the batch " + buckets);
+
+        for (AgeEntry e : singles) {
+            wheel.add(e, 3500, TimeUnit.MILLISECONDS);
+        }
+        List<AgeEntry> removed = new ArrayList<AgeEntry>(batch.subList(0, 30));
+        removed.addAll(singles.subList(0, 5));
+        check(wheel.removeAll(batch.subList(0, 30)) == 30, "removeAll");
+        for (AgeEntry e : singles.subList(0, 5)) {
+            check(wheel.remove(e), "remove " + e);
+        }
+        check(!wheel.remove(singles.get(0)), "removed twice");
+        for (AgeEntry e : batch.subList(30, 40)) { // moved, the copy in the batch bucket must not fire.
+            wheel.add(e, 4000, TimeUnit.MILLISECONDS);
+        }
+        int scheduled = BATCH + SINGLES - removed.size();
+        check(wheel.size() == scheduled, "size " + wheel.size());
+        check(other.size() == scheduled, "size seen by the other client " + other.size());
+        check(other.exist(singles.get(10)) && !other.exist(singles.get(0)), "exist seen by the other client");
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (wheel.size() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        TimeUnit.MILLISECONDS.sleep(300);
+        wheel.stop();
+
+        int fired = 0;
+        for (AgeEntry e : batch) {
+            fired += checkExpired(expired, e, removed.contains(e) ? 0 : 1);
+        }
+        for (AgeEntry e : singles) {
+            fired += checkExpired(expired, e, removed.contains(e) ? 0 : 1);
+        }
+        int leftEntries = zkClient.countChildren(wheelPath + "/" + ENTRIES_NODE_NAME);
+        List<String> leftSlots = new ArrayList<String>();
+        for (String slot : zkClient.getChildren(wheelPath + "/" + SLOTS_NODE_NAME)) {
+            if (zkClient.countChildren(wheelPath + "/" + SLOTS_NODE_NAME + "/" + slot) > 0) {
+                leftSlots.add(slot);
+            }
+        }
+        System.out.println("expired=" + fired + " of " + scheduled + ", removed=" + removed.size() + ", left entries="
+                + leftEntries + ", left buckets in " + leftSlots);
+        check(fired == scheduled, "expired " + fired);
+        check(corrupt.get() == 0, "corrupt " + corrupt.get());
+        check(leftEntries == 0, "left entries " + leftEntries);
+        check(leftSlots.isEmpty(), "left buckets in " + leftSlots);
+    }
+
+    private static void slotDeleted(ZkClient zkClient) throws Exception {
+        final AtomicInteger expired = new AtomicInteger();
+        ZookeeperTimingWheel<AgeEntry> wheel = new ZookeeperTimingWheel<AgeEntry>(500, 16, TimeUnit.MILLISECONDS, "zk-slot-deleted", null, zkClient,
+                new Expiration<AgeEntry>() {
+
+                    @Override
+                    public void expired(AgeEntry entry) {
+                        expired.incrementAndGet();
+                    }
+                });
+        wheel.start();
+        String slotsPath = wheelPath("zk-slot-deleted") + "/" + SLOTS_NODE_NAME;
+        for (long delay : new long[] {2000, 3000}) { // one slot for an add, one for a batch.
+            AgeEntry drained = new AgeEntry(-1);
+            wheel.add(drained, delay, TimeUnit.MILLISECONDS);
+            wheel.remove(drained);
+        }
+        for (String slot : zkClient.getChildren(slotsPath)) { // as drained by another node.
+            zkClient.deleteRecursive(slotsPath + "/" + slot);
+        }
+        wheel.add(new AgeEntry(0), 2000, TimeUnit.MILLISECONDS);
+        List<AgeEntry> batch = new ArrayList<AgeEntry>();
+        for (int i = 1; i < 11; i++) {
+            batch.add(new AgeEntry(i));
+        }
+        wheel.addAll(batch, 3000, TimeUnit.MILLISECONDS);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (expired.get() < 11 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        long size = wheel.size();
+        wheel.stop();
+        System.out.println("slot deleted behind the wheel: expired=" + expired.get() + " of 11, size=" + size);
+        check(expired.get() == 11, "added after the slot was deleted, expired " + expired.get());
+        check(size == 0, "indexed without a bucket " + size);
+    }
+
+    private static int checkExpired(Map<String, AtomicInteger> expired, AgeEntry e, int times) {
+        int n = expired.get(e.getKey()).get();
+        check(n == times, e + " expired " + n + " times");
+        return n;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+    }
+
+}